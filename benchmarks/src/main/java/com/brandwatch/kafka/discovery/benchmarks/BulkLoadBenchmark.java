@@ -0,0 +1,96 @@
+package com.brandwatch.kafka.discovery.benchmarks;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.apache.curator.utils.ZKPaths;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.brandwatch.kafka.discovery.BrokerBulkLoader;
+import com.brandwatch.kafka.discovery.BrokerInfo;
+import com.brandwatch.kafka.discovery.DataParser;
+import com.google.common.base.Charsets;
+
+/**
+ * Time to read every broker registration from an in-process Zookeeper, pipelined through a
+ * {@link BrokerBulkLoader} versus one synchronous round trip per broker. The server is on
+ * loopback, so round trips are far cheaper here than across data centres and the gap is a
+ * lower bound.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BulkLoadBenchmark {
+
+    private static final String BROKER_IDS_PATH = "/brokers/ids";
+
+    @Param({ "10", "100", "500" })
+    private int brokerCount;
+
+    private TestingServer testingServer;
+    private CuratorFramework curatorFramework;
+    private DataParser dataParser;
+    private BrokerBulkLoader bulkLoader;
+
+    @Setup
+    public void setup() throws Exception {
+        testingServer = new TestingServer();
+        curatorFramework = CuratorFrameworkFactory.newClient(testingServer.getConnectString(),
+                new RetryOneTime(100));
+        curatorFramework.start();
+        for (BrokerInfo brokerInfo : StaticBrokerInfoFetcher.makeBrokers(brokerCount)) {
+            String registration = "{\"jmx_port\":" + brokerInfo.getJmxPort()
+                    + ",\"timestamp\":\"" + brokerInfo.getTimestamp().getTime()
+                    + "\",\"host\":\"" + brokerInfo.getHost() + "\",\"version\":"
+                    + brokerInfo.getVersion() + ",\"port\":" + brokerInfo.getPort() + "}";
+            curatorFramework.create().creatingParentsIfNeeded().forPath(
+                    ZKPaths.makePath(BROKER_IDS_PATH, Integer.toString(brokerInfo.getId())),
+                    registration.getBytes(Charsets.UTF_8));
+        }
+        dataParser = new DataParser();
+        bulkLoader = new BrokerBulkLoader(curatorFramework, dataParser);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        curatorFramework.close();
+        testingServer.close();
+    }
+
+    @Benchmark
+    public Map<Integer, BrokerInfo> pipelined() throws Exception {
+        return bulkLoader.loadAll(BROKER_IDS_PATH).get();
+    }
+
+    @Benchmark
+    public Map<Integer, BrokerInfo> oneRoundTripPerBroker() throws Exception {
+        Map<Integer, BrokerInfo> brokers = new TreeMap<Integer, BrokerInfo>();
+        for (String child : curatorFramework.getChildren().forPath(BROKER_IDS_PATH)) {
+            BrokerInfo brokerInfo = dataParser.parseData(curatorFramework.getData().forPath(
+                    ZKPaths.makePath(BROKER_IDS_PATH, child)));
+            brokerInfo.setId(Integer.parseInt(child));
+            brokers.put(brokerInfo.getId(), brokerInfo);
+        }
+        return brokers;
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.brandwatch.kafka.discovery.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.brandwatch.kafka.discovery.KafkaBrokerDiscoverer;
+
+/**
+ * Read throughput of a single shared {@link KafkaBrokerDiscoverer}. Compare the per-thread
+ * scores of the three variants to see how reads scale with the number of cores; the score
+ * should not depend on the number of brokers, and <code>-prof gc</code> should show no
+ * allocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentReadBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    private int brokerCount;
+
+    private KafkaBrokerDiscoverer discoverer;
+
+    @Setup
+    public void setup() throws Exception {
+        discoverer = new KafkaBrokerDiscoverer(new StaticBrokerInfoFetcher(brokerCount));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        discoverer.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String getConnectionStringOneThread() throws Exception {
+        return discoverer.getConnectionString();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String getConnectionStringFourThreads() throws Exception {
+        return discoverer.getConnectionString();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String getConnectionStringAllCores() throws Exception {
+        return discoverer.getConnectionString();
+    }
+
+}
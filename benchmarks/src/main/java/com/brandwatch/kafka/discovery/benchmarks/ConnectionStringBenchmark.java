@@ -0,0 +1,59 @@
+package com.brandwatch.kafka.discovery.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.brandwatch.kafka.discovery.BrokerInfo;
+import com.brandwatch.kafka.discovery.ConnectionStringCreator;
+
+/**
+ * How rendering a connection string scales with the number of brokers in it, and what the
+ * check that lets an unchanged string be reused costs by comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConnectionStringBenchmark {
+
+    @Param({ "3", "10", "100", "1000" })
+    private int brokerCount;
+
+    private ConnectionStringCreator connectionStringCreator;
+    private List<BrokerInfo> brokers;
+    private List<BrokerInfo> sameBrokers;
+
+    @Setup
+    public void setup() {
+        connectionStringCreator = new ConnectionStringCreator();
+        brokers = StaticBrokerInfoFetcher.makeBrokers(brokerCount);
+        sameBrokers = StaticBrokerInfoFetcher.makeBrokers(brokerCount);
+    }
+
+    @Benchmark
+    public String createConnectionString() {
+        return connectionStringCreator.createConnectionString(brokers);
+    }
+
+    @Benchmark
+    public boolean fingerprintAndCompare() {
+        return connectionStringCreator.fingerprint(brokers) == connectionStringCreator
+            .fingerprint(sameBrokers) && connectionStringCreator.rendersSameAs(brokers,
+                sameBrokers);
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.brandwatch.kafka.discovery.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.brandwatch.kafka.discovery.BrokerInfo;
+import com.brandwatch.kafka.discovery.BrokerParserException;
+import com.brandwatch.kafka.discovery.DataParser;
+import com.google.common.base.Charsets;
+
+/**
+ * Cost of parsing one broker registration from its raw znode bytes.
+ * <ul>
+ * <li><code>legacy</code> is what Kafka 0.8 writes: host, port and little else.</li>
+ * <li><code>modern</code> is a typical Kafka 2.x registration with two listeners and a rack.</li>
+ * <li><code>large</code> has a dozen listeners and a big <code>features</code> object, most of
+ * which the parser skips.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    private static final String LEGACY = "{\"jmx_port\":9999,\"timestamp\":\"1424095336398\","
+            + "\"host\":\"kafka1.example.com\",\"version\":1,\"port\":9092}";
+
+    private static final String MODERN = "{\"features\":{},"
+            + "\"listener_security_protocol_map\":{\"PLAINTEXT\":\"PLAINTEXT\",\"SSL\":\"SSL\"},"
+            + "\"endpoints\":[\"PLAINTEXT://kafka1.example.com:9092\","
+            + "\"SSL://kafka1.example.com:9093\"],\"jmx_port\":9999,"
+            + "\"host\":\"kafka1.example.com\",\"timestamp\":\"1424095336398\",\"port\":9092,"
+            + "\"version\":5,\"rack\":\"eu-west-1a\"}";
+
+    @Param({ "legacy", "modern", "large" })
+    private String payload;
+
+    private DataParser dataParser;
+    private byte[] data;
+
+    @Setup
+    public void setup() {
+        dataParser = new DataParser();
+        String registration;
+        if ("legacy".equals(payload)) {
+            registration = LEGACY;
+        } else if ("modern".equals(payload)) {
+            registration = MODERN;
+        } else {
+            registration = makeLargeRegistration(12, 200);
+        }
+        data = registration.getBytes(Charsets.UTF_8);
+    }
+
+    private static String makeLargeRegistration(int listenerCount, int featureCount) {
+        StringBuilder protocols = new StringBuilder();
+        StringBuilder endpoints = new StringBuilder();
+        for (int i = 0; i < listenerCount; i++) {
+            String separator = i == 0 ? "" : ",";
+            protocols.append(separator).append("\"LISTENER").append(i).append("\":\"SASL_SSL\"");
+            endpoints.append(separator).append("\"LISTENER").append(i)
+                .append("://kafka1.example.com:").append(9092 + i).append('"');
+        }
+        StringBuilder features = new StringBuilder();
+        for (int i = 0; i < featureCount; i++) {
+            features.append(i == 0 ? "" : ",").append("\"feature.").append(i)
+                .append("\":{\"min_version\":1,\"max_version\":").append(i + 1).append('}');
+        }
+        return "{\"features\":{" + features + "},\"listener_security_protocol_map\":{"
+                + protocols + "},\"endpoints\":[" + endpoints + "],\"jmx_port\":9999,"
+                + "\"host\":\"kafka1.example.com\",\"timestamp\":\"1424095336398\","
+                + "\"port\":9092,\"version\":5,\"rack\":\"eu-west-1a\"}";
+    }
+
+    @Benchmark
+    public BrokerInfo parseData() throws BrokerParserException {
+        return dataParser.parseData(data);
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.brandwatch.kafka.discovery.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.brandwatch.kafka.discovery.BrokerInfo;
+import com.brandwatch.kafka.discovery.BrokerSelectionStrategy;
+import com.brandwatch.kafka.discovery.ConsistentHashSelectionStrategy;
+import com.brandwatch.kafka.discovery.LeastRecentlyRegisteredSelectionStrategy;
+import com.brandwatch.kafka.discovery.LowestIdSelectionStrategy;
+import com.brandwatch.kafka.discovery.RackAwareSelectionStrategy;
+import com.brandwatch.kafka.discovery.RandomSelectionStrategy;
+
+/**
+ * Cost of choosing the bootstrap brokers, which a {@link
+ * com.brandwatch.kafka.discovery.BrokerInfoFetcher BrokerInfoFetcher} does every time the
+ * registered brokers change.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SelectionBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    private int brokerCount;
+
+    @Param({ "lowestId", "random", "consistentHash", "rackAware", "leastRecentlyRegistered" })
+    private String strategy;
+
+    private List<BrokerInfo> brokers;
+    private BrokerSelectionStrategy selectionStrategy;
+
+    @Setup
+    public void setup() {
+        brokers = StaticBrokerInfoFetcher.makeBrokers(brokerCount);
+        if ("lowestId".equals(strategy)) {
+            selectionStrategy = new LowestIdSelectionStrategy();
+        } else if ("random".equals(strategy)) {
+            selectionStrategy = new RandomSelectionStrategy();
+        } else if ("consistentHash".equals(strategy)) {
+            selectionStrategy = new ConsistentHashSelectionStrategy("client-1");
+        } else if ("rackAware".equals(strategy)) {
+            selectionStrategy = new RackAwareSelectionStrategy();
+        } else {
+            selectionStrategy = new LeastRecentlyRegisteredSelectionStrategy();
+        }
+    }
+
+    @Benchmark
+    public List<BrokerInfo> select() {
+        return selectionStrategy.select(brokers);
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.brandwatch.kafka.discovery.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import com.brandwatch.kafka.discovery.BrokerInfo;
+import com.brandwatch.kafka.discovery.BrokerInfoFetcher;
+
+/**
+ * A fetcher that serves a fixed set of synthetic brokers without touching Zookeeper.
+ */
+public class StaticBrokerInfoFetcher extends BrokerInfoFetcher {
+
+    private final List<BrokerInfo> brokers;
+
+    public StaticBrokerInfoFetcher(int brokerCount) throws Exception {
+        super("unused:2181");
+        brokers = Collections.unmodifiableList(makeBrokers(brokerCount));
+    }
+
+    /**
+     * @return brokers with ids from 0, spread across three racks and registered in id order
+     */
+    public static List<BrokerInfo> makeBrokers(int brokerCount) {
+        List<BrokerInfo> brokers = new ArrayList<BrokerInfo>(brokerCount);
+        for (int id = 0; id < brokerCount; id++) {
+            BrokerInfo brokerInfo = new BrokerInfo();
+            brokerInfo.setId(id);
+            brokerInfo.setHost("kafka" + id + ".example.com");
+            brokerInfo.setPort(9092);
+            brokerInfo.setJmxPort(9999);
+            brokerInfo.setVersion(1);
+            brokerInfo.setTimestamp(new Date(1424095336398L + id));
+            brokerInfo.setRack("rack" + (id % 3));
+            brokers.add(brokerInfo);
+        }
+        return brokers;
+    }
+
+    @Override
+    public List<BrokerInfo> fetchBrokerInfo() {
+        return getBootstrapBrokers();
+    }
+
+    @Override
+    public List<BrokerInfo> getBootstrapBrokers() {
+        return brokers.subList(0, Math.min(3, brokers.size()));
+    }
+
+    @Override
+    public List<BrokerInfo> getAllBrokers() {
+        return brokers;
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
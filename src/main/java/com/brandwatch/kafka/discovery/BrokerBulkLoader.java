@@ -0,0 +1,232 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.KeeperException.NoNodeException;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Reads many broker registrations at once.
+ * <p>
+ * Every <code>getData</code> is sent in the background before any reply has come back, so
+ * the requests are pipelined over the one Zookeeper session and a load costs roughly one
+ * round trip however many brokers there are, rather than one round trip per broker. Replies
+ * are parsed as they arrive on Curator's event thread and gathered into a map ordered by id.
+ * <p>
+ * A broker whose node disappears between being listed and being read is left out. Any other
+ * error, including a registration that can't be parsed, fails the whole load.
+ */
+public class BrokerBulkLoader {
+
+    private final CuratorFramework curatorFramework;
+    private final DataParser dataParser;
+    private final DiscoveryMetrics metrics;
+
+    public BrokerBulkLoader(CuratorFramework curatorFramework, DataParser dataParser) {
+        this(curatorFramework, dataParser, new DiscoveryMetrics());
+    }
+
+    /**
+     * @param metrics where the time taken by each parse, and any failures, are recorded
+     */
+    public BrokerBulkLoader(CuratorFramework curatorFramework, DataParser dataParser,
+            DiscoveryMetrics metrics) {
+        Preconditions.checkNotNull(curatorFramework);
+        Preconditions.checkNotNull(dataParser);
+        Preconditions.checkNotNull(metrics);
+        this.curatorFramework = curatorFramework;
+        this.dataParser = dataParser;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the registered broker ids in ascending order. Fails with a
+     *         {@link NoNodeException} if there is nothing at the path.
+     */
+    public CompletableFuture<List<Integer>> listBrokerIds(final String brokerIdsPath) {
+        final CompletableFuture<List<Integer>> result = new CompletableFuture<List<Integer>>();
+        try {
+            curatorFramework.getChildren().inBackground(new BackgroundCallback() {
+
+                public void processResult(CuratorFramework client, CuratorEvent event) {
+                    if (event.getResultCode() == Code.OK.intValue()) {
+                        try {
+                            result.complete(parseBrokerIds(event.getChildren()));
+                        } catch (NumberFormatException e) {
+                            result.completeExceptionally(e);
+                        }
+                    } else if (event.getResultCode() == Code.NONODE.intValue()) {
+                        result.completeExceptionally(new NoNodeException(
+                                "There is no node at " + brokerIdsPath));
+                    } else {
+                        result.completeExceptionally(KeeperException.create(
+                                Code.get(event.getResultCode()), event.getPath()));
+                    }
+                }
+            }).forPath(brokerIdsPath);
+        } catch (Exception e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Lists and then reads every registered broker.
+     */
+    public CompletableFuture<Map<Integer, BrokerInfo>> loadAll(final String brokerIdsPath) {
+        return listBrokerIds(brokerIdsPath).thenCompose(
+                new Function<List<Integer>, CompletableFuture<Map<Integer, BrokerInfo>>>() {
+
+                    public CompletableFuture<Map<Integer, BrokerInfo>> apply(List<Integer> ids) {
+                        return load(brokerIdsPath, ids);
+                    }
+                });
+    }
+
+    /**
+     * Reads the given brokers' registrations in one pipelined batch.
+     */
+    public CompletableFuture<Map<Integer, BrokerInfo>> load(String brokerIdsPath,
+            Collection<Integer> brokerIds) {
+        return loadRegistrations(brokerIdsPath, brokerIds).thenApply(
+                new Function<Map<Integer, Registration>, Map<Integer, BrokerInfo>>() {
+
+                    public Map<Integer, BrokerInfo> apply(Map<Integer, Registration> loaded) {
+                        Map<Integer, BrokerInfo> brokers = new TreeMap<Integer, BrokerInfo>();
+                        for (Registration registration : loaded.values()) {
+                            if (registration.getFailure() != null) {
+                                throw new CompletionException(registration.getFailure());
+                            }
+                            brokers.put(registration.getBrokerId(),
+                                    registration.getBrokerInfo());
+                        }
+                        return brokers;
+                    }
+                });
+    }
+
+    /**
+     * Like {@link #load(String, Collection)}, but a registration that can't be parsed is
+     * returned with its failure rather than failing the whole load, and each one carries the
+     * zxid of the write that produced it.
+     */
+    CompletableFuture<Map<Integer, Registration>> loadRegistrations(String brokerIdsPath,
+            Collection<Integer> brokerIds) {
+        final CompletableFuture<Map<Integer, Registration>> result =
+                new CompletableFuture<Map<Integer, Registration>>();
+        final Map<Integer, Registration> loaded = new TreeMap<Integer, Registration>();
+        if (brokerIds.isEmpty()) {
+            result.complete(loaded);
+            return result;
+        }
+        final AtomicInteger remaining = new AtomicInteger(brokerIds.size());
+        BackgroundCallback callback = new BackgroundCallback() {
+
+            public void processResult(CuratorFramework client, CuratorEvent event) {
+                if (event.getResultCode() == Code.OK.intValue()) {
+                    Registration registration = parse(event);
+                    synchronized (loaded) {
+                        loaded.put(registration.getBrokerId(), registration);
+                    }
+                } else if (event.getResultCode() != Code.NONODE.intValue()) {
+                    result.completeExceptionally(KeeperException.create(
+                            Code.get(event.getResultCode()), event.getPath()));
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    synchronized (loaded) {
+                        result.complete(loaded);
+                    }
+                }
+            }
+        };
+        try {
+            for (Integer brokerId : brokerIds) {
+                curatorFramework.getData().inBackground(callback).forPath(
+                        ZKPaths.makePath(brokerIdsPath, Integer.toString(brokerId)));
+            }
+        } catch (Exception e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private Registration parse(CuratorEvent event) {
+        int brokerId = Integer.parseInt(ZKPaths.getNodeFromPath(event.getPath()));
+        long modifiedZxid = event.getStat().getMzxid();
+        try {
+            BrokerInfo brokerInfo = metrics.parse(dataParser, event.getData());
+            brokerInfo.setId(brokerId);
+            return new Registration(brokerId, modifiedZxid, brokerInfo, null);
+        } catch (BrokerParserException e) {
+            return new Registration(brokerId, modifiedZxid, null, e);
+        }
+    }
+
+    private List<Integer> parseBrokerIds(List<String> children) {
+        List<Integer> brokerIds = new ArrayList<Integer>(children.size());
+        for (String child : children) {
+            brokerIds.add(Integer.parseInt(child));
+        }
+        Collections.sort(brokerIds);
+        return brokerIds;
+    }
+
+    /**
+     * One broker's registration as it was read.
+     */
+    static final class Registration {
+
+        private final int brokerId;
+        private final long modifiedZxid;
+        private final BrokerInfo brokerInfo;
+        private final BrokerParserException failure;
+
+        Registration(int brokerId, long modifiedZxid, BrokerInfo brokerInfo,
+                BrokerParserException failure) {
+            this.brokerId = brokerId;
+            this.modifiedZxid = modifiedZxid;
+            this.brokerInfo = brokerInfo;
+            this.failure = failure;
+        }
+
+        int getBrokerId() {
+            return brokerId;
+        }
+
+        /**
+         * @return the zxid of the write that produced this registration, which is greater for
+         *         every later write
+         */
+        long getModifiedZxid() {
+            return modifiedZxid;
+        }
+
+        /**
+         * @return the parsed registration, or null if it couldn't be parsed
+         */
+        BrokerInfo getBrokerInfo() {
+            return brokerInfo;
+        }
+
+        BrokerParserException getFailure() {
+            return failure;
+        }
+    }
+
+}
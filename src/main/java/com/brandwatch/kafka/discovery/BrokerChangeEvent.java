@@ -0,0 +1,107 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The difference between two views of the registered brokers, together with the newer view.
+ * A broker whose registration changed, such as one that re-registered with a new timestamp,
+ * is reported as updated rather than as removed and added.
+ */
+public class BrokerChangeEvent {
+
+    private final List<BrokerInfo> added;
+    private final List<BrokerInfo> removed;
+    private final List<BrokerInfo> updated;
+    private final List<BrokerInfo> brokers;
+
+    public BrokerChangeEvent(List<BrokerInfo> added, List<BrokerInfo> removed,
+            List<BrokerInfo> updated, List<BrokerInfo> brokers) {
+        Preconditions.checkNotNull(added);
+        Preconditions.checkNotNull(removed);
+        Preconditions.checkNotNull(updated);
+        Preconditions.checkNotNull(brokers);
+        this.added = added;
+        this.removed = removed;
+        this.updated = updated;
+        this.brokers = brokers;
+    }
+
+    /**
+     * Compares two lists of brokers in a single pass.
+     *
+     * @param previous the older brokers, ordered by broker id
+     * @param current the newer brokers, ordered by broker id
+     */
+    public static BrokerChangeEvent between(List<BrokerInfo> previous,
+            List<BrokerInfo> current) {
+        List<BrokerInfo> added = new ArrayList<BrokerInfo>();
+        List<BrokerInfo> removed = new ArrayList<BrokerInfo>();
+        List<BrokerInfo> updated = new ArrayList<BrokerInfo>();
+        int i = 0;
+        int j = 0;
+        while (i < previous.size() || j < current.size()) {
+            BrokerInfo before = i < previous.size() ? previous.get(i) : null;
+            BrokerInfo after = j < current.size() ? current.get(j) : null;
+            if (after == null || (before != null && before.getId() < after.getId())) {
+                removed.add(before);
+                i++;
+            } else if (before == null || after.getId() < before.getId()) {
+                added.add(after);
+                j++;
+            } else {
+                if (!before.equals(after)) {
+                    updated.add(after);
+                }
+                i++;
+                j++;
+            }
+        }
+        return new BrokerChangeEvent(Collections.unmodifiableList(added),
+                Collections.unmodifiableList(removed), Collections.unmodifiableList(updated),
+                current);
+    }
+
+    public List<BrokerInfo> getAdded() {
+        return added;
+    }
+
+    public List<BrokerInfo> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return the new registrations of brokers that were present before and after
+     */
+    public List<BrokerInfo> getUpdated() {
+        return updated;
+    }
+
+    /**
+     * @return every registered broker after the change, ordered by broker id
+     */
+    public List<BrokerInfo> getBrokers() {
+        return brokers;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && updated.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "added=" + ids(added) + " removed=" + ids(removed) + " updated=" + ids(updated);
+    }
+
+    private static List<Integer> ids(List<BrokerInfo> brokers) {
+        List<Integer> ids = new ArrayList<Integer>(brokers.size());
+        for (BrokerInfo brokerInfo : brokers) {
+            ids.add(brokerInfo.getId());
+        }
+        return ids;
+    }
+
+}
@@ -0,0 +1,14 @@
+package com.brandwatch.kafka.discovery;
+
+/**
+ * Receives consolidated changes to the registered brokers from
+ * {@link KafkaBrokerDiscoverer#onBrokersChanged(BrokerChangeEventListener)}.
+ */
+public interface BrokerChangeEventListener {
+
+    /**
+     * Called on the discoverer's notification thread, never with an empty event.
+     */
+    void brokersChanged(BrokerChangeEvent event);
+
+}
@@ -0,0 +1,16 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.List;
+
+/**
+ * Notified by a {@link BrokerInfoFetcher} each time it publishes a new view of the registered
+ * brokers. Callbacks run on the thread that applied the change, so they should be quick.
+ */
+public interface BrokerChangeListener {
+
+    /**
+     * @param brokers every registered broker, ordered by broker id
+     */
+    void brokersChanged(List<BrokerInfo> brokers);
+
+}
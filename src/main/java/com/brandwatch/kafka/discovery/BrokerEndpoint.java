@@ -0,0 +1,65 @@
+package com.brandwatch.kafka.discovery;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+
+/**
+ * One listener advertised in a broker registration, e.g. <code>SSL://kafka1:9093</code>.
+ */
+public class BrokerEndpoint {
+
+    private final String listenerName;
+    private final String securityProtocol;
+    private final String host;
+    private final int port;
+
+    public BrokerEndpoint(String listenerName, String securityProtocol, String host, int port) {
+        Preconditions.checkNotNull(listenerName);
+        Preconditions.checkNotNull(securityProtocol);
+        Preconditions.checkNotNull(host);
+        this.listenerName = listenerName;
+        this.securityProtocol = securityProtocol;
+        this.host = host;
+        this.port = port;
+    }
+
+    public String getListenerName() {
+        return listenerName;
+    }
+
+    public String getSecurityProtocol() {
+        return securityProtocol;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        } else if (!(other instanceof BrokerEndpoint)) {
+            return false;
+        }
+        BrokerEndpoint endpoint = (BrokerEndpoint) other;
+        return port == endpoint.port && listenerName.equals(endpoint.listenerName)
+                && securityProtocol.equals(endpoint.securityProtocol)
+                && host.equals(endpoint.host);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(listenerName, securityProtocol, host, port);
+    }
+
+    @Override
+    public String toString() {
+        return listenerName + "://" + host + ":" + port;
+    }
+
+}
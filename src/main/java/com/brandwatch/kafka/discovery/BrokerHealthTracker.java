@@ -0,0 +1,219 @@
+package com.brandwatch.kafka.discovery;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+
+/**
+ * Keeps a flap score for each broker id from the changes published by a
+ * {@link BrokerInfoFetcher}.
+ * <p>
+ * Each time a broker drops out, or re-registers with a new timestamp without being seen to
+ * drop out, its score goes up by one; the score halves every <code>halfLife</code>. A broker
+ * whose score reaches <code>suppressThreshold</code> is suppressed until it has decayed below
+ * <code>recoverThreshold</code>, so a broker that is restart-looping stays out of the bootstrap
+ * set for a while after it last flapped. Use a {@link HealthAwareSelectionStrategy} to act on
+ * it.
+ * <p>
+ * Once attached, the tracker asks the fetcher to {@link BrokerInfoFetcher#reselect()
+ * reselect} as soon as a broker is suppressed and again when it is due to recover.
+ */
+public class BrokerHealthTracker implements BrokerChangeListener, Closeable {
+
+    public static final long DEFAULT_HALF_LIFE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    public static final double DEFAULT_SUPPRESS_THRESHOLD = 3;
+    public static final double DEFAULT_RECOVER_THRESHOLD = 1;
+
+    /**
+     * Scores that have decayed below this are forgotten.
+     */
+    private static final double NEGLIGIBLE_SCORE = 0.01;
+
+    private final long halfLifeNanos;
+    private final double suppressThreshold;
+    private final double recoverThreshold;
+    private final Ticker ticker;
+    private final Map<Integer, FlapState> states = new HashMap<Integer, FlapState>();
+
+    private BrokerInfoFetcher dataFetcher;
+    private ScheduledExecutorService executor;
+    private List<BrokerInfo> previous;
+
+    public BrokerHealthTracker() {
+        this(DEFAULT_HALF_LIFE_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_SUPPRESS_THRESHOLD,
+                DEFAULT_RECOVER_THRESHOLD);
+    }
+
+    public BrokerHealthTracker(long halfLife, TimeUnit unit, double suppressThreshold,
+            double recoverThreshold) {
+        this(halfLife, unit, suppressThreshold, recoverThreshold, Ticker.systemTicker());
+    }
+
+    BrokerHealthTracker(long halfLife, TimeUnit unit, double suppressThreshold,
+            double recoverThreshold, Ticker ticker) {
+        Preconditions.checkArgument(halfLife > 0, "halfLife must be positive");
+        Preconditions.checkArgument(recoverThreshold > 0, "recoverThreshold must be positive");
+        Preconditions.checkArgument(suppressThreshold >= recoverThreshold,
+                "suppressThreshold must be at least recoverThreshold");
+        this.halfLifeNanos = unit.toNanos(halfLife);
+        this.suppressThreshold = suppressThreshold;
+        this.recoverThreshold = recoverThreshold;
+        this.ticker = ticker;
+    }
+
+    /**
+     * Starts tracking the fetcher's brokers. The brokers it has already published are taken
+     * as the starting point.
+     */
+    public synchronized void attachTo(BrokerInfoFetcher dataFetcher) {
+        Preconditions.checkNotNull(dataFetcher);
+        Preconditions.checkState(this.dataFetcher == null, "Already attached");
+        this.dataFetcher = dataFetcher;
+        this.previous = dataFetcher.getAllBrokers();
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "kafka-broker-health-tracker");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        dataFetcher.addBrokerChangeListener(this);
+    }
+
+    public void brokersChanged(List<BrokerInfo> brokers) {
+        boolean newlySuppressed = false;
+        synchronized (this) {
+            if (previous == null) {
+                previous = brokers;
+                return;
+            }
+            BrokerChangeEvent event = BrokerChangeEvent.between(previous, brokers);
+            long now = ticker.read();
+            for (BrokerInfo brokerInfo : event.getRemoved()) {
+                newlySuppressed |= recordFlap(brokerInfo.getId(), now);
+            }
+            if (!event.getUpdated().isEmpty()) {
+                Map<Integer, BrokerInfo> before = new HashMap<Integer, BrokerInfo>();
+                for (BrokerInfo brokerInfo : previous) {
+                    before.put(brokerInfo.getId(), brokerInfo);
+                }
+                for (BrokerInfo brokerInfo : event.getUpdated()) {
+                    if (reRegistered(before.get(brokerInfo.getId()), brokerInfo)) {
+                        newlySuppressed |= recordFlap(brokerInfo.getId(), now);
+                    }
+                }
+            }
+            previous = brokers;
+            forgetStableBrokers(now);
+        }
+        if (newlySuppressed && dataFetcher != null) {
+            // The selection for this change was made before we were told about it
+            dataFetcher.reselect();
+        }
+    }
+
+    /**
+     * @return the broker's current flap score, or 0 if it has never flapped
+     */
+    public synchronized double getFlapScore(int brokerId) {
+        FlapState state = states.get(brokerId);
+        return state == null ? 0 : state.decayTo(ticker.read());
+    }
+
+    /**
+     * @return true if the broker has flapped too often recently to be used for bootstrapping
+     */
+    public synchronized boolean isSuppressed(int brokerId) {
+        FlapState state = states.get(brokerId);
+        if (state == null || !state.suppressed) {
+            return false;
+        }
+        if (state.decayTo(ticker.read()) < recoverThreshold) {
+            state.suppressed = false;
+        }
+        return state.suppressed;
+    }
+
+    private boolean reRegistered(BrokerInfo before, BrokerInfo after) {
+        return before.getTimestamp() == null ? after.getTimestamp() != null : !before
+            .getTimestamp().equals(after.getTimestamp());
+    }
+
+    /**
+     * @return true if this flap suppressed the broker
+     */
+    private boolean recordFlap(int brokerId, long now) {
+        FlapState state = states.get(brokerId);
+        if (state == null) {
+            state = new FlapState(now);
+            states.put(brokerId, state);
+        }
+        state.score = state.decayTo(now) + 1;
+        if (state.suppressed || state.score < suppressThreshold) {
+            return false;
+        }
+        state.suppressed = true;
+        scheduleRecoveryCheck(state.score);
+        return true;
+    }
+
+    private void scheduleRecoveryCheck(double score) {
+        if (executor == null) {
+            return;
+        }
+        double halfLives = Math.log(score / recoverThreshold) / Math.log(2);
+        long delay = (long) Math.ceil(halfLives * halfLifeNanos);
+        executor.schedule(new Runnable() {
+
+            public void run() {
+                dataFetcher.reselect();
+            }
+        }, delay, TimeUnit.NANOSECONDS);
+    }
+
+    private void forgetStableBrokers(long now) {
+        Iterator<FlapState> iterator = states.values().iterator();
+        while (iterator.hasNext()) {
+            FlapState state = iterator.next();
+            if (!state.suppressed && state.decayTo(now) < NEGLIGIBLE_SCORE) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void close() {
+        if (dataFetcher != null) {
+            dataFetcher.removeBrokerChangeListener(this);
+            executor.shutdownNow();
+        }
+    }
+
+    private class FlapState {
+
+        private double score;
+        private long updatedNanos;
+        private boolean suppressed;
+
+        FlapState(long now) {
+            this.updatedNanos = now;
+        }
+
+        double decayTo(long now) {
+            double halfLives = (double) (now - updatedNanos) / halfLifeNanos;
+            score = score * Math.pow(0.5, halfLives);
+            updatedNanos = now;
+            return score;
+        }
+    }
+
+}
@@ -1,6 +1,10 @@
 package com.brandwatch.kafka.discovery;
 
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+
+import com.google.common.base.Objects;
 
 public class BrokerInfo {
 
@@ -10,6 +14,8 @@ public class BrokerInfo {
     private int jmxPort;
     private int version;
     private Date timestamp;
+    private String rack;
+    private List<BrokerEndpoint> endpoints = Collections.emptyList();
 
     public int getId() {
         return id;
@@ -59,4 +65,55 @@ public class BrokerInfo {
         this.timestamp = timestamp;
     }
 
+    public String getRack() {
+        return rack;
+    }
+
+    public void setRack(String rack) {
+        this.rack = rack;
+    }
+
+    public List<BrokerEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    public void setEndpoints(List<BrokerEndpoint> endpoints) {
+        this.endpoints = endpoints;
+    }
+
+    public BrokerEndpoint getEndpoint(String listenerName) {
+        for (BrokerEndpoint endpoint : getEndpoints()) {
+            if (endpoint.getListenerName().equals(listenerName)) {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Two brokers are equal if every field of their registrations is. Compares through the
+     * getters so that a {@link BrokerTable} view equals the broker it was made from.
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        } else if (!(other instanceof BrokerInfo)) {
+            return false;
+        }
+        BrokerInfo brokerInfo = (BrokerInfo) other;
+        return getId() == brokerInfo.getId() && getPort() == brokerInfo.getPort()
+                && getJmxPort() == brokerInfo.getJmxPort()
+                && getVersion() == brokerInfo.getVersion()
+                && Objects.equal(getHost(), brokerInfo.getHost())
+                && Objects.equal(getTimestamp(), brokerInfo.getTimestamp())
+                && Objects.equal(getRack(), brokerInfo.getRack())
+                && Objects.equal(getEndpoints(), brokerInfo.getEndpoints());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(getId(), getHost(), getPort());
+    }
+
 }
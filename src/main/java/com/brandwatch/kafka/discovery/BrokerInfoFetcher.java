@@ -4,98 +4,846 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
-import org.apache.commons.lang3.builder.CompareToBuilder;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.recipes.cache.ChildData;
 import org.apache.curator.framework.recipes.cache.PathChildrenCache;
 import org.apache.curator.framework.recipes.cache.PathChildrenCache.StartMode;
-import org.apache.zookeeper.KeeperException.NoNodeException;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
+import org.apache.curator.utils.ZKPaths;
 
+import com.brandwatch.kafka.discovery.BrokerBulkLoader.Registration;
 import com.google.common.base.Preconditions;
 
+/**
+ * Keeps a parsed view of the brokers registered under <code>/brokers/ids</code>, relative to the
+ * cluster's chroot if it has one.
+ * <p>
+ * The view is seeded once when the cache is built and afterwards only touched when the
+ * {@link PathChildrenCache} reports that a broker was added, updated or removed. Readers get
+ * an immutable list that is swapped in on each change, so the cost of a fetch does not depend
+ * on the number of brokers. The bootstrap brokers are chosen by a
+ * {@link BrokerSelectionStrategy} at the same time. Interested parties can register a
+ * {@link BrokerChangeListener} to be told whenever a new list is published.
+ * <p>
+ * The cache holds only each registration's stat. A registration is read when the cache reports
+ * a newer write than the view holds, so building the cache after the first answer costs an
+ * <code>exists</code> per broker rather than reading every registration a second time.
+ * <p>
+ * The first answer is read by a {@link BrokerBulkLoader}, which pipelines the reads for every
+ * broker rather than making a round trip for each. {@link #fetchBrokerInfoAsync()} does this
+ * without blocking the caller, and its future completes on a Curator thread.
+ * <p>
+ * In {@link LoadMode#LAZY lazy} mode only the registered broker ids are listed up front. The
+ * selection strategy chooses from brokers that have nothing but an id, just those brokers are
+ * read, and the first answer is published; the rest are then read in one pipelined batch, and
+ * the selection is made again with full registrations.
+ * <p>
+ * While the Zookeeper connection is suspended or lost the last published brokers are kept and
+ * the fetcher reports itself {@link #isStale() stale}. On reconnecting, the cache checks the
+ * registrations again and reports only what changed. Brokers that came back are applied at
+ * once, but removals are held for a {@link #setReconnectGracePeriod(long, TimeUnit) grace period}:
+ * after an ensemble-wide outage the brokers' own sessions may have expired too, and they need
+ * a moment to re-register before their absence means anything.
+ * <p>
+ * How long discovery takes and how often the brokers change is recorded in the fetcher's
+ * {@link DiscoveryMetrics}.
+ */
 public class BrokerInfoFetcher implements Closeable {
 
+    public static final String ROOT = "/";
+
+    /**
+     * How much is read from Zookeeper before the first answer.
+     */
+    public enum LoadMode {
+        /**
+         * Read every broker's registration before answering.
+         */
+        FULL,
+        /**
+         * Read only the registrations of the brokers chosen from their ids, and the rest
+         * afterwards. Strategies that choose by rack or registration time see none until the
+         * rest have been read, so their first answer is chosen by id alone.
+         */
+        LAZY
+    }
+
+    public static final long DEFAULT_RECONNECT_GRACE_MILLIS = 30000;
+
+    private static final String BROKER_IDS_PATH = "brokers/ids";
+
     private CuratorFramework curatorFramework;
     private PathChildrenCache pathChildrenCache;
     private String hostAndPort;
-    private boolean initialised = false;
+    private final String chroot;
+    private final String brokerIdsPath;
+    private volatile boolean initialised = false;
     private ZookeeperConnector zookeeperConnector;
+    private DataParser dataParser;
+    private final BrokerSelectionStrategy selectionStrategy;
+    private final ZookeeperConnectionRegistry connectionRegistry;
+    private final LoadMode loadMode;
+    private CompletableFuture<Void> initialisation;
+    private boolean closed = false;
+    private boolean seeded = false;
+    private final DiscoveryMetrics metrics = new DiscoveryMetrics();
+    private ConnectionStateListener connectionStateListener;
+    private long initialisationStart;
+    private long cacheStart;
+    private volatile long reconnectGraceMillis = DEFAULT_RECONNECT_GRACE_MILLIS;
+    private volatile boolean disconnected = false;
+    private volatile boolean stale = false;
+    private boolean reconciling = false;
+    private final Set<Integer> pendingRemovals = new TreeSet<Integer>();
+    private ScheduledExecutorService reconcileExecutor;
+    private ScheduledFuture<?> reconciliation;
+    private volatile ClusterStateCache clusterState;
+    private BrokerBulkLoader bulkLoader;
+    /**
+     * The zxid of the write behind each registration the index holds.
+     */
+    private final Map<Integer, Long> versions = new HashMap<Integer, Long>();
+    /**
+     * The brokers being read, each with the newest zxid the cache has reported since.
+     */
+    private final Map<Integer, Long> reads = new HashMap<Integer, Long>();
+    private final Set<Integer> failedReads = new TreeSet<Integer>();
+    /**
+     * In lazy mode, the listed brokers the first answer didn't read.
+     */
+    private List<Integer> unreadIds = Collections.emptyList();
+
+    private final Object brokersLock = new Object();
+    private volatile BrokerTable brokers = BrokerTable.EMPTY;
+    private volatile List<BrokerInfo> bootstrapBrokers = Collections.emptyList();
+    private final List<BrokerChangeListener> listeners =
+            new CopyOnWriteArrayList<BrokerChangeListener>();
 
     public BrokerInfoFetcher(String hostAndPort) throws Exception {
+        this(hostAndPort, new LowestIdSelectionStrategy());
+    }
+
+    public BrokerInfoFetcher(String hostAndPort, BrokerSelectionStrategy selectionStrategy)
+            throws Exception {
+        this(hostAndPort, selectionStrategy, ZookeeperConnectionRegistry.getShared());
+    }
+
+    /**
+     * @param connectionRegistry where to obtain the Zookeeper session, which is shared with
+     *            every other fetcher using the same registry and connect string
+     */
+    public BrokerInfoFetcher(String hostAndPort, BrokerSelectionStrategy selectionStrategy,
+            ZookeeperConnectionRegistry connectionRegistry) throws Exception {
+        this(hostAndPort, ROOT, selectionStrategy, connectionRegistry);
+    }
+
+    /**
+     * @param chroot the path the Kafka cluster was configured with in its
+     *            <code>zookeeper.connect</code> setting, or {@link #ROOT}. Keeping the chroot
+     *            out of the connect string lets clusters on one ensemble share a session.
+     */
+    public BrokerInfoFetcher(String hostAndPort, String chroot,
+            BrokerSelectionStrategy selectionStrategy,
+            ZookeeperConnectionRegistry connectionRegistry) throws Exception {
+        this(hostAndPort, chroot, selectionStrategy, connectionRegistry, LoadMode.FULL);
+    }
+
+    public BrokerInfoFetcher(String hostAndPort, String chroot,
+            BrokerSelectionStrategy selectionStrategy,
+            ZookeeperConnectionRegistry connectionRegistry, LoadMode loadMode) throws Exception {
         Preconditions.checkNotNull(hostAndPort);
+        Preconditions.checkNotNull(chroot);
+        Preconditions.checkArgument(chroot.startsWith("/"), "chroot must start with /");
+        Preconditions.checkNotNull(selectionStrategy);
+        Preconditions.checkNotNull(connectionRegistry);
+        Preconditions.checkNotNull(loadMode);
         this.hostAndPort = hostAndPort;
+        this.chroot = chroot;
+        this.brokerIdsPath = ZKPaths.makePath(chroot, BROKER_IDS_PATH);
+        this.selectionStrategy = selectionStrategy;
+        this.connectionRegistry = connectionRegistry;
+        this.loadMode = loadMode;
     }
 
     public List<BrokerInfo> fetchBrokerInfo() throws BrokerParserException, Exception {
-        if (!initialised) {
-            initialiseCurator(hostAndPort);
-            initialisePathChildrenCache();
+        long start = System.nanoTime();
+        try {
+            if (!initialised) {
+                initialise();
+            }
+            return bootstrapBrokers;
+        } finally {
+            metrics.recordFetch(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Waits without holding the fetcher's lock, so that a failing attempt can clean up after
+     * itself and callers that only read never queue behind Zookeeper.
+     */
+    private void initialise() throws Exception {
+        awaitInitialisation(initialiseAsync());
+    }
+
+    private static void awaitInitialisation(CompletableFuture<Void> attempt) throws Exception {
+        try {
+            attempt.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Like {@link #fetchBrokerInfo()}, but never blocks. If the fetcher has not been initialised
+     * yet, the connection and the initial load both happen in the background.
+     */
+    public CompletableFuture<List<BrokerInfo>> fetchBrokerInfoAsync() {
+        if (initialised) {
+            return CompletableFuture.completedFuture(bootstrapBrokers);
+        }
+        return initialiseAsync().thenApply(new Function<Void, List<BrokerInfo>>() {
+
+            public List<BrokerInfo> apply(Void ignored) {
+                return bootstrapBrokers;
+            }
+        });
+    }
+
+    private synchronized CompletableFuture<Void> initialiseAsync() {
+        CompletableFuture<Void> current = initialisation;
+        if (current == null && closed) {
+            current = new CompletableFuture<Void>();
+            current.completeExceptionally(closedException());
+        } else if (current == null) {
+            final CompletableFuture<Void> attempt = new CompletableFuture<Void>();
+            initialisation = attempt;
+            current = attempt;
+            if (initialised) {
+                attempt.complete(null);
+            } else {
+                try {
+                    initialisationStart = System.nanoTime();
+                    initialiseCurator(hostAndPort);
+                    dataParser = makeDataParser();
+                    bulkLoader = makeBrokerBulkLoader();
+                    loadFirstAnswer().whenComplete(
+                            new BiConsumer<Map<Integer, Registration>, Throwable>() {
+
+                                public void accept(Map<Integer, Registration> loaded,
+                                        Throwable failure) {
+                                    if (failure == null) {
+                                        firstLoadComplete(attempt, loaded);
+                                    } else {
+                                        initialisationFailed(attempt,
+                                                failure instanceof CompletionException
+                                                        ? failure.getCause() : failure);
+                                    }
+                                }
+                            });
+                } catch (Exception e) {
+                    initialisationFailed(attempt, e);
+                }
+            }
+        }
+        // Not the field, which a failure that completes straight away has already reset
+        return current;
+    }
+
+    /**
+     * Lets the next fetch start again rather than report this failure forever, and gives up
+     * the session so that a broken connection isn't kept open in the meantime. The attempt is
+     * reset before it fails, so a caller that retries as soon as it sees the failure gets a
+     * fresh one.
+     */
+    private void initialisationFailed(CompletableFuture<Void> attempt, Throwable failure) {
+        synchronized (this) {
+            if (initialisation == attempt) {
+                initialisation = null;
+                if (pathChildrenCache != null) {
+                    closeQuietly(pathChildrenCache);
+                    pathChildrenCache = null;
+                }
+                if (zookeeperConnector != null) {
+                    releaseSession();
+                }
+            }
+        }
+        attempt.completeExceptionally(failure);
+    }
+
+    /**
+     * In {@link LoadMode#LAZY lazy} mode the selection strategy chooses from brokers known only
+     * by id, and just the chosen registrations are read. The rest are remembered so that they
+     * can be read once the first answer is out.
+     */
+    private CompletableFuture<Map<Integer, Registration>> loadFirstAnswer() {
+        return bulkLoader.listBrokerIds(brokerIdsPath).thenCompose(
+                new Function<List<Integer>, CompletableFuture<Map<Integer, Registration>>>() {
+
+                    public CompletableFuture<Map<Integer, Registration>> apply(
+                            List<Integer> ids) {
+                        if (loadMode == LoadMode.FULL) {
+                            return bulkLoader.loadRegistrations(brokerIdsPath, ids);
+                        }
+                        List<Integer> selectedIds = selectByIdAlone(ids);
+                        List<Integer> unread = new ArrayList<Integer>(ids);
+                        unread.removeAll(selectedIds);
+                        unreadIds = unread;
+                        return bulkLoader.loadRegistrations(brokerIdsPath, selectedIds);
+                    }
+                });
+    }
+
+    private List<Integer> selectByIdAlone(List<Integer> ids) {
+        List<BrokerInfo> candidates = new ArrayList<BrokerInfo>(ids.size());
+        for (Integer id : ids) {
+            BrokerInfo candidate = new BrokerInfo();
+            candidate.setId(id);
+            candidates.add(candidate);
+        }
+        List<Integer> selectedIds = new ArrayList<Integer>();
+        for (BrokerInfo selected : selectionStrategy.select(candidates)) {
+            selectedIds.add(selected.getId());
         }
+        return selectedIds;
+    }
+
+    /**
+     * Publishes the first answer, then starts the cache that keeps it up to date. The zxid of
+     * each registration read is kept, so that the cache's replay of it as it builds is
+     * recognised without reading it again. A registration that can't be parsed fails the first
+     * answer. In lazy mode the brokers it didn't read are then read in one batch, rather than
+     * one at a time as the cache reports them.
+     */
+    private void firstLoadComplete(CompletableFuture<Void> attempt,
+            Map<Integer, Registration> loaded) {
+        metrics.recordInitialLoad(System.nanoTime() - initialisationStart);
+        List<BrokerInfo> parsed = new ArrayList<BrokerInfo>(loaded.size());
+        for (Registration registration : loaded.values()) {
+            if (registration.getFailure() != null) {
+                initialisationFailed(attempt, registration.getFailure());
+                return;
+            }
+            parsed.add(registration.getBrokerInfo());
+        }
+        synchronized (this) {
+            if (closed) {
+                attempt.completeExceptionally(closedException());
+                return;
+            }
+        }
+        List<Integer> toRead = new ArrayList<Integer>();
+        synchronized (brokersLock) {
+            if (!seeded) {
+                brokers = BrokerTable.of(parsed);
+                for (Registration registration : loaded.values()) {
+                    versions.put(registration.getBrokerId(), registration.getModifiedZxid());
+                }
+                publishBrokers();
+                for (Integer brokerId : unreadIds) {
+                    if (needsReading(brokerId, 0)) {
+                        toRead.add(brokerId);
+                    }
+                }
+            }
+            unreadIds = Collections.emptyList();
+        }
+        readRegistrations(toRead);
+        // Started under the lock, so that a close either sees the cache or stops it starting
+        synchronized (this) {
+            if (closed) {
+                attempt.completeExceptionally(closedException());
+                return;
+            }
+            try {
+                cacheStart = System.nanoTime();
+                pathChildrenCache = makePathChildrenCache();
+                pathChildrenCache.getListenable().addListener(new BrokerCacheListener());
+                pathChildrenCache.start(StartMode.POST_INITIALIZED_EVENT);
+            } catch (Exception e) {
+                initialisationFailed(attempt, e);
+                return;
+            }
+            initialised = true;
+        }
+        attempt.complete(null);
+    }
+
+    private static IllegalStateException closedException() {
+        return new IllegalStateException("The fetcher has been closed");
+    }
 
-        List<BrokerInfo> brokerInfos = new ArrayList<BrokerInfo>();
-        List<ChildData> currentData = pathChildrenCache.getCurrentData();
-        for (ChildData childData : currentData) {
-            String data = new String(childData.getData());
-            DataParser dataParser = makeDataParser();
-            BrokerInfo brokerInfo = dataParser.parseData(data);
-            brokerInfo.setId(parseBrokerId(childData.getPath()));
-            brokerInfos.add(brokerInfo);
+    /**
+     * Unlike {@link #fetchBrokerInfo()} this never connects to Zookeeper; before the first
+     * fetch it returns an empty list.
+     *
+     * @return the brokers currently selected for bootstrapping
+     */
+    public List<BrokerInfo> getBootstrapBrokers() {
+        return bootstrapBrokers;
+    }
+
+    /**
+     * @return every registered broker, ordered by broker id
+     */
+    public List<BrokerInfo> getAllBrokers() {
+        return brokers;
+    }
+
+    /**
+     * Like {@link #getAllBrokers()}, with primitive access to each column and lookup by id.
+     */
+    public BrokerTable getBrokerTable() {
+        return brokers;
+    }
+
+    /**
+     * @return whether the published brokers may be out of date, because the connection to
+     *         Zookeeper is down or removals seen since it came back are still being held
+     */
+    public boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * Sets how long removals are held after reconnecting to Zookeeper. Defaults to
+     * {@link #DEFAULT_RECONNECT_GRACE_MILLIS}.
+     */
+    public void setReconnectGracePeriod(long gracePeriod, TimeUnit unit) {
+        Preconditions.checkArgument(gracePeriod >= 0, "gracePeriod must not be negative");
+        reconnectGraceMillis = unit.toMillis(gracePeriod);
+    }
+
+    public DiscoveryMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the controller and partition leaders of this cluster, read lazily over the same
+     *         Zookeeper session as the brokers
+     * @throws IllegalStateException if the brokers haven't been fetched yet
+     */
+    public ClusterStateCache getClusterState() {
+        ClusterStateCache current = clusterState;
+        if (current == null) {
+            // Only the first call takes the lock, so leader lookups never wait on the fetcher
+            synchronized (this) {
+                Preconditions.checkState(initialised, "The brokers have not been fetched yet");
+                current = clusterState;
+                if (current == null) {
+                    current = makeClusterStateCache();
+                    clusterState = current;
+                }
+            }
         }
-        return getTopThree(brokerInfos);
+        return current;
+    }
+
+    /**
+     * Never blocks; the first call for a topic starts watching it.
+     *
+     * @return the id of the partition's leader, or {@link TopicLeaderCache#NO_LEADER} if it
+     *         isn't known yet
+     * @see ClusterStateCache#leaderFor(String, int)
+     */
+    public int leaderFor(String topic, int partition) {
+        return getClusterState().leaderFor(topic, partition);
+    }
+
+    public void addBrokerChangeListener(BrokerChangeListener listener) {
+        Preconditions.checkNotNull(listener);
+        listeners.add(listener);
+    }
+
+    public void removeBrokerChangeListener(BrokerChangeListener listener) {
+        listeners.remove(listener);
     }
 
     private int parseBrokerId(String path) {
-        return Integer.parseInt(path.substring(path.lastIndexOf("/") + 1, path.length()));
+        return Integer.parseInt(ZKPaths.getNodeFromPath(path));
     }
 
     protected DataParser makeDataParser() {
         return new DataParser();
     }
 
-    private List<BrokerInfo> getTopThree(List<BrokerInfo> brokerInfos) {
-        Collections.sort(brokerInfos, new Comparator<BrokerInfo>() {
+    /**
+     * Reseeds the index once the cache has been built: brokers the cache doesn't hold are
+     * dropped, and any registration written since the index last read it is read again.
+     */
+    private void loadInitialBrokers() {
+        metrics.recordCacheBuild(System.nanoTime() - cacheStart);
+        List<Integer> toRead = new ArrayList<Integer>();
+        synchronized (brokersLock) {
+            Set<Integer> registered = new TreeSet<Integer>();
+            for (ChildData childData : pathChildrenCache.getCurrentData()) {
+                int brokerId = parseBrokerId(childData.getPath());
+                registered.add(brokerId);
+                if (needsReading(brokerId, childData.getStat().getMzxid())) {
+                    toRead.add(brokerId);
+                }
+            }
+            Set<Integer> gone = new TreeSet<Integer>(versions.keySet());
+            gone.removeAll(registered);
+            versions.keySet().removeAll(gone);
+            brokers = brokers.withoutBrokers(gone);
+            seeded = true;
+            publishBrokers();
+        }
+        readRegistrations(toRead);
+    }
+
+    /**
+     * Before the cache has been built it replays every registration, and those the first answer
+     * already read are skipped. Anything newer is read and applied straight away, since the
+     * cache doesn't always report that it has been built: a registration that is removed and
+     * recreated while it is being read can leave it waiting forever.
+     */
+    private void brokerUpdated(ChildData childData) {
+        int brokerId = parseBrokerId(childData.getPath());
+        synchronized (brokersLock) {
+            pendingRemovals.remove(brokerId);
+            if (!needsReading(brokerId, childData.getStat().getMzxid())) {
+                return;
+            }
+        }
+        readRegistrations(Collections.singletonList(brokerId));
+    }
+
+    /**
+     * @return whether a read should be sent for a registration written at this zxid. One
+     *         already being read is not read twice, but is read again afterwards if what comes
+     *         back is older.
+     */
+    private boolean needsReading(int brokerId, long modifiedZxid) {
+        Long held = versions.get(brokerId);
+        if (held != null && held >= modifiedZxid) {
+            return false;
+        }
+        Long awaited = reads.get(brokerId);
+        if (awaited != null) {
+            reads.put(brokerId, Math.max(awaited, modifiedZxid));
+            return false;
+        }
+        reads.put(brokerId, modifiedZxid);
+        return true;
+    }
+
+    private void readRegistrations(final List<Integer> brokerIds) {
+        if (brokerIds.isEmpty()) {
+            return;
+        }
+        bulkLoader.loadRegistrations(brokerIdsPath, brokerIds).whenComplete(
+                new BiConsumer<Map<Integer, Registration>, Throwable>() {
+
+                    public void accept(Map<Integer, Registration> loaded, Throwable failure) {
+                        if (failure == null) {
+                            registrationsRead(brokerIds, loaded);
+                        } else {
+                            readFailed(brokerIds);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Applies a batch of reads and publishes once. A broker that has gone is left for the
+     * cache to report.
+     */
+    private void registrationsRead(List<Integer> brokerIds, Map<Integer, Registration> loaded) {
+        List<Integer> again = new ArrayList<Integer>();
+        synchronized (brokersLock) {
+            BrokerTable updated = brokers;
+            for (Integer brokerId : brokerIds) {
+                Long awaited = reads.remove(brokerId);
+                Registration registration = loaded.get(brokerId);
+                if (registration == null) {
+                    continue;
+                }
+                Long held = versions.get(brokerId);
+                if (held == null || held < registration.getModifiedZxid()) {
+                    versions.put(brokerId, registration.getModifiedZxid());
+                    if (registration.getFailure() == null) {
+                        updated = updated.withBroker(registration.getBrokerInfo());
+                    } else {
+                        // A registration we can't read is no use for bootstrapping
+                        updated = updated.withoutBroker(brokerId);
+                    }
+                }
+                if (awaited != null && awaited > registration.getModifiedZxid()) {
+                    reads.put(brokerId, awaited);
+                    again.add(brokerId);
+                }
+            }
+            if (updated != brokers) {
+                brokers = updated;
+                publishBrokers();
+            }
+        }
+        readRegistrations(again);
+    }
+
+    /**
+     * The cache only reports registrations that change, so reads lost with the connection are
+     * sent again once it is back.
+     */
+    private void readFailed(List<Integer> brokerIds) {
+        synchronized (brokersLock) {
+            reads.keySet().removeAll(brokerIds);
+            failedReads.addAll(brokerIds);
+        }
+    }
+
+    private void brokerRemoved(ChildData childData) {
+        synchronized (brokersLock) {
+            int brokerId = parseBrokerId(childData.getPath());
+            if (reconciling || disconnected) {
+                if (brokers.containsBroker(brokerId)) {
+                    pendingRemovals.add(brokerId);
+                }
+            } else {
+                versions.remove(brokerId);
+                if (brokers.containsBroker(brokerId)) {
+                    brokers = brokers.withoutBroker(brokerId);
+                    publishBrokers();
+                }
+            }
+        }
+    }
+
+    private void connectionInterrupted() {
+        synchronized (brokersLock) {
+            disconnected = true;
+            stale = true;
+        }
+    }
+
+    /**
+     * Called as the cache starts re-reading the registrations. Another interruption before the
+     * grace period ends starts it again on the next reconnection.
+     */
+    private void reconnected() {
+        List<Integer> toRead = new ArrayList<Integer>();
+        synchronized (brokersLock) {
+            disconnected = false;
+            reconciling = true;
+            if (reconciliation != null) {
+                reconciliation.cancel(false);
+            }
+            reconciliation = getReconcileExecutor().schedule(new Runnable() {
+
+                public void run() {
+                    finishReconciliation();
+                }
+            }, reconnectGraceMillis, TimeUnit.MILLISECONDS);
+            for (Integer brokerId : failedReads) {
+                if (!reads.containsKey(brokerId)) {
+                    reads.put(brokerId, 0L);
+                    toRead.add(brokerId);
+                }
+            }
+            failedReads.clear();
+        }
+        readRegistrations(toRead);
+    }
+
+    private void finishReconciliation() {
+        synchronized (brokersLock) {
+            if (disconnected) {
+                return;
+            }
+            reconciling = false;
+            reconciliation = null;
+            BrokerTable remaining = brokers.withoutBrokers(pendingRemovals);
+            versions.keySet().removeAll(pendingRemovals);
+            pendingRemovals.clear();
+            stale = false;
+            if (remaining != brokers) {
+                brokers = remaining;
+                publishBrokers();
+            }
+        }
+    }
+
+    private ScheduledExecutorService getReconcileExecutor() {
+        if (reconcileExecutor == null) {
+            reconcileExecutor = makeReconcileExecutor();
+        }
+        return reconcileExecutor;
+    }
+
+    ScheduledExecutorService makeReconcileExecutor() {
+        return Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
 
-            public int compare(BrokerInfo left, BrokerInfo right) {
-                return new CompareToBuilder().append(left.getId(), right.getId()).toComparison();
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "kafka-broker-reconciler");
+                thread.setDaemon(true);
+                return thread;
             }
         });
+    }
 
-        if (brokerInfos.size() < 3) {
-            return brokerInfos;
-        } else {
-            return brokerInfos.subList(0, 3);
+    /**
+     * Asks the selection strategy to choose the bootstrap brokers again without any change in
+     * membership, for strategies whose choice depends on more than the registered brokers.
+     */
+    public void reselect() {
+        synchronized (brokersLock) {
+            publishSelection(brokers);
         }
     }
 
-    private void initialisePathChildrenCache() throws Exception {
-        if (curatorFramework.checkExists().forPath("/brokers/ids") != null) {
-            pathChildrenCache = makePathChildrenCache();
-            pathChildrenCache.start(StartMode.BUILD_INITIAL_CACHE);
-        } else {
-            throw new NoNodeException("There is no node at /brokers/ids");
+    private void publishBrokers() {
+        metrics.setBrokerCount(brokers.size());
+        publishSelection(brokers);
+    }
+
+    private void publishSelection(List<BrokerInfo> sortedBrokers) {
+        bootstrapBrokers = Collections.unmodifiableList(selectionStrategy.select(sortedBrokers));
+        for (BrokerChangeListener listener : listeners) {
+            listener.brokersChanged(sortedBrokers);
         }
-        initialised = true;
     }
 
     PathChildrenCache makePathChildrenCache() {
-        return new PathChildrenCache(curatorFramework, "/brokers/ids", true);
+        return new PathChildrenCache(curatorFramework, brokerIdsPath, false);
     }
 
+    /**
+     * A shared session may already be connected, in which case the connect time is just the
+     * time taken to acquire it.
+     */
     private void initialiseCurator(String hostAndPort) {
         zookeeperConnector = makeZookeeperConnector(hostAndPort);
         curatorFramework = zookeeperConnector.getCuratorFramework();
+        connectionStateListener = new SessionStateListener();
+        curatorFramework.getConnectionStateListenable().addListener(connectionStateListener);
+        if (curatorFramework.getZookeeperClient().isConnected()) {
+            metrics.recordConnect(System.nanoTime() - initialisationStart);
+        }
+    }
+
+    ClusterStateCache makeClusterStateCache() {
+        return new ClusterStateCache(curatorFramework, chroot);
+    }
+
+    BrokerBulkLoader makeBrokerBulkLoader() {
+        return new BrokerBulkLoader(curatorFramework, dataParser, metrics);
     }
 
     ZookeeperConnector makeZookeeperConnector(String hostAndPort) {
-        return new ZookeeperConnector(hostAndPort);
+        return connectionRegistry.acquire(hostAndPort);
     }
 
+    /**
+     * A first load still in flight is abandoned: its attempt fails, and the cache it would have
+     * started is never started.
+     */
     public void close() throws IOException {
-        pathChildrenCache.close();
-        curatorFramework.close();
+        CompletableFuture<Void> abandoned;
+        synchronized (this) {
+            closed = true;
+            abandoned = initialisation;
+            if (clusterState != null) {
+                clusterState.close();
+            }
+            if (pathChildrenCache != null) {
+                closeQuietly(pathChildrenCache);
+            }
+            if (zookeeperConnector != null) {
+                releaseSession();
+            }
+        }
+        if (abandoned != null) {
+            abandoned.completeExceptionally(closedException());
+        }
+        synchronized (brokersLock) {
+            if (reconcileExecutor != null) {
+                reconcileExecutor.shutdownNow();
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // It is being abandoned either way
+        }
+    }
+
+    private void releaseSession() {
+        if (connectionStateListener != null) {
+            curatorFramework.getConnectionStateListenable().removeListener(
+                    connectionStateListener);
+        }
+        zookeeperConnector.close();
+        zookeeperConnector = null;
+    }
+
+    private class BrokerCacheListener implements PathChildrenCacheListener {
+
+        public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) {
+            metrics.recordCacheEvent(event.getType());
+            switch (event.getType()) {
+            case CHILD_ADDED:
+            case CHILD_UPDATED:
+                brokerUpdated(event.getData());
+                break;
+            case CHILD_REMOVED:
+                brokerRemoved(event.getData());
+                break;
+            case INITIALIZED:
+                loadInitialBrokers();
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+    private class SessionStateListener implements ConnectionStateListener {
+
+        public void stateChanged(CuratorFramework client, ConnectionState newState) {
+            metrics.recordConnectionStateChange(newState);
+            switch (newState) {
+            case CONNECTED:
+                metrics.recordConnect(System.nanoTime() - initialisationStart);
+                break;
+            case SUSPENDED:
+            case LOST:
+                connectionInterrupted();
+                break;
+            case RECONNECTED:
+                reconnected();
+                break;
+            default:
+                break;
+            }
+        }
     }
 
 }
@@ -0,0 +1,98 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Renders brokers and changes to them as single-line JSON, for tools that consume discovery
+ * output rather than link against this library.
+ * <p>
+ * Each broker is written with its id, host, port, rack, registration time in milliseconds and
+ * endpoints. Missing values are written as <code>null</code>.
+ */
+final class BrokerJsonWriter {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * @return <code>{"connectionString":...,"added":[...],"removed":[...],"updated":[...]}</code>
+     */
+    String writeChange(BrokerChangeEvent event, String connectionString) {
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"connectionString\":");
+        writeString(json, connectionString);
+        json.append(",\"added\":");
+        writeBrokerList(json, event.getAdded());
+        json.append(",\"removed\":");
+        writeBrokerList(json, event.getRemoved());
+        json.append(",\"updated\":");
+        writeBrokerList(json, event.getUpdated());
+        return json.append('}').toString();
+    }
+
+    /**
+     * @return <code>{"connectionString":...,"brokers":[...]}</code>
+     */
+    String writeBrokers(List<BrokerInfo> brokers, String connectionString) {
+        StringBuilder json = new StringBuilder(64 + brokers.size() * 128);
+        json.append("{\"connectionString\":");
+        writeString(json, connectionString);
+        json.append(",\"brokers\":");
+        writeBrokerList(json, brokers);
+        return json.append('}').toString();
+    }
+
+    private void writeBrokerList(StringBuilder json, List<BrokerInfo> brokers) {
+        json.append('[');
+        for (int i = 0; i < brokers.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            writeBroker(json, brokers.get(i));
+        }
+        json.append(']');
+    }
+
+    private void writeBroker(StringBuilder json, BrokerInfo brokerInfo) {
+        json.append("{\"id\":").append(brokerInfo.getId()).append(",\"host\":");
+        writeString(json, brokerInfo.getHost());
+        json.append(",\"port\":").append(brokerInfo.getPort()).append(",\"rack\":");
+        writeString(json, brokerInfo.getRack());
+        Date timestamp = brokerInfo.getTimestamp();
+        json.append(",\"timestamp\":").append(timestamp == null ? "null" : Long.toString(
+                timestamp.getTime()));
+        json.append(",\"endpoints\":[");
+        List<BrokerEndpoint> endpoints = brokerInfo.getEndpoints();
+        for (int i = 0; i < endpoints.size(); i++) {
+            BrokerEndpoint endpoint = endpoints.get(i);
+            json.append(i > 0 ? ",{\"listener\":" : "{\"listener\":");
+            writeString(json, endpoint.getListenerName());
+            json.append(",\"securityProtocol\":");
+            writeString(json, endpoint.getSecurityProtocol());
+            json.append(",\"host\":");
+            writeString(json, endpoint.getHost());
+            json.append(",\"port\":").append(endpoint.getPort()).append('}');
+        }
+        json.append("]}");
+    }
+
+    private void writeString(StringBuilder json, String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xf]);
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+}
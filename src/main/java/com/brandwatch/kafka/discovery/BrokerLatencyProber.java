@@ -0,0 +1,245 @@
+package com.brandwatch.kafka.discovery;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Measures how long it takes to open a TCP connection to each broker.
+ * <p>
+ * All brokers in a probe are connected to in parallel with non-blocking channels on a single
+ * selector, and every connection is abandoned at a shared deadline. Addresses are resolved
+ * before the deadline starts, so only the connect itself is timed. Each measurement is folded
+ * into an exponentially weighted moving average per broker id; a broker that refuses the
+ * connection or misses the deadline is charged twice the deadline.
+ */
+public class BrokerLatencyProber {
+
+    public static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = 250;
+    public static final double DEFAULT_SMOOTHING_FACTOR = 0.3;
+
+    private static final int FAILURE_PENALTY_MULTIPLIER = 2;
+
+    private final long connectTimeoutNanos;
+    private final double smoothingFactor;
+    private final ConcurrentMap<Integer, Double> averageLatencies =
+            new ConcurrentHashMap<Integer, Double>();
+
+    public BrokerLatencyProber() {
+        this(DEFAULT_CONNECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_SMOOTHING_FACTOR);
+    }
+
+    /**
+     * @param smoothingFactor the weight of each new measurement, between 0 and 1
+     */
+    public BrokerLatencyProber(long connectTimeout, TimeUnit unit, double smoothingFactor) {
+        Preconditions.checkArgument(connectTimeout > 0, "connectTimeout must be positive");
+        Preconditions.checkArgument(smoothingFactor > 0 && smoothingFactor <= 1,
+                "smoothingFactor must be in (0, 1]");
+        this.connectTimeoutNanos = unit.toNanos(connectTimeout);
+        this.smoothingFactor = smoothingFactor;
+    }
+
+    /**
+     * Connects to every broker in parallel and records how long each took. Returns once all
+     * connections have completed or the deadline has passed.
+     */
+    public void probe(List<BrokerInfo> brokers) throws IOException {
+        // Resolve every address before the deadline starts, so that a slow lookup neither
+        // counts as connect latency nor eats into the other brokers' time
+        Map<BrokerInfo, InetSocketAddress> addresses =
+                new IdentityHashMap<BrokerInfo, InetSocketAddress>();
+        List<BrokerInfo> resolved = new ArrayList<BrokerInfo>(brokers.size());
+        for (BrokerInfo brokerInfo : brokers) {
+            InetSocketAddress address = resolve(brokerInfo);
+            if (address == null) {
+                recordFailure(brokerInfo);
+            } else {
+                addresses.put(brokerInfo, address);
+                resolved.add(brokerInfo);
+            }
+        }
+        Selector selector = Selector.open();
+        try {
+            long deadline = System.nanoTime() + connectTimeoutNanos;
+            int pending = 0;
+            for (BrokerInfo brokerInfo : resolved) {
+                if (startConnect(selector, brokerInfo, addresses.get(brokerInfo))) {
+                    pending++;
+                }
+            }
+            long remaining;
+            while (pending > 0 && (remaining = deadline - System.nanoTime()) > 0) {
+                selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+                Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    if (finishConnect(selectedKeys.next())) {
+                        pending--;
+                    }
+                    selectedKeys.remove();
+                }
+            }
+            for (SelectionKey key : selector.keys()) {
+                if (key.isValid()) {
+                    recordFailure(((PendingConnect) key.attachment()).brokerInfo);
+                    close(key.channel());
+                }
+            }
+        } finally {
+            selector.close();
+        }
+    }
+
+    /**
+     * @return the average connect latency, or {@link Double#MAX_VALUE} if the broker has never
+     *         been probed
+     */
+    public double getAverageLatencyNanos(int brokerId) {
+        Double latency = averageLatencies.get(brokerId);
+        return latency == null ? Double.MAX_VALUE : latency;
+    }
+
+    /**
+     * @return a copy of the brokers ordered fastest first. Brokers that have never been probed
+     *         go last, and ties keep their original order.
+     */
+    public List<BrokerInfo> rank(List<BrokerInfo> brokers) {
+        // Read each average once, as probes may update them while we sort. Key on the copied
+        // elements, since a BrokerTable hands out a new view each time it is read.
+        List<BrokerInfo> ranked = new ArrayList<BrokerInfo>(brokers);
+        final Map<BrokerInfo, Double> latencies = new IdentityHashMap<BrokerInfo, Double>();
+        for (BrokerInfo brokerInfo : ranked) {
+            latencies.put(brokerInfo, getAverageLatencyNanos(brokerInfo.getId()));
+        }
+        Collections.sort(ranked, new Comparator<BrokerInfo>() {
+
+            public int compare(BrokerInfo left, BrokerInfo right) {
+                return Double.compare(latencies.get(left), latencies.get(right));
+            }
+        });
+        return ranked;
+    }
+
+    /**
+     * Forgets brokers that are no longer registered.
+     */
+    public void retainOnly(List<BrokerInfo> brokers) {
+        List<Integer> ids = new ArrayList<Integer>(brokers.size());
+        for (BrokerInfo brokerInfo : brokers) {
+            ids.add(brokerInfo.getId());
+        }
+        averageLatencies.keySet().retainAll(ids);
+    }
+
+    /**
+     * @return the broker's address, or null if it can't be resolved
+     */
+    InetSocketAddress resolve(BrokerInfo brokerInfo) {
+        try {
+            InetSocketAddress address = new InetSocketAddress(brokerInfo.getHost(),
+                    brokerInfo.getPort());
+            return address.isUnresolved() ? null : address;
+        } catch (RuntimeException e) {
+            // A missing host or a port out of range
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the connection is still in progress
+     */
+    private boolean startConnect(Selector selector, BrokerInfo brokerInfo,
+            InetSocketAddress address) {
+        SocketChannel channel = null;
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            long start = System.nanoTime();
+            if (channel.connect(address)) {
+                record(brokerInfo, System.nanoTime() - start);
+                close(channel);
+                return false;
+            }
+            channel.register(selector, SelectionKey.OP_CONNECT, new PendingConnect(brokerInfo,
+                    start));
+            return true;
+        } catch (IOException e) {
+            recordFailure(brokerInfo);
+            close(channel);
+        } catch (RuntimeException e) {
+            // Addresses the channel won't connect to
+            recordFailure(brokerInfo);
+            close(channel);
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the connection attempt is over, successfully or not
+     */
+    private boolean finishConnect(SelectionKey key) {
+        PendingConnect pendingConnect = (PendingConnect) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+        try {
+            if (channel.finishConnect()) {
+                record(pendingConnect.brokerInfo, System.nanoTime() - pendingConnect.start);
+            } else {
+                return false;
+            }
+        } catch (IOException e) {
+            recordFailure(pendingConnect.brokerInfo);
+        }
+        key.cancel();
+        close(channel);
+        return true;
+    }
+
+    private void recordFailure(BrokerInfo brokerInfo) {
+        record(brokerInfo, connectTimeoutNanos * FAILURE_PENALTY_MULTIPLIER);
+    }
+
+    private void record(BrokerInfo brokerInfo, long latencyNanos) {
+        Double previous = averageLatencies.get(brokerInfo.getId());
+        double average = previous == null ? latencyNanos : smoothingFactor * latencyNanos
+                + (1 - smoothingFactor) * previous;
+        averageLatencies.put(brokerInfo.getId(), average);
+    }
+
+    private void close(Channel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing more we can do with it
+        }
+    }
+
+    private static class PendingConnect {
+
+        private final BrokerInfo brokerInfo;
+        private final long start;
+
+        PendingConnect(BrokerInfo brokerInfo, long start) {
+            this.brokerInfo = brokerInfo;
+            this.start = start;
+        }
+    }
+
+}
@@ -3,8 +3,45 @@ package com.brandwatch.kafka.discovery;
 
 public class BrokerParserException extends Exception {
 
+    /**
+     * Why a registration could not be parsed, coarse enough to count failures by.
+     */
+    public enum Reason {
+        /**
+         * There was no registration at all.
+         */
+        EMPTY,
+        /**
+         * The registration is not well-formed JSON.
+         */
+        MALFORMED,
+        /**
+         * A required value is null, empty or absent.
+         */
+        MISSING_VALUE,
+        /**
+         * A value is present but out of range or of the wrong type.
+         */
+        INVALID_VALUE,
+        /**
+         * An advertised endpoint is not of the form <code>LISTENER://host:port</code>.
+         */
+        INVALID_ENDPOINT
+    }
+
+    private final Reason reason;
+
     public BrokerParserException(String message) {
+        this(Reason.MALFORMED, message);
+    }
+
+    public BrokerParserException(Reason reason, String message) {
         super(message);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
     }
 
     private static final long serialVersionUID = 1L;
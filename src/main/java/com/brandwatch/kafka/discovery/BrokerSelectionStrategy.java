@@ -0,0 +1,21 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.List;
+
+/**
+ * Chooses which of the registered brokers a client should bootstrap from.
+ * <p>
+ * A strategy is consulted by {@link BrokerInfoFetcher} each time the registered brokers change,
+ * never on the read path, and may be called from the Zookeeper event thread.
+ */
+public interface BrokerSelectionStrategy {
+
+    /**
+     * @param brokers every registered broker, ordered by broker id. The list must not be
+     *            modified.
+     * @return the brokers to bootstrap from, in the order they should appear in the connection
+     *         string
+     */
+    List<BrokerInfo> select(List<BrokerInfo> brokers);
+
+}
@@ -0,0 +1,50 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * An immutable view of the bootstrap brokers together with their pre-rendered connection
+ * string. The version increases by one each time a {@link KafkaBrokerDiscoverer} publishes a
+ * new snapshot.
+ * <p>
+ * The fingerprint identifies the hosts and ports behind the connection string, so a new
+ * snapshot whose brokers render the same way can reuse the previous string.
+ */
+public class BrokerSnapshot {
+
+    private final long version;
+    private final List<BrokerInfo> brokers;
+    private final String connectionString;
+    private final long fingerprint;
+
+    public BrokerSnapshot(long version, List<BrokerInfo> brokers, String connectionString,
+            long fingerprint) {
+        Preconditions.checkNotNull(brokers);
+        this.version = version;
+        this.brokers = brokers;
+        this.connectionString = connectionString;
+        this.fingerprint = fingerprint;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<BrokerInfo> getBrokers() {
+        return brokers;
+    }
+
+    public String getConnectionString() {
+        return connectionString;
+    }
+
+    /**
+     * @see ConnectionStringCreator#fingerprint(List)
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+}
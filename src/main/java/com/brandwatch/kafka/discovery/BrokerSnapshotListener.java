@@ -0,0 +1,12 @@
+package com.brandwatch.kafka.discovery;
+
+/**
+ * Notified by a {@link KafkaBrokerDiscoverer} each time it publishes a new
+ * {@link BrokerSnapshot}. Callbacks run while the discoverer is publishing, so they should be
+ * quick.
+ */
+public interface BrokerSnapshotListener {
+
+    void snapshotPublished(BrokerSnapshot snapshot);
+
+}
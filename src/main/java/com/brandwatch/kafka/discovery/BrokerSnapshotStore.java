@@ -0,0 +1,198 @@
+package com.brandwatch.kafka.discovery;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+
+/**
+ * Keeps the last known good set of bootstrap brokers in a small binary file, so that a
+ * {@link KafkaBrokerDiscoverer} can serve it at startup before Zookeeper has answered.
+ * <p>
+ * The file starts with a magic number, a format version, the length of the body and a CRC32
+ * of the body. Writes go to a temporary file in the same directory which is synced and then
+ * atomically renamed over the old one, so readers only ever see a complete snapshot. Reads map
+ * the file rather than copying it through a stream.
+ */
+public class BrokerSnapshotStore {
+
+    private static final int MAGIC = 0x4b424453;
+    private static final short FORMAT_VERSION = 1;
+    private static final int HEADER_LENGTH = 4 + 2 + 4 + 4;
+    private static final int NULL_LENGTH = -1;
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    private final Path path;
+
+    public BrokerSnapshotStore(Path path) {
+        Preconditions.checkNotNull(path);
+        this.path = path.toAbsolutePath();
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Replaces the stored snapshot. Either the old or the new snapshot is readable throughout.
+     */
+    public void write(List<BrokerInfo> brokers) throws IOException {
+        Preconditions.checkNotNull(brokers);
+        byte[] body = encode(brokers);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + body.length);
+        buffer.putInt(MAGIC).putShort(FORMAT_VERSION).putInt(body.length)
+            .putInt((int) crc.getValue()).put(body);
+        buffer.flip();
+
+        Path temporary = Files.createTempFile(path.getParent(), path.getFileName().toString(),
+                ".tmp");
+        try {
+            FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE);
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * @return the stored brokers, or null if nothing has been stored yet
+     * @throws IOException if the file can't be read, or is truncated or corrupt
+     */
+    public List<BrokerInfo> read() throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        try {
+            long size = channel.size();
+            if (size < HEADER_LENGTH) {
+                throw new IOException("Snapshot " + path + " is truncated");
+            }
+            MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(path + " is not a broker snapshot");
+            }
+            short formatVersion = buffer.getShort();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new IOException("Unsupported snapshot format " + formatVersion);
+            }
+            int bodyLength = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (bodyLength != size - HEADER_LENGTH) {
+                throw new IOException("Snapshot " + path + " is truncated");
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                throw new IOException("Snapshot " + path + " failed its checksum");
+            }
+            return decode(buffer);
+        } catch (RuntimeException e) {
+            // A consistent checksum over inconsistent contents: written by something else
+            throw new IOException("Snapshot " + path + " is corrupt", e);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private byte[] encode(List<BrokerInfo> brokers) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(brokers.size() * 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(brokers.size());
+        for (BrokerInfo brokerInfo : brokers) {
+            out.writeInt(brokerInfo.getId());
+            writeString(out, brokerInfo.getHost());
+            out.writeInt(brokerInfo.getPort());
+            out.writeInt(brokerInfo.getJmxPort());
+            out.writeInt(brokerInfo.getVersion());
+            Date timestamp = brokerInfo.getTimestamp();
+            out.writeLong(timestamp == null ? NO_TIMESTAMP : timestamp.getTime());
+            writeString(out, brokerInfo.getRack());
+            out.writeInt(brokerInfo.getEndpoints().size());
+            for (BrokerEndpoint endpoint : brokerInfo.getEndpoints()) {
+                writeString(out, endpoint.getListenerName());
+                writeString(out, endpoint.getSecurityProtocol());
+                writeString(out, endpoint.getHost());
+                out.writeInt(endpoint.getPort());
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private List<BrokerInfo> decode(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        List<BrokerInfo> brokers = new ArrayList<BrokerInfo>(count);
+        for (int i = 0; i < count; i++) {
+            BrokerInfo brokerInfo = new BrokerInfo();
+            brokerInfo.setId(buffer.getInt());
+            brokerInfo.setHost(readString(buffer));
+            brokerInfo.setPort(buffer.getInt());
+            brokerInfo.setJmxPort(buffer.getInt());
+            brokerInfo.setVersion(buffer.getInt());
+            long timestamp = buffer.getLong();
+            brokerInfo.setTimestamp(timestamp == NO_TIMESTAMP ? null : new Date(timestamp));
+            brokerInfo.setRack(readString(buffer));
+            int endpointCount = buffer.getInt();
+            if (endpointCount > 0) {
+                List<BrokerEndpoint> endpoints = new ArrayList<BrokerEndpoint>(endpointCount);
+                for (int j = 0; j < endpointCount; j++) {
+                    endpoints.add(new BrokerEndpoint(readString(buffer), readString(buffer),
+                            readString(buffer), buffer.getInt()));
+                }
+                brokerInfo.setEndpoints(Collections.unmodifiableList(endpoints));
+            }
+            brokers.add(brokerInfo);
+        }
+        return Collections.unmodifiableList(brokers);
+    }
+
+    private void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL_LENGTH);
+        } else {
+            byte[] bytes = value.getBytes(Charsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,366 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.RandomAccess;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+/**
+ * An immutable table of brokers ordered by id, stored a column at a time.
+ * <p>
+ * Ids, ports, JMX ports and versions are held in <code>int</code> arrays and registration
+ * times in a <code>long</code> array of epoch milliseconds, so a table costs a handful of
+ * arrays rather than an object graph per broker, and scanning a column touches only that
+ * column. Hosts and racks are interned, since the same few strings recur across clusters.
+ * Brokers are looked up by id through an open-addressed table of <code>int</code> slots, with
+ * no boxing.
+ * <p>
+ * The table is also a read-only <code>List&lt;BrokerInfo&gt;</code>. Its elements are views of
+ * a row that are created on access and reject every setter; prefer the primitive accessors
+ * where it matters. Changes produce a new table and leave this one untouched.
+ */
+public final class BrokerTable extends AbstractList<BrokerInfo> implements RandomAccess {
+
+    public static final BrokerTable EMPTY = new BrokerTable(0);
+
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+    private static final int NO_SLOT = -1;
+    private static final Interner<String> STRINGS = Interners.newWeakInterner();
+    private static final Comparator<BrokerInfo> BY_ID = new Comparator<BrokerInfo>() {
+
+        public int compare(BrokerInfo left, BrokerInfo right) {
+            return Integer.compare(left.getId(), right.getId());
+        }
+    };
+
+    private final int size;
+    private final int[] ids;
+    private final int[] ports;
+    private final int[] jmxPorts;
+    private final int[] versions;
+    private final long[] timestamps;
+    private final String[] hosts;
+    private final String[] racks;
+    private final Object[] endpoints;
+    /**
+     * Each entry is a slot plus one, so that zero marks an empty entry.
+     */
+    private final int[] slotsById;
+
+    private BrokerTable(int size) {
+        this.size = size;
+        ids = new int[size];
+        ports = new int[size];
+        jmxPorts = new int[size];
+        versions = new int[size];
+        timestamps = new long[size];
+        hosts = new String[size];
+        racks = new String[size];
+        endpoints = new Object[size];
+        slotsById = new int[Math.max(2, Integer.highestOneBit(Math.max(1, size)) << 2)];
+    }
+
+    /**
+     * @throws IllegalArgumentException if two brokers have the same id
+     */
+    public static BrokerTable of(Collection<? extends BrokerInfo> brokers) {
+        if (brokers.isEmpty()) {
+            return EMPTY;
+        }
+        List<BrokerInfo> sorted = new ArrayList<BrokerInfo>(brokers);
+        Collections.sort(sorted, BY_ID);
+        BrokerTable table = new BrokerTable(sorted.size());
+        for (int slot = 0; slot < sorted.size(); slot++) {
+            Preconditions.checkArgument(slot == 0 || sorted.get(slot).getId() != sorted.get(
+                    slot - 1).getId(), "Duplicate broker id %s", sorted.get(slot).getId());
+            table.setRow(slot, sorted.get(slot));
+        }
+        return table.index();
+    }
+
+    /**
+     * @return a table with this broker added, or replacing the one with the same id
+     */
+    public BrokerTable withBroker(BrokerInfo brokerInfo) {
+        Preconditions.checkNotNull(brokerInfo);
+        int existing = slotOf(brokerInfo.getId());
+        BrokerTable table;
+        if (existing != NO_SLOT) {
+            table = new BrokerTable(size);
+            table.copyRows(this, 0, 0, size);
+            table.setRow(existing, brokerInfo);
+        } else {
+            int insertAt = -(Arrays.binarySearch(ids, 0, size, brokerInfo.getId()) + 1);
+            table = new BrokerTable(size + 1);
+            table.copyRows(this, 0, 0, insertAt);
+            table.setRow(insertAt, brokerInfo);
+            table.copyRows(this, insertAt, insertAt + 1, size - insertAt);
+        }
+        return table.index();
+    }
+
+    /**
+     * @return a table without the broker with this id, or this table if there is none
+     */
+    public BrokerTable withoutBroker(int brokerId) {
+        return withoutBrokers(Collections.singleton(brokerId));
+    }
+
+    /**
+     * @return a table without the brokers with these ids, or this table if there are none
+     */
+    public BrokerTable withoutBrokers(Collection<Integer> brokerIds) {
+        boolean[] removed = new boolean[size];
+        int removedCount = 0;
+        for (Integer brokerId : brokerIds) {
+            int slot = slotOf(brokerId);
+            if (slot != NO_SLOT && !removed[slot]) {
+                removed[slot] = true;
+                removedCount++;
+            }
+        }
+        if (removedCount == 0) {
+            return this;
+        } else if (removedCount == size) {
+            return EMPTY;
+        }
+        BrokerTable table = new BrokerTable(size - removedCount);
+        int to = 0;
+        for (int from = 0; from < size; from++) {
+            if (!removed[from]) {
+                table.copyRows(this, from, to++, 1);
+            }
+        }
+        return table.index();
+    }
+
+    private void setRow(int slot, BrokerInfo brokerInfo) {
+        ids[slot] = brokerInfo.getId();
+        ports[slot] = brokerInfo.getPort();
+        jmxPorts[slot] = brokerInfo.getJmxPort();
+        versions[slot] = brokerInfo.getVersion();
+        Date timestamp = brokerInfo.getTimestamp();
+        timestamps[slot] = timestamp == null ? NO_TIMESTAMP : timestamp.getTime();
+        hosts[slot] = intern(brokerInfo.getHost());
+        racks[slot] = intern(brokerInfo.getRack());
+        endpoints[slot] = brokerInfo.getEndpoints();
+    }
+
+    private void copyRows(BrokerTable from, int fromSlot, int toSlot, int count) {
+        System.arraycopy(from.ids, fromSlot, ids, toSlot, count);
+        System.arraycopy(from.ports, fromSlot, ports, toSlot, count);
+        System.arraycopy(from.jmxPorts, fromSlot, jmxPorts, toSlot, count);
+        System.arraycopy(from.versions, fromSlot, versions, toSlot, count);
+        System.arraycopy(from.timestamps, fromSlot, timestamps, toSlot, count);
+        System.arraycopy(from.hosts, fromSlot, hosts, toSlot, count);
+        System.arraycopy(from.racks, fromSlot, racks, toSlot, count);
+        System.arraycopy(from.endpoints, fromSlot, endpoints, toSlot, count);
+    }
+
+    private BrokerTable index() {
+        int mask = slotsById.length - 1;
+        for (int slot = 0; slot < size; slot++) {
+            int entry = hash(ids[slot]) & mask;
+            while (slotsById[entry] != 0) {
+                entry = (entry + 1) & mask;
+            }
+            slotsById[entry] = slot + 1;
+        }
+        return this;
+    }
+
+    private static int hash(int brokerId) {
+        int hash = brokerId * 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static String intern(String value) {
+        return value == null ? null : STRINGS.intern(value);
+    }
+
+    /**
+     * @return the slot holding the broker with this id, or -1 if there is none
+     */
+    public int slotOf(int brokerId) {
+        int mask = slotsById.length - 1;
+        int entry = hash(brokerId) & mask;
+        while (slotsById[entry] != 0) {
+            int slot = slotsById[entry] - 1;
+            if (ids[slot] == brokerId) {
+                return slot;
+            }
+            entry = (entry + 1) & mask;
+        }
+        return NO_SLOT;
+    }
+
+    public boolean containsBroker(int brokerId) {
+        return slotOf(brokerId) != NO_SLOT;
+    }
+
+    /**
+     * @return a view of the broker with this id, or null if there is none
+     */
+    public BrokerInfo findById(int brokerId) {
+        int slot = slotOf(brokerId);
+        return slot == NO_SLOT ? null : new BrokerView(slot);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public BrokerInfo get(int slot) {
+        Preconditions.checkElementIndex(slot, size);
+        return new BrokerView(slot);
+    }
+
+    public int getId(int slot) {
+        Preconditions.checkElementIndex(slot, size);
+        return ids[slot];
+    }
+
+    public String getHost(int slot) {
+        Preconditions.checkElementIndex(slot, size);
+        return hosts[slot];
+    }
+
+    public int getPort(int slot) {
+        Preconditions.checkElementIndex(slot, size);
+        return ports[slot];
+    }
+
+    public int getJmxPort(int slot) {
+        Preconditions.checkElementIndex(slot, size);
+        return jmxPorts[slot];
+    }
+
+    public int getVersion(int slot) {
+        Preconditions.checkElementIndex(slot, size);
+        return versions[slot];
+    }
+
+    /**
+     * @return the registration time in epoch milliseconds, or {@link Long#MIN_VALUE} if the
+     *         broker didn't register one
+     */
+    public long getTimestampMillis(int slot) {
+        Preconditions.checkElementIndex(slot, size);
+        return timestamps[slot];
+    }
+
+    public String getRack(int slot) {
+        Preconditions.checkElementIndex(slot, size);
+        return racks[slot];
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<BrokerEndpoint> getEndpoints(int slot) {
+        Preconditions.checkElementIndex(slot, size);
+        return (List<BrokerEndpoint>) endpoints[slot];
+    }
+
+    /**
+     * A read-only view of one row. Only the slot is its own; the fields it inherits are unused.
+     */
+    private final class BrokerView extends BrokerInfo {
+
+        private final int slot;
+
+        BrokerView(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public int getId() {
+            return ids[slot];
+        }
+
+        @Override
+        public String getHost() {
+            return hosts[slot];
+        }
+
+        @Override
+        public int getPort() {
+            return ports[slot];
+        }
+
+        @Override
+        public int getJmxPort() {
+            return jmxPorts[slot];
+        }
+
+        @Override
+        public int getVersion() {
+            return versions[slot];
+        }
+
+        @Override
+        public Date getTimestamp() {
+            return timestamps[slot] == NO_TIMESTAMP ? null : new Date(timestamps[slot]);
+        }
+
+        @Override
+        public String getRack() {
+            return racks[slot];
+        }
+
+        @Override
+        public List<BrokerEndpoint> getEndpoints() {
+            return BrokerTable.this.getEndpoints(slot);
+        }
+
+        @Override
+        public void setId(int id) {
+            throw new UnsupportedOperationException("Broker table views are read-only");
+        }
+
+        @Override
+        public void setHost(String host) {
+            throw new UnsupportedOperationException("Broker table views are read-only");
+        }
+
+        @Override
+        public void setPort(int port) {
+            throw new UnsupportedOperationException("Broker table views are read-only");
+        }
+
+        @Override
+        public void setJmxPort(int jmxPort) {
+            throw new UnsupportedOperationException("Broker table views are read-only");
+        }
+
+        @Override
+        public void setVersion(int version) {
+            throw new UnsupportedOperationException("Broker table views are read-only");
+        }
+
+        @Override
+        public void setTimestamp(Date timestamp) {
+            throw new UnsupportedOperationException("Broker table views are read-only");
+        }
+
+        @Override
+        public void setRack(String rack) {
+            throw new UnsupportedOperationException("Broker table views are read-only");
+        }
+
+        @Override
+        public void setEndpoints(List<BrokerEndpoint> endpoints) {
+            throw new UnsupportedOperationException("Broker table views are read-only");
+        }
+    }
+
+}
@@ -0,0 +1,235 @@
+package com.brandwatch.kafka.discovery;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Resolves the bootstrap brokers of many clusters at once, for callers that need a connection
+ * string for each of them rather than a long-lived discoverer.
+ * <p>
+ * Each cluster is discovered with {@link KafkaBrokerDiscoverer#createAsync(BrokerInfoFetcher)},
+ * so no thread waits on Zookeeper and a sweep takes about as long as its slowest cluster rather
+ * than the sum of them all. At most <code>maxConcurrency</code> clusters are in progress at
+ * once; the rest wait their turn. Each cluster has its own deadline, counted from when its
+ * discovery starts, and one that misses it is abandoned and reported as a
+ * {@link TimeoutException} without holding up the others. Every discoverer is closed once its
+ * snapshot has been taken, and clusters on the same ensemble share a session while they are
+ * being read.
+ *
+ * <pre>
+ * BulkClusterDiscoverer bulkDiscoverer = new BulkClusterDiscoverer(32, 10, TimeUnit.SECONDS);
+ * BulkDiscoveryResult result = bulkDiscoverer.discoverAll(Arrays.asList(
+ *         new ClusterSpec("logs", "zookeeper1:2181", "/kafka/logs"),
+ *         new ClusterSpec("metrics", "zookeeper2:2181")));
+ * result.getConnectionString("logs");
+ * </pre>
+ */
+public class BulkClusterDiscoverer implements Closeable {
+
+    public static final int DEFAULT_MAX_CONCURRENCY = 16;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 30000;
+
+    private final int maxConcurrency;
+    private final long timeoutMillis;
+    private final ZookeeperConnectionRegistry connectionRegistry;
+    private final ScheduledExecutorService executor;
+
+    public BulkClusterDiscoverer() {
+        this(DEFAULT_MAX_CONCURRENCY, DEFAULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public BulkClusterDiscoverer(int maxConcurrency, long timeout, TimeUnit unit) {
+        this(maxConcurrency, timeout, unit, ZookeeperConnectionRegistry.getShared());
+    }
+
+    /**
+     * @param timeout how long each cluster may take, from when its discovery starts
+     */
+    public BulkClusterDiscoverer(int maxConcurrency, long timeout, TimeUnit unit,
+            ZookeeperConnectionRegistry connectionRegistry) {
+        Preconditions.checkArgument(maxConcurrency > 0, "maxConcurrency must be positive");
+        Preconditions.checkArgument(timeout > 0, "timeout must be positive");
+        Preconditions.checkNotNull(unit);
+        Preconditions.checkNotNull(connectionRegistry);
+        this.maxConcurrency = maxConcurrency;
+        this.timeoutMillis = unit.toMillis(timeout);
+        this.connectionRegistry = connectionRegistry;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "kafka-bulk-discoverer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Blocks until every cluster has been discovered, has failed or has missed its deadline.
+     *
+     * @throws IllegalArgumentException if two clusters have the same name
+     */
+    public BulkDiscoveryResult discoverAll(Collection<ClusterSpec> clusters)
+            throws InterruptedException {
+        try {
+            return discoverAllAsync(clusters).get();
+        } catch (ExecutionException e) {
+            // Failures are collected per cluster, so only a bug gets here
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Like {@link #discoverAll(Collection)}, but never blocks.
+     */
+    public CompletableFuture<BulkDiscoveryResult> discoverAllAsync(
+            Collection<ClusterSpec> clusters) {
+        Preconditions.checkNotNull(clusters);
+        Set<String> names = new HashSet<String>();
+        for (ClusterSpec cluster : clusters) {
+            Preconditions.checkArgument(names.add(cluster.getName()),
+                    "Cluster %s appears more than once", cluster.getName());
+        }
+        final Sweep sweep = new Sweep(clusters);
+        executor.execute(new Runnable() {
+
+            public void run() {
+                sweep.startNext();
+            }
+        });
+        return sweep.result;
+    }
+
+    BrokerInfoFetcher makeBrokerInfoFetcher(ClusterSpec cluster) throws Exception {
+        return new BrokerInfoFetcher(cluster.getHostAndPort(), cluster.getChroot(),
+                cluster.getSelectionStrategy(), connectionRegistry);
+    }
+
+    CompletableFuture<KafkaBrokerDiscoverer> discover(BrokerInfoFetcher fetcher) {
+        return KafkaBrokerDiscoverer.createAsync(fetcher);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // The snapshot has already been taken, or the cluster has already failed
+        }
+    }
+
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * One call to {@link #discoverAllAsync(Collection)}. Clusters are started and finished on
+     * whichever thread gets there first, so all of its state is guarded by the sweep itself.
+     */
+    private class Sweep {
+
+        private final Queue<ClusterSpec> waiting;
+        private final Map<String, BrokerSnapshot> snapshots = new HashMap<String, BrokerSnapshot>();
+        private final Map<String, Exception> errors = new HashMap<String, Exception>();
+        private final CompletableFuture<BulkDiscoveryResult> result =
+                new CompletableFuture<BulkDiscoveryResult>();
+        private int inProgress = 0;
+
+        Sweep(Collection<ClusterSpec> clusters) {
+            waiting = new ArrayDeque<ClusterSpec>(clusters);
+        }
+
+        synchronized void startNext() {
+            while (inProgress < maxConcurrency && !waiting.isEmpty()) {
+                inProgress++;
+                start(waiting.remove());
+            }
+            if (inProgress == 0) {
+                result.complete(new BulkDiscoveryResult(snapshots, errors));
+            }
+        }
+
+        private void start(final ClusterSpec cluster) {
+            final BrokerInfoFetcher fetcher;
+            try {
+                fetcher = makeBrokerInfoFetcher(cluster);
+            } catch (Exception e) {
+                finished(cluster, null, e);
+                return;
+            }
+            final AtomicBoolean done = new AtomicBoolean(false);
+            final ScheduledFuture<?> deadline = executor.schedule(new Runnable() {
+
+                public void run() {
+                    if (done.compareAndSet(false, true)) {
+                        closeQuietly(fetcher);
+                        finished(cluster, null, new TimeoutException("Cluster "
+                                + cluster.getName() + " was not discovered within "
+                                + timeoutMillis + "ms"));
+                    }
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+            discover(fetcher).whenComplete(new BiConsumer<KafkaBrokerDiscoverer, Throwable>() {
+
+                public void accept(KafkaBrokerDiscoverer discoverer, Throwable failure) {
+                    if (!done.compareAndSet(false, true)) {
+                        // The deadline has passed and the cluster has been reported
+                        if (discoverer != null) {
+                            closeQuietly(discoverer);
+                        }
+                        return;
+                    }
+                    deadline.cancel(false);
+                    if (failure != null) {
+                        finished(cluster, null, failure instanceof CompletionException
+                                ? failure.getCause() : failure);
+                    } else {
+                        BrokerSnapshot snapshot = discoverer.getSnapshot();
+                        closeQuietly(discoverer);
+                        finished(cluster, snapshot, null);
+                    }
+                }
+            });
+        }
+
+        private synchronized void finished(ClusterSpec cluster, BrokerSnapshot snapshot,
+                Throwable failure) {
+            if (failure == null) {
+                snapshots.put(cluster.getName(), snapshot);
+            } else {
+                errors.put(cluster.getName(), failure instanceof Exception ? (Exception) failure
+                        : new ExecutionException(failure));
+            }
+            inProgress--;
+            if (!result.isDone()) {
+                // Start the next cluster from our own thread rather than Curator's
+                executor.execute(new Runnable() {
+
+                    public void run() {
+                        startNext();
+                    }
+                });
+            }
+        }
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * What a {@link BulkClusterDiscoverer} found: a snapshot of the bootstrap brokers of each
+ * cluster that was discovered in time, and the reason for each one that wasn't. Every cluster
+ * asked for appears in exactly one of the two.
+ */
+public class BulkDiscoveryResult {
+
+    private final Map<String, BrokerSnapshot> snapshots;
+    private final Map<String, Exception> errors;
+
+    public BulkDiscoveryResult(Map<String, BrokerSnapshot> snapshots,
+            Map<String, Exception> errors) {
+        Preconditions.checkNotNull(snapshots);
+        Preconditions.checkNotNull(errors);
+        this.snapshots = Collections.unmodifiableMap(new TreeMap<String, BrokerSnapshot>(
+                snapshots));
+        this.errors = Collections.unmodifiableMap(new TreeMap<String, Exception>(errors));
+    }
+
+    /**
+     * @return the snapshot of each cluster that was discovered, ordered by cluster name
+     */
+    public Map<String, BrokerSnapshot> getSnapshots() {
+        return snapshots;
+    }
+
+    /**
+     * @return why each remaining cluster wasn't discovered, ordered by cluster name. A cluster
+     *         that missed its deadline fails with a {@link java.util.concurrent.TimeoutException}.
+     */
+    public Map<String, Exception> getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return the cluster's connection string, or null if it wasn't discovered
+     */
+    public String getConnectionString(String clusterName) {
+        BrokerSnapshot snapshot = snapshots.get(clusterName);
+        return snapshot == null ? null : snapshot.getConnectionString();
+    }
+
+    public boolean isComplete() {
+        return errors.isEmpty();
+    }
+
+}
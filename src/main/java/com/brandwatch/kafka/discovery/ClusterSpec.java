@@ -0,0 +1,56 @@
+package com.brandwatch.kafka.discovery;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Describes one Kafka cluster for a {@link BulkClusterDiscoverer}: a name to report it under,
+ * the Zookeeper ensemble it registers with, its chroot and how to choose its bootstrap brokers.
+ */
+public final class ClusterSpec {
+
+    private final String name;
+    private final String hostAndPort;
+    private final String chroot;
+    private final BrokerSelectionStrategy selectionStrategy;
+
+    public ClusterSpec(String name, String hostAndPort) {
+        this(name, hostAndPort, BrokerInfoFetcher.ROOT);
+    }
+
+    public ClusterSpec(String name, String hostAndPort, String chroot) {
+        this(name, hostAndPort, chroot, new LowestIdSelectionStrategy());
+    }
+
+    /**
+     * @param hostAndPort the ensemble's connect string, without a chroot
+     */
+    public ClusterSpec(String name, String hostAndPort, String chroot,
+            BrokerSelectionStrategy selectionStrategy) {
+        Preconditions.checkNotNull(name);
+        Preconditions.checkNotNull(hostAndPort);
+        Preconditions.checkNotNull(chroot);
+        Preconditions.checkArgument(chroot.startsWith("/"), "chroot must start with /");
+        Preconditions.checkNotNull(selectionStrategy);
+        this.name = name;
+        this.hostAndPort = hostAndPort;
+        this.chroot = chroot;
+        this.selectionStrategy = selectionStrategy;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHostAndPort() {
+        return hostAndPort;
+    }
+
+    public String getChroot() {
+        return chroot;
+    }
+
+    public BrokerSelectionStrategy getSelectionStrategy() {
+        return selectionStrategy;
+    }
+
+}
@@ -0,0 +1,185 @@
+package com.brandwatch.kafka.discovery;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.NodeCache;
+import org.apache.curator.framework.recipes.cache.NodeCacheListener;
+import org.apache.curator.utils.ZKPaths;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Watches which broker is the controller and, for the topics asked about, which broker leads
+ * each partition.
+ * <p>
+ * Nothing is read until it is first asked for. The controller is read from
+ * <code>/controller</code> on the first call to {@link #getControllerId()}, and a topic's
+ * partition states are read on the first call to {@link #watchTopic(String)} or
+ * {@link #leaderFor(String, int)} for it, so that following a few topics doesn't mean mirroring
+ * every topic in the cluster. From then on both are kept up to date by watches until
+ * {@link #unwatchTopic(String)} or {@link #close()}.
+ */
+public class ClusterStateCache implements Closeable {
+
+    public static final int NO_CONTROLLER = ClusterStateParser.NO_BROKER;
+
+    private static final String CONTROLLER_PATH = "controller";
+    private static final String TOPICS_PATH = "brokers/topics";
+
+    private final CuratorFramework curatorFramework;
+    private final String controllerPath;
+    private final String topicsPath;
+    private final ClusterStateParser parser = new ClusterStateParser();
+    private final ConcurrentMap<String, TopicLeaderCache> topics =
+            new ConcurrentHashMap<String, TopicLeaderCache>();
+    private volatile NodeCache controllerCache;
+    private volatile int controllerId = NO_CONTROLLER;
+    private boolean closed = false;
+
+    /**
+     * @param chroot the path the Kafka cluster was configured with, or
+     *            {@link BrokerInfoFetcher#ROOT}
+     */
+    public ClusterStateCache(CuratorFramework curatorFramework, String chroot) {
+        Preconditions.checkNotNull(curatorFramework);
+        Preconditions.checkNotNull(chroot);
+        this.curatorFramework = curatorFramework;
+        this.controllerPath = ZKPaths.makePath(chroot, CONTROLLER_PATH);
+        this.topicsPath = ZKPaths.makePath(chroot, TOPICS_PATH);
+    }
+
+    /**
+     * The first call starts watching the controller and returns {@link #NO_CONTROLLER}; later
+     * calls return the controller once it has been read.
+     *
+     * @return the id of the controller, or {@link #NO_CONTROLLER} if it isn't known
+     */
+    public int getControllerId() throws Exception {
+        if (controllerCache == null) {
+            startControllerCache();
+        }
+        return controllerId;
+    }
+
+    private synchronized void startControllerCache() throws Exception {
+        Preconditions.checkState(!closed, "The cluster state cache has been closed");
+        if (controllerCache == null) {
+            controllerCache = makeNodeCache(controllerPath);
+            controllerCache.getListenable().addListener(new NodeCacheListener() {
+
+                public void nodeChanged() {
+                    controllerChanged();
+                }
+            });
+            controllerCache.start();
+        }
+    }
+
+    private void controllerChanged() {
+        ChildData data = controllerCache.getCurrentData();
+        if (data == null || data.getData() == null) {
+            // There is no controller between one resigning and the next being elected
+            controllerId = NO_CONTROLLER;
+            return;
+        }
+        try {
+            controllerId = parser.parseControllerId(data.getData());
+        } catch (BrokerParserException e) {
+            controllerId = NO_CONTROLLER;
+        }
+    }
+
+    /**
+     * Starts watching a topic's partition leaders if it isn't already watched.
+     *
+     * @return completes once the topic's leaders have been read
+     */
+    public CompletableFuture<TopicLeaderCache> watchTopic(String topic) {
+        return topicCache(topic).start();
+    }
+
+    /**
+     * Unlike {@link #getTopic(String)}, this can't return null if the topic is unwatched
+     * concurrently; the cache handed back is then simply closed.
+     *
+     * @return the topic's leaders, which need {@link TopicLeaderCache#start() starting} if the
+     *         topic wasn't already watched
+     */
+    TopicLeaderCache topicCache(String topic) {
+        Preconditions.checkNotNull(topic);
+        TopicLeaderCache topicCache = topics.get(topic);
+        if (topicCache == null) {
+            synchronized (this) {
+                Preconditions.checkState(!closed, "The cluster state cache has been closed");
+                topicCache = topics.get(topic);
+                if (topicCache == null) {
+                    topicCache = makeTopicLeaderCache(ZKPaths.makePath(topicsPath, topic));
+                    topics.put(topic, topicCache);
+                }
+            }
+        }
+        return topicCache;
+    }
+
+    /**
+     * Never blocks or throws. Starts watching the topic if it isn't already watched.
+     *
+     * @return the id of the partition's leader, or {@link TopicLeaderCache#NO_LEADER} if it has
+     *         none, the topic hasn't been read yet or this cache has been closed
+     */
+    public int leaderFor(String topic, int partition) {
+        TopicLeaderCache topicCache = topics.get(topic);
+        if (topicCache == null) {
+            synchronized (this) {
+                if (closed) {
+                    return TopicLeaderCache.NO_LEADER;
+                }
+                topicCache = topicCache(topic);
+            }
+            topicCache.start();
+            return TopicLeaderCache.NO_LEADER;
+        }
+        return topicCache.leaderFor(partition);
+    }
+
+    /**
+     * @return the topic's leaders, or null if the topic isn't being watched
+     */
+    public TopicLeaderCache getTopic(String topic) {
+        return topics.get(topic);
+    }
+
+    public void unwatchTopic(String topic) {
+        TopicLeaderCache topicCache = topics.remove(topic);
+        if (topicCache != null) {
+            topicCache.close();
+        }
+    }
+
+    NodeCache makeNodeCache(String path) {
+        return new NodeCache(curatorFramework, path);
+    }
+
+    TopicLeaderCache makeTopicLeaderCache(String topicPath) {
+        return new TopicLeaderCache(curatorFramework, topicPath);
+    }
+
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            if (controllerCache != null) {
+                controllerCache.close();
+            }
+        }
+        for (String topic : topics.keySet()) {
+            unwatchTopic(topic);
+        }
+    }
+
+}
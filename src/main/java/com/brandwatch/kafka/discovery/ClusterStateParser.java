@@ -0,0 +1,60 @@
+package com.brandwatch.kafka.discovery;
+
+import com.brandwatch.kafka.discovery.BrokerParserException.Reason;
+import com.google.common.base.Preconditions;
+
+/**
+ * Parses the JSON that the Kafka controller writes to <code>/controller</code> and to each
+ * <code>/brokers/topics/&lt;topic&gt;/partitions/&lt;n&gt;/state</code>.
+ * <p>
+ * Only the broker id is wanted from either, so it is read in one pass with
+ * {@link JsonByteReader} and every other field is skipped.
+ */
+final class ClusterStateParser {
+
+    static final int NO_BROKER = -1;
+
+    private static final byte[][] CONTROLLER_KEYS = { JsonByteReader.encode("brokerid") };
+    private static final byte[][] PARTITION_STATE_KEYS = { JsonByteReader.encode("leader") };
+
+    /**
+     * @return the id of the broker acting as controller
+     */
+    int parseControllerId(byte[] data) throws BrokerParserException {
+        return readBrokerId(data, CONTROLLER_KEYS, "brokerid");
+    }
+
+    /**
+     * @return the id of the partition's leader, or {@link #NO_BROKER} if it has none
+     */
+    int parseLeader(byte[] data) throws BrokerParserException {
+        return readBrokerId(data, PARTITION_STATE_KEYS, "leader");
+    }
+
+    private int readBrokerId(byte[] data, byte[][] keys, String name)
+            throws BrokerParserException {
+        Preconditions.checkNotNull(data);
+        if (data.length == 0) {
+            throw new BrokerParserException(Reason.EMPTY, "No data found");
+        }
+        JsonByteReader reader = new JsonByteReader(data, 0, data.length);
+        Integer brokerId = null;
+        reader.beginObject();
+        if (!reader.tryEnd('}')) {
+            do {
+                if (reader.nextName(keys) == 0) {
+                    brokerId = reader.nextInt();
+                } else {
+                    reader.skipValue();
+                }
+            } while (reader.nextElementOrEnd('}'));
+        }
+        if (!reader.isAtEnd()) {
+            throw new BrokerParserException("Unexpected content after " + name);
+        } else if (brokerId == null) {
+            throw new BrokerParserException(Reason.MISSING_VALUE, "No " + name + " found");
+        }
+        return brokerId < 0 ? NO_BROKER : brokerId;
+    }
+
+}
@@ -0,0 +1,114 @@
+package com.brandwatch.kafka.discovery;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Turns bursts of broker changes into one {@link BrokerChangeEvent}.
+ * <p>
+ * An event is delivered once no change has arrived for a whole window, or once the oldest
+ * undelivered change is <code>maxDelay</code> old, whichever comes first. It describes the
+ * difference between the brokers last delivered and the brokers now, so a broker that drops
+ * out and comes back with the same registration within one event is not reported at all.
+ */
+class CoalescingBrokerChangeListener implements BrokerChangeListener, Closeable {
+
+    private final BrokerInfoFetcher dataFetcher;
+    private final BrokerChangeEventListener listener;
+    private final ScheduledExecutorService executor;
+    private final long windowNanos;
+    private final long maxDelayNanos;
+    private final Runnable flush = new Runnable() {
+
+        public void run() {
+            flush();
+        }
+    };
+
+    private List<BrokerInfo> delivered;
+    private List<BrokerInfo> latest;
+    private long firstChangeNanos;
+    private long lastChangeNanos;
+    private boolean scheduled;
+    private boolean closed;
+
+    CoalescingBrokerChangeListener(BrokerInfoFetcher dataFetcher,
+            BrokerChangeEventListener listener, ScheduledExecutorService executor, long window,
+            long maxDelay, TimeUnit unit) {
+        Preconditions.checkNotNull(listener);
+        Preconditions.checkArgument(window >= 0, "window must not be negative");
+        Preconditions.checkArgument(maxDelay >= window, "maxDelay must be at least window");
+        this.dataFetcher = dataFetcher;
+        this.listener = listener;
+        this.executor = executor;
+        this.windowNanos = unit.toNanos(window);
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        this.delivered = dataFetcher.getAllBrokers();
+        this.latest = delivered;
+        dataFetcher.addBrokerChangeListener(this);
+    }
+
+    public synchronized void brokersChanged(List<BrokerInfo> brokers) {
+        if (closed) {
+            return;
+        }
+        latest = brokers;
+        lastChangeNanos = System.nanoTime();
+        if (!scheduled) {
+            firstChangeNanos = lastChangeNanos;
+            scheduled = true;
+            schedule(windowNanos);
+        }
+    }
+
+    private void flush() {
+        BrokerChangeEvent event;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            long now = System.nanoTime();
+            long quietUntil = lastChangeNanos + windowNanos;
+            long deadline = firstChangeNanos + maxDelayNanos;
+            if (now - quietUntil < 0 && now - deadline < 0) {
+                long wait = Math.min(quietUntil, deadline) - now;
+                schedule(wait);
+                return;
+            }
+            scheduled = false;
+            event = BrokerChangeEvent.between(delivered, latest);
+            delivered = latest;
+        }
+        if (!event.isEmpty()) {
+            listener.brokersChanged(event);
+        }
+    }
+
+    /**
+     * An executor that has been shut down means its owner has closed, so the change is dropped
+     * rather than the rejection being thrown back at whoever is publishing it.
+     */
+    private void schedule(long delayNanos) {
+        try {
+            executor.schedule(flush, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            closed = true;
+        }
+    }
+
+    /**
+     * Stops listening. Changes that have not been delivered yet are dropped.
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        dataFetcher.removeBrokerChangeListener(this);
+    }
+
+}
@@ -2,23 +2,85 @@ package com.brandwatch.kafka.discovery;
 
 import java.util.List;
 
-import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 
 public class ConnectionStringCreator {
 
-    private static final Joiner COMMA_JOINER = Joiner.on(",").skipNulls();
-    private static final Joiner COLON_JOINER = Joiner.on(":").skipNulls();
+    /**
+     * Room for a colon, a five digit port and a comma after each host.
+     */
+    private static final int SEPARATOR_AND_PORT_LENGTH = 7;
 
+    private static final long FINGERPRINT_SEED = 0xcbf29ce484222325L;
+    private static final long FINGERPRINT_PRIME = 0x100000001b3L;
+
+    /**
+     * Renders <code>host1:port1,host2:port2,...</code> in a single pass into a builder that is
+     * sized up front, so the result is never copied as it grows.
+     *
+     * @return the connection string, or null if there are no brokers
+     */
     public String createConnectionString(List<BrokerInfo> brokers) {
         Preconditions.checkNotNull(brokers);
-        String result = null;
-        for (BrokerInfo brokerInfo : brokers) {
-            String oneConnectionString = COLON_JOINER.join(brokerInfo.getHost(),
-                    brokerInfo.getPort());
-            result = COMMA_JOINER.join(result, oneConnectionString);
+        if (brokers.isEmpty()) {
+            return null;
+        }
+        int length = 0;
+        for (int i = 0; i < brokers.size(); i++) {
+            String host = brokers.get(i).getHost();
+            length += (host == null ? 0 : host.length()) + SEPARATOR_AND_PORT_LENGTH;
+        }
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < brokers.size(); i++) {
+            BrokerInfo brokerInfo = brokers.get(i);
+            if (i > 0) {
+                builder.append(',');
+            }
+            if (brokerInfo.getHost() != null) {
+                builder.append(brokerInfo.getHost()).append(':');
+            }
+            builder.append(brokerInfo.getPort());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * A cheap, order-sensitive fingerprint of the hosts and ports that
+     * {@link #createConnectionString(List)} would render. Equal connection strings always have
+     * equal fingerprints; use {@link #rendersSameAs(List, List)} to rule out a collision.
+     */
+    public long fingerprint(List<BrokerInfo> brokers) {
+        Preconditions.checkNotNull(brokers);
+        long fingerprint = FINGERPRINT_SEED;
+        for (int i = 0; i < brokers.size(); i++) {
+            BrokerInfo brokerInfo = brokers.get(i);
+            String host = brokerInfo.getHost();
+            fingerprint = (fingerprint ^ (host == null ? 0 : host.hashCode())) * FINGERPRINT_PRIME;
+            fingerprint = (fingerprint ^ brokerInfo.getPort()) * FINGERPRINT_PRIME;
         }
-        return result;
+        return fingerprint;
+    }
+
+    /**
+     * @return true if both lists render to the same connection string
+     */
+    public boolean rendersSameAs(List<BrokerInfo> left, List<BrokerInfo> right) {
+        if (left.size() != right.size()) {
+            return false;
+        }
+        for (int i = 0; i < left.size(); i++) {
+            BrokerInfo leftBroker = left.get(i);
+            BrokerInfo rightBroker = right.get(i);
+            if (leftBroker.getPort() != rightBroker.getPort()
+                    || !equal(leftBroker.getHost(), rightBroker.getHost())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean equal(String left, String right) {
+        return left == null ? right == null : left.equals(right);
     }
 
 }
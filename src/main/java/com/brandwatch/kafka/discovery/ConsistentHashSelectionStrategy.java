@@ -0,0 +1,95 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Selects brokers by rendezvous hashing on a client id.
+ * <p>
+ * Every broker gets a score from the hash of the client id and its broker id, and the brokers
+ * with the highest scores are chosen. A given client therefore always bootstraps from the
+ * same brokers, different clients spread evenly across the cluster, and a broker joining or
+ * leaving only moves the clients that had it in their selection.
+ */
+public class ConsistentHashSelectionStrategy implements BrokerSelectionStrategy {
+
+    private final long clientHash;
+    private final int count;
+
+    public ConsistentHashSelectionStrategy(String clientId) {
+        this(clientId, LowestIdSelectionStrategy.DEFAULT_BROKER_COUNT);
+    }
+
+    public ConsistentHashSelectionStrategy(String clientId, int count) {
+        Preconditions.checkNotNull(clientId);
+        Preconditions.checkArgument(count > 0, "count must be positive");
+        this.clientHash = hashClientId(clientId);
+        this.count = count;
+    }
+
+    public List<BrokerInfo> select(List<BrokerInfo> brokers) {
+        List<ScoredBroker> scored = new ArrayList<ScoredBroker>(brokers.size());
+        for (BrokerInfo brokerInfo : brokers) {
+            scored.add(new ScoredBroker(brokerInfo, score(clientHash, brokerInfo)));
+        }
+        List<ScoredBroker> highest = PartialSelection.smallest(scored, count,
+                ScoredBroker.HIGHEST_FIRST);
+        List<BrokerInfo> result = new ArrayList<BrokerInfo>(highest.size());
+        for (ScoredBroker scoredBroker : highest) {
+            result.add(scoredBroker.brokerInfo);
+        }
+        return result;
+    }
+
+    static long hashClientId(String clientId) {
+        return mix(clientId.hashCode());
+    }
+
+    /**
+     * @return the broker's rendezvous score for this client; higher scores are preferred
+     */
+    static long score(long clientHash, BrokerInfo brokerInfo) {
+        return mix(clientHash ^ brokerInfo.getId());
+    }
+
+    /**
+     * The finaliser from MurmurHash3, which spreads nearby inputs across the whole range.
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    /**
+     * A broker with its score worked out once, so that ranking never hashes it again.
+     */
+    static final class ScoredBroker {
+
+        static final Comparator<ScoredBroker> HIGHEST_FIRST = new Comparator<ScoredBroker>() {
+
+            public int compare(ScoredBroker left, ScoredBroker right) {
+                return left.score < right.score ? 1 : left.score > right.score ? -1 : 0;
+            }
+        };
+
+        private final BrokerInfo brokerInfo;
+        private final long score;
+
+        ScoredBroker(BrokerInfo brokerInfo, long score) {
+            this.brokerInfo = brokerInfo;
+            this.score = score;
+        }
+
+        BrokerInfo getBrokerInfo() {
+            return brokerInfo;
+        }
+    }
+
+}
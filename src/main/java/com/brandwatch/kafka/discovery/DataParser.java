@@ -1,144 +1,236 @@
 package com.brandwatch.kafka.discovery;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
+import com.brandwatch.kafka.discovery.BrokerParserException.Reason;
+import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
-import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
-import com.google.common.collect.Sets;
 
+/**
+ * Parses the JSON registration that a Kafka broker writes to its znode under
+ * <code>/brokers/ids</code>.
+ * <p>
+ * The registration is streamed straight from the raw znode bytes in a single pass. Known
+ * fields are matched byte-for-byte and decoded in place; anything else (<code>features</code>,
+ * <code>tags</code> and whatever later Kafka versions add) is skipped without being
+ * materialised, so the cost of a parse does not grow with fields we don't use.
+ */
 public class DataParser {
 
-    private static Splitter COMMA_SPLITTER = Splitter.on(",");
-    private static Splitter COLON_SPLITTER = Splitter.on(":");
-    private static Set<String> VALID_KEYS = Sets.newHashSet("host", "port", "version", "timestamp",
-            "jmx_port");
+    private static final byte[][] KEYS = {
+        JsonByteReader.encode("host"),
+        JsonByteReader.encode("port"),
+        JsonByteReader.encode("jmx_port"),
+        JsonByteReader.encode("timestamp"),
+        JsonByteReader.encode("version"),
+        JsonByteReader.encode("rack"),
+        JsonByteReader.encode("endpoints"),
+        JsonByteReader.encode("listener_security_protocol_map") };
+
+    private static final int HOST = 0;
+    private static final int PORT = 1;
+    private static final int JMX_PORT = 2;
+    private static final int TIMESTAMP = 3;
+    private static final int VERSION = 4;
+    private static final int RACK = 5;
+    private static final int ENDPOINTS = 6;
+    private static final int LISTENER_SECURITY_PROTOCOL_MAP = 7;
+
+    private static final int JMX_DISABLED = -1;
 
     public BrokerInfo parseData(String data) throws BrokerParserException {
         Preconditions.checkNotNull(data);
-        data = data.trim();
+        return parseData(data.getBytes(Charsets.UTF_8));
+    }
+
+    public BrokerInfo parseData(byte[] data) throws BrokerParserException {
+        Preconditions.checkNotNull(data);
+        int start = skipLeadingWhitespace(data, 0, data.length);
+        int end = skipTrailingWhitespace(data, start, data.length);
 
-        checkForEmptyString(data);
+        checkForEmptyData(start, end);
+        validateBraces(data, start, end);
 
         BrokerInfo brokerInfo = new BrokerInfo();
+        List<String> endpoints = null;
+        Map<String, String> securityProtocols = null;
+
+        JsonByteReader reader = new JsonByteReader(data, start, end);
+        reader.beginObject();
+        if (!reader.tryEnd('}')) {
+            do {
+                switch (reader.nextName(KEYS)) {
+                case HOST:
+                    brokerInfo.setHost(reader.nextString());
+                    break;
+                case PORT:
+                    brokerInfo.setPort(reader.nextInt());
+                    break;
+                case JMX_PORT:
+                    brokerInfo.setJmxPort(reader.nextInt());
+                    break;
+                case TIMESTAMP:
+                    brokerInfo.setTimestamp(new Date(reader.nextLong()));
+                    break;
+                case VERSION:
+                    brokerInfo.setVersion(reader.nextInt());
+                    break;
+                case RACK:
+                    brokerInfo.setRack(reader.nextString());
+                    break;
+                case ENDPOINTS:
+                    endpoints = readStringArray(reader);
+                    break;
+                case LISTENER_SECURITY_PROTOCOL_MAP:
+                    securityProtocols = readStringMap(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+                }
+            } while (reader.nextElementOrEnd('}'));
+        }
+        if (!reader.isAtEnd()) {
+            throw new BrokerParserException("Unexpected content after broker configuration");
+        }
 
-        validateBraces(data);
-
-        data = trimFirstAndLastCharacter(data);
-        Iterable<String> splitByComma = COMMA_SPLITTER.split(data);
-        for (String keyValue : splitByComma) {
-            Iterable<String> splitByColon = COLON_SPLITTER.split(keyValue);
-            int counter = 0;
-            List<String> keyAndValue = new ArrayList<String>();
-            for (String keyOrValue : splitByColon) {
-                keyAndValue.add(keyOrValue.trim());
-                counter++;
-            }
-            validateKeyValueSize(counter);
-            setKeyAndValue(brokerInfo, keyAndValue);
+        if (endpoints != null) {
+            brokerInfo.setEndpoints(parseEndpoints(endpoints, securityProtocols));
         }
+        applyDefaultEndpoint(brokerInfo);
         validateBrokerInfo(brokerInfo);
         return brokerInfo;
     }
 
-    private void validateBraces(String data) throws BrokerParserException {
-        if (!data.startsWith("{")) {
-            throw new BrokerParserException("Broker configuration should start with {");
-        } else if (!data.endsWith("}")) {
-            throw new BrokerParserException("Broker configuration should end with }");
+    private List<String> readStringArray(JsonByteReader reader) throws BrokerParserException {
+        List<String> values = new ArrayList<String>(2);
+        reader.beginArray();
+        if (!reader.tryEnd(']')) {
+            do {
+                values.add(reader.nextString());
+            } while (reader.nextElementOrEnd(']'));
         }
+        return values;
     }
 
-    private void setKeyAndValue(BrokerInfo brokerInfo, List<String> keyAndValue)
+    private Map<String, String> readStringMap(JsonByteReader reader)
             throws BrokerParserException {
-        String key = getKey(keyAndValue);
-        String value = getValue(keyAndValue);
-        setValues(brokerInfo, key, value);
-    }
-
-    private void validateKeyValueSize(int counter) throws BrokerParserException {
-        if (counter != 2) {
-            throw new BrokerParserException("Keys and values should be separated by colons");
+        Map<String, String> values = new HashMap<String, String>(4);
+        reader.beginObject();
+        if (!reader.tryEnd('}')) {
+            do {
+                values.put(reader.nextName(), reader.nextString());
+            } while (reader.nextElementOrEnd('}'));
         }
+        return values;
     }
 
-    private String getValue(List<String> keyAndValue) throws BrokerParserException {
-        String value = keyAndValue.get(1);
-        value = trimDoubleQuotes(value);
-        validateValue(value);
-        return value;
+    private List<BrokerEndpoint> parseEndpoints(List<String> endpoints,
+            Map<String, String> securityProtocols) throws BrokerParserException {
+        List<BrokerEndpoint> result = new ArrayList<BrokerEndpoint>(endpoints.size());
+        for (String endpoint : endpoints) {
+            result.add(parseEndpoint(endpoint, securityProtocols));
+        }
+        return Collections.unmodifiableList(result);
     }
 
-    private void validateValue(String value) throws BrokerParserException {
-        if (Strings.isNullOrEmpty(value)) {
-            throw new BrokerParserException("Null or empty values are not allowed");
+    /**
+     * Parses an endpoint of the form <code>LISTENER://host:port</code>. IPv6 hosts may be
+     * enclosed in brackets, which are removed.
+     */
+    private BrokerEndpoint parseEndpoint(String endpoint, Map<String, String> securityProtocols)
+            throws BrokerParserException {
+        if (endpoint == null) {
+            throw new BrokerParserException(Reason.MISSING_VALUE,
+                    "Null or empty values are not allowed");
+        }
+        int schemeSeparator = endpoint.indexOf("://");
+        int portSeparator = endpoint.lastIndexOf(':');
+        if (schemeSeparator < 1 || portSeparator < schemeSeparator + 3) {
+            throw new BrokerParserException(Reason.INVALID_ENDPOINT,
+                    "Invalid endpoint: " + endpoint);
+        }
+        String listenerName = endpoint.substring(0, schemeSeparator);
+        String host = endpoint.substring(schemeSeparator + 3, portSeparator);
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1);
+        }
+        int port;
+        try {
+            port = Integer.parseInt(endpoint.substring(portSeparator + 1));
+        } catch (NumberFormatException e) {
+            throw new BrokerParserException(Reason.INVALID_ENDPOINT,
+                    "Invalid endpoint: " + endpoint);
+        }
+        String securityProtocol = securityProtocols == null ? null : securityProtocols
+            .get(listenerName);
+        if (securityProtocol == null) {
+            securityProtocol = listenerName;
         }
+        return new BrokerEndpoint(listenerName, securityProtocol, host, port);
     }
 
-    private String getKey(List<String> keyAndValue) throws BrokerParserException {
-        String key = keyAndValue.get(0);
-        key = trimDoubleQuotes(key);
-        validateKey(key);
-        return key;
+    /**
+     * Brokers that don't listen on PLAINTEXT register a null host and a port of -1; fall back
+     * to their first advertised endpoint so that they can still be bootstrapped from.
+     */
+    private void applyDefaultEndpoint(BrokerInfo brokerInfo) {
+        if (Strings.isNullOrEmpty(brokerInfo.getHost()) && !brokerInfo.getEndpoints().isEmpty()) {
+            BrokerEndpoint endpoint = brokerInfo.getEndpoints().get(0);
+            brokerInfo.setHost(endpoint.getHost());
+            brokerInfo.setPort(endpoint.getPort());
+        }
     }
 
-    private void setValues(BrokerInfo brokerInfo, String key, String value)
-            throws BrokerParserException {
-        if (key.equals("host")) {
-            brokerInfo.setHost(value);
-        } else if (key.equals("port")) {
-            brokerInfo.setPort(Integer.parseInt(value));
-        } else if (key.equals("jmx_port")) {
-            brokerInfo.setJmxPort(Integer.parseInt(value));
-        } else if (key.equals("timestamp")) {
-            brokerInfo.setTimestamp(new Date(Long.parseLong(value)));
-        } else if (key.equals("version")) {
-            brokerInfo.setVersion(Integer.parseInt(value));
-        } else {
-            throw new BrokerParserException("Unknown key: " + key);
+    private void validateBraces(byte[] data, int start, int end) throws BrokerParserException {
+        if (data[start] != '{') {
+            throw new BrokerParserException("Broker configuration should start with {");
+        } else if (data[end - 1] != '}') {
+            throw new BrokerParserException("Broker configuration should end with }");
         }
     }
 
     private void validateBrokerInfo(BrokerInfo brokerInfo) throws BrokerParserException {
         if (Strings.isNullOrEmpty(brokerInfo.getHost())) {
-            throw new BrokerParserException("Host value missing");
+            throw new BrokerParserException(Reason.MISSING_VALUE, "Host value missing");
         } else if (brokerInfo.getPort() < 1) {
-            throw new BrokerParserException("Invalid port value");
-        } else if (brokerInfo.getJmxPort() < 1) {
-            throw new BrokerParserException("Invalid JMX port value");
+            throw new BrokerParserException(Reason.INVALID_VALUE, "Invalid port value");
+        } else if (brokerInfo.getJmxPort() < 1 && brokerInfo.getJmxPort() != JMX_DISABLED) {
+            throw new BrokerParserException(Reason.INVALID_VALUE, "Invalid JMX port value");
         } else if (brokerInfo.getVersion() < 1) {
-            throw new BrokerParserException("Invalid version value");
+            throw new BrokerParserException(Reason.INVALID_VALUE, "Invalid version value");
         } else if (brokerInfo.getTimestamp() == null) {
-            throw new BrokerParserException("Invalid timestamp value");
+            throw new BrokerParserException(Reason.INVALID_VALUE, "Invalid timestamp value");
         }
     }
 
-    private void validateKey(String key) throws BrokerParserException {
-        if (!VALID_KEYS.contains(key)) {
-            throw new BrokerParserException("The key " + key + " is not a valid key.");
+    private int skipLeadingWhitespace(byte[] data, int start, int end) {
+        while (start < end && isWhitespace(data[start])) {
+            start++;
         }
+        return start;
     }
 
-    private String trimDoubleQuotes(String word) {
-        if (word.startsWith("\"") && word.endsWith("\"")) {
-            return trimFirstAndLastCharacter(word);
-        } else {
-            return word;
+    private int skipTrailingWhitespace(byte[] data, int start, int end) {
+        while (end > start && isWhitespace(data[end - 1])) {
+            end--;
         }
+        return end;
     }
 
-    private String trimFirstAndLastCharacter(String data) {
-        data = data.substring(1, data.length());
-        data = data.substring(0, data.length() - 1);
-        return data.trim();
+    private boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
     }
 
-    private void checkForEmptyString(String data) throws BrokerParserException {
-        if (data.isEmpty()) {
-            throw new BrokerParserException("Broker configuration is empty");
+    private void checkForEmptyData(int start, int end) throws BrokerParserException {
+        if (start == end) {
+            throw new BrokerParserException(Reason.EMPTY, "Broker configuration is empty");
         }
     }
 }
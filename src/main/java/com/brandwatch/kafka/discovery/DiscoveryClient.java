@@ -0,0 +1,144 @@
+package com.brandwatch.kafka.discovery;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+
+/**
+ * Reads bootstrap brokers from a {@link DiscoveryServer} instead of from Zookeeper.
+ * <p>
+ * The client remembers the last connection string it was sent and its ETag, so asking again
+ * when nothing has changed costs an empty 304, and
+ * {@link #awaitConnectionString(long, TimeUnit)} can wait on the server for the next change.
+ *
+ * <pre>
+ * DiscoveryClient client = new DiscoveryClient(9990);
+ * String connectionString = client.getConnectionString();
+ * </pre>
+ */
+public class DiscoveryClient {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final int READ_MARGIN_MILLIS = 5000;
+
+    private final String baseUrl;
+    private volatile Cached cached;
+
+    /**
+     * Connects to a server on the loopback interface.
+     */
+    public DiscoveryClient(int port) {
+        this("127.0.0.1", port);
+    }
+
+    public DiscoveryClient(String host, int port) {
+        Preconditions.checkNotNull(host);
+        this.baseUrl = "http://" + host + ":" + port;
+    }
+
+    public String getConnectionString() throws IOException {
+        return fetchConnectionString(0);
+    }
+
+    /**
+     * Waits for the connection string to change from the last one this client was sent, for
+     * at most the given time, which is rounded up to whole seconds. Returns straight away if
+     * this client has not been sent one yet.
+     *
+     * @return the new connection string, or the last one if nothing changed in time
+     */
+    public String awaitConnectionString(long timeout, TimeUnit unit) throws IOException {
+        long seconds = Math.min(DiscoveryServer.MAX_WAIT_SECONDS, Math.max(1,
+                (unit.toMillis(timeout) + 999) / 1000));
+        return fetchConnectionString(seconds);
+    }
+
+    /**
+     * @return the bootstrap brokers and connection string as the server renders them in JSON
+     */
+    public String getBrokersJson() throws IOException {
+        HttpURLConnection connection = open(DiscoveryServer.BROKERS_PATH, 0);
+        try {
+            checkStatus(connection, connection.getResponseCode());
+            return read(connection);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private String fetchConnectionString(long waitSeconds) throws IOException {
+        Cached previous = cached;
+        String path = DiscoveryServer.CONNECTION_STRING_PATH;
+        if (previous != null && waitSeconds > 0) {
+            path += "?wait=" + waitSeconds;
+        }
+        HttpURLConnection connection = open(path, waitSeconds);
+        try {
+            if (previous != null) {
+                connection.setRequestProperty("If-None-Match", previous.etag);
+            }
+            int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED && previous != null) {
+                return previous.connectionString;
+            }
+            checkStatus(connection, status);
+            Cached current = new Cached(connection.getHeaderField("ETag"), read(connection)
+                .trim());
+            cached = current;
+            return current.connectionString;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private HttpURLConnection open(String path, long waitSeconds) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path)
+            .openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout((int) TimeUnit.SECONDS.toMillis(waitSeconds)
+                + READ_MARGIN_MILLIS);
+        connection.setUseCaches(false);
+        return connection;
+    }
+
+    private static void checkStatus(HttpURLConnection connection, int status)
+            throws IOException {
+        if (status != HttpURLConnection.HTTP_OK) {
+            throw new IOException("Discovery server at " + connection.getURL() + " returned "
+                    + status);
+        }
+    }
+
+    private static String read(HttpURLConnection connection) throws IOException {
+        InputStream in = connection.getInputStream();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), Charsets.UTF_8);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static class Cached {
+
+        private final String etag;
+        private final String connectionString;
+
+        Cached(String etag, String connectionString) {
+            this.etag = etag;
+            this.connectionString = connectionString;
+        }
+    }
+
+}
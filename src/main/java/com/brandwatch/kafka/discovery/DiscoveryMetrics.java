@@ -0,0 +1,195 @@
+package com.brandwatch.kafka.discovery;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.state.ConnectionState;
+
+import com.brandwatch.kafka.discovery.BrokerParserException.Reason;
+import com.google.common.base.Preconditions;
+
+/**
+ * Measures how long discovery takes and how often the registered brokers change, for one
+ * {@link BrokerInfoFetcher}.
+ * <p>
+ * Everything is recorded into counters that are striped across threads, so recording never
+ * locks or allocates, including on the path that answers
+ * {@link BrokerInfoFetcher#fetchBrokerInfo()}. The metrics can be published over JMX with
+ * {@link #registerMBean(String)}, or to Micrometer with a {@link DiscoveryMetricsBinder}.
+ */
+public class DiscoveryMetrics implements DiscoveryMetricsMXBean {
+
+    public static final String DOMAIN = "com.brandwatch.kafka.discovery";
+
+    private static final long NOT_MEASURED = -1;
+
+    private final AtomicLong connectTimeNanos = new AtomicLong(NOT_MEASURED);
+    private final AtomicLong initialLoadTimeNanos = new AtomicLong(NOT_MEASURED);
+    private final AtomicLong cacheBuildTimeNanos = new AtomicLong(NOT_MEASURED);
+    private final LatencyTimer fetchTimer = new LatencyTimer();
+    private final LatencyTimer parseTimer = new LatencyTimer();
+    private final LongAdder[] parseFailures = makeCounters(Reason.values().length);
+    private final LongAdder[] cacheEvents =
+            makeCounters(PathChildrenCacheEvent.Type.values().length);
+    private final LongAdder[] connectionStateChanges =
+            makeCounters(ConnectionState.values().length);
+    private volatile int brokerCount;
+
+    private static LongAdder[] makeCounters(int size) {
+        LongAdder[] counters = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+
+    /**
+     * Parses a registration, timing the parse and counting it if it fails.
+     */
+    BrokerInfo parse(DataParser dataParser, byte[] data) throws BrokerParserException {
+        long start = System.nanoTime();
+        try {
+            return dataParser.parseData(data);
+        } catch (BrokerParserException e) {
+            parseFailures[e.getReason().ordinal()].increment();
+            throw e;
+        } finally {
+            parseTimer.record(System.nanoTime() - start);
+        }
+    }
+
+    void recordFetch(long nanos) {
+        fetchTimer.record(nanos);
+    }
+
+    /**
+     * Only the first connection is recorded; reconnections show up as state changes.
+     */
+    void recordConnect(long nanos) {
+        connectTimeNanos.compareAndSet(NOT_MEASURED, nanos);
+    }
+
+    void recordInitialLoad(long nanos) {
+        initialLoadTimeNanos.compareAndSet(NOT_MEASURED, nanos);
+    }
+
+    void recordCacheBuild(long nanos) {
+        cacheBuildTimeNanos.compareAndSet(NOT_MEASURED, nanos);
+    }
+
+    void recordCacheEvent(PathChildrenCacheEvent.Type type) {
+        cacheEvents[type.ordinal()].increment();
+    }
+
+    void recordConnectionStateChange(ConnectionState state) {
+        connectionStateChanges[state.ordinal()].increment();
+    }
+
+    void setBrokerCount(int brokerCount) {
+        this.brokerCount = brokerCount;
+    }
+
+    public int getBrokerCount() {
+        return brokerCount;
+    }
+
+    public long getConnectTimeNanos() {
+        return connectTimeNanos.get();
+    }
+
+    public long getInitialLoadTimeNanos() {
+        return initialLoadTimeNanos.get();
+    }
+
+    public long getCacheBuildTimeNanos() {
+        return cacheBuildTimeNanos.get();
+    }
+
+    public long getFetchCount() {
+        return fetchTimer.getCount();
+    }
+
+    public long getFetchTotalTimeNanos() {
+        return fetchTimer.getTotalNanos();
+    }
+
+    public long getFetchMaxTimeNanos() {
+        return fetchTimer.getMaxNanos();
+    }
+
+    public long getParseCount() {
+        return parseTimer.getCount();
+    }
+
+    public long getParseTotalTimeNanos() {
+        return parseTimer.getTotalNanos();
+    }
+
+    public long getParseMaxTimeNanos() {
+        return parseTimer.getMaxNanos();
+    }
+
+    public long getParseFailureCount(Reason reason) {
+        return parseFailures[reason.ordinal()].sum();
+    }
+
+    public long getCacheEventCount(PathChildrenCacheEvent.Type type) {
+        return cacheEvents[type.ordinal()].sum();
+    }
+
+    public long getConnectionStateChangeCount(ConnectionState state) {
+        return connectionStateChanges[state.ordinal()].sum();
+    }
+
+    public Map<String, Long> getParseFailures() {
+        return toMap(Reason.values(), parseFailures);
+    }
+
+    public Map<String, Long> getCacheEvents() {
+        return toMap(PathChildrenCacheEvent.Type.values(), cacheEvents);
+    }
+
+    public Map<String, Long> getConnectionStateChanges() {
+        return toMap(ConnectionState.values(), connectionStateChanges);
+    }
+
+    private static Map<String, Long> toMap(Enum<?>[] keys, LongAdder[] counters) {
+        Map<String, Long> map = new LinkedHashMap<String, Long>();
+        for (Enum<?> key : keys) {
+            map.put(key.name(), counters[key.ordinal()].sum());
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server as
+     * <code>com.brandwatch.kafka.discovery:type=DiscoveryMetrics,name=&lt;name&gt;</code>.
+     *
+     * @param name distinguishes this fetcher from others in the same JVM, such as the cluster
+     *            name
+     * @throws JMException if the name is invalid or already registered
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = makeObjectName(name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    public void unregisterMBean(String name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(makeObjectName(name));
+    }
+
+    private static ObjectName makeObjectName(String name) throws JMException {
+        Preconditions.checkNotNull(name);
+        return new ObjectName(DOMAIN + ":type=DiscoveryMetrics,name=" + ObjectName.quote(name));
+    }
+
+}
@@ -0,0 +1,152 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.state.ConnectionState;
+
+import com.brandwatch.kafka.discovery.BrokerParserException.Reason;
+import com.google.common.base.Preconditions;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Publishes {@link DiscoveryMetrics} to a Micrometer registry. Micrometer is an optional
+ * dependency and only needs to be on the classpath if this class is used.
+ *
+ * <pre>
+ * new DiscoveryMetricsBinder(fetcher.getMetrics(), Tags.of("cluster", "logs"))
+ *     .bindTo(meterRegistry);
+ * </pre>
+ */
+public class DiscoveryMetricsBinder implements MeterBinder {
+
+    private final DiscoveryMetrics metrics;
+    private final Iterable<Tag> tags;
+
+    public DiscoveryMetricsBinder(DiscoveryMetrics metrics) {
+        this(metrics, Collections.<Tag> emptyList());
+    }
+
+    public DiscoveryMetricsBinder(DiscoveryMetrics metrics, Iterable<Tag> tags) {
+        Preconditions.checkNotNull(metrics);
+        Preconditions.checkNotNull(tags);
+        this.metrics = metrics;
+        this.tags = tags;
+    }
+
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("kafka.discovery.brokers", metrics, new ToDoubleFunction<DiscoveryMetrics>() {
+
+            public double applyAsDouble(DiscoveryMetrics metrics) {
+                return metrics.getBrokerCount();
+            }
+        }).tags(tags).description("Registered brokers").register(registry);
+
+        bindOneOffTime(registry, "kafka.discovery.connect.time",
+                "Time taken to first connect to Zookeeper",
+                new ToDoubleFunction<DiscoveryMetrics>() {
+
+                    public double applyAsDouble(DiscoveryMetrics metrics) {
+                        return metrics.getConnectTimeNanos();
+                    }
+                });
+        bindOneOffTime(registry, "kafka.discovery.initial.load.time",
+                "Time taken to read the first answer", new ToDoubleFunction<DiscoveryMetrics>() {
+
+                    public double applyAsDouble(DiscoveryMetrics metrics) {
+                        return metrics.getInitialLoadTimeNanos();
+                    }
+                });
+        bindOneOffTime(registry, "kafka.discovery.cache.build.time",
+                "Time taken to build the broker cache", new ToDoubleFunction<DiscoveryMetrics>() {
+
+                    public double applyAsDouble(DiscoveryMetrics metrics) {
+                        return metrics.getCacheBuildTimeNanos();
+                    }
+                });
+
+        FunctionTimer.builder("kafka.discovery.fetch", metrics,
+                new ToLongFunction<DiscoveryMetrics>() {
+
+                    public long applyAsLong(DiscoveryMetrics metrics) {
+                        return metrics.getFetchCount();
+                    }
+                }, new ToDoubleFunction<DiscoveryMetrics>() {
+
+                    public double applyAsDouble(DiscoveryMetrics metrics) {
+                        return metrics.getFetchTotalTimeNanos();
+                    }
+                }, TimeUnit.NANOSECONDS).tags(tags).description("Broker fetches")
+            .register(registry);
+        FunctionTimer.builder("kafka.discovery.parse", metrics,
+                new ToLongFunction<DiscoveryMetrics>() {
+
+                    public long applyAsLong(DiscoveryMetrics metrics) {
+                        return metrics.getParseCount();
+                    }
+                }, new ToDoubleFunction<DiscoveryMetrics>() {
+
+                    public double applyAsDouble(DiscoveryMetrics metrics) {
+                        return metrics.getParseTotalTimeNanos();
+                    }
+                }, TimeUnit.NANOSECONDS).tags(tags).description("Registration parses")
+            .register(registry);
+
+        for (final Reason reason : Reason.values()) {
+            FunctionCounter.builder("kafka.discovery.parse.failures", metrics,
+                    new ToDoubleFunction<DiscoveryMetrics>() {
+
+                        public double applyAsDouble(DiscoveryMetrics metrics) {
+                            return metrics.getParseFailureCount(reason);
+                        }
+                    }).tags(tags).tag("reason", reason.name())
+                .description("Registrations that could not be parsed").register(registry);
+        }
+        for (final PathChildrenCacheEvent.Type type : PathChildrenCacheEvent.Type.values()) {
+            FunctionCounter.builder("kafka.discovery.cache.events", metrics,
+                    new ToDoubleFunction<DiscoveryMetrics>() {
+
+                        public double applyAsDouble(DiscoveryMetrics metrics) {
+                            return metrics.getCacheEventCount(type);
+                        }
+                    }).tags(tags).tag("type", type.name())
+                .description("Broker cache events").register(registry);
+        }
+        for (final ConnectionState state : ConnectionState.values()) {
+            FunctionCounter.builder("kafka.discovery.connection.state.changes", metrics,
+                    new ToDoubleFunction<DiscoveryMetrics>() {
+
+                        public double applyAsDouble(DiscoveryMetrics metrics) {
+                            return metrics.getConnectionStateChangeCount(state);
+                        }
+                    }).tags(tags).tag("state", state.name())
+                .description("Zookeeper connection state changes").register(registry);
+        }
+    }
+
+    /**
+     * One-off times are reported as NaN until they have been measured.
+     */
+    private void bindOneOffTime(MeterRegistry registry, String name, String description,
+            final ToDoubleFunction<DiscoveryMetrics> nanos) {
+        TimeGauge.builder(name, metrics, TimeUnit.NANOSECONDS,
+                new ToDoubleFunction<DiscoveryMetrics>() {
+
+                    public double applyAsDouble(DiscoveryMetrics metrics) {
+                        double value = nanos.applyAsDouble(metrics);
+                        return value < 0 ? Double.NaN : value;
+                    }
+                }).tags(tags).description(description).register(registry);
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.Map;
+
+/**
+ * The JMX view of a {@link DiscoveryMetrics}. Times are in nanoseconds; one-off times are -1
+ * until they have been measured.
+ */
+public interface DiscoveryMetricsMXBean {
+
+    int getBrokerCount();
+
+    long getConnectTimeNanos();
+
+    long getInitialLoadTimeNanos();
+
+    long getCacheBuildTimeNanos();
+
+    long getFetchCount();
+
+    long getFetchTotalTimeNanos();
+
+    long getFetchMaxTimeNanos();
+
+    long getParseCount();
+
+    long getParseTotalTimeNanos();
+
+    long getParseMaxTimeNanos();
+
+    /**
+     * @return the number of registrations that could not be parsed, by
+     *         {@link BrokerParserException.Reason}
+     */
+    Map<String, Long> getParseFailures();
+
+    /**
+     * @return the number of cache events received, by type
+     */
+    Map<String, Long> getCacheEvents();
+
+    /**
+     * @return the number of times the Zookeeper session has entered each connection state
+     */
+    Map<String, Long> getConnectionStateChanges();
+
+}
@@ -0,0 +1,445 @@
+package com.brandwatch.kafka.discovery;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+
+/**
+ * Serves a {@link KafkaBrokerDiscoverer}'s bootstrap brokers over HTTP, so that every process
+ * on a host can share the one Zookeeper session behind it. Use a {@link DiscoveryClient} to
+ * read from it.
+ * <p>
+ * <code>GET /connection-string</code> returns the connection string as plain text and
+ * <code>GET /brokers</code> returns it with the brokers as JSON. Each response carries as
+ * its ETag the version of the snapshot that last changed what is served, behind a prefix
+ * chosen at random by each server so that a version seen before a restart is never mistaken
+ * for the same version after it. A request
+ * whose <code>If-None-Match</code> matches the current ETag gets a 304, or, with
+ * <code>?wait=</code><i>seconds</i>, is held until the brokers change or the wait runs out.
+ * <p>
+ * All connections are handled by one non-blocking selector thread. The responses are rendered
+ * to bytes once per snapshot rather than once per request, and each connection is closed
+ * after its response. The server listens on the loopback interface unless given another
+ * address.
+ */
+public class DiscoveryServer implements Closeable {
+
+    public static final String CONNECTION_STRING_PATH = "/connection-string";
+    public static final String BROKERS_PATH = "/brokers";
+    public static final long MAX_WAIT_SECONDS = 300;
+
+    private static final int MAX_REQUEST_BYTES = 8192;
+    private static final long REQUEST_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final long SELECT_TIMEOUT_MILLIS = 500;
+    private static final String WAIT_PARAMETER = "wait=";
+    private static final String IF_NONE_MATCH = "if-none-match:";
+
+    private static final byte[] BAD_REQUEST = makeResponse("400 Bad Request", null, null, "");
+    private static final byte[] NOT_FOUND = makeResponse("404 Not Found", null, null, "");
+    private static final byte[] METHOD_NOT_ALLOWED = makeResponse("405 Method Not Allowed",
+            null, null, "");
+    private static final byte[] UNAVAILABLE = makeResponse("503 Service Unavailable", null,
+            null, "");
+
+    private final KafkaBrokerDiscoverer discoverer;
+    private final BrokerJsonWriter jsonWriter = new BrokerJsonWriter();
+    private final String etagPrefix = Long.toHexString(ThreadLocalRandom.current().nextLong());
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Thread thread;
+    private final BrokerSnapshotListener snapshotListener = new BrokerSnapshotListener() {
+
+        public void snapshotPublished(BrokerSnapshot snapshot) {
+            offer(snapshot);
+        }
+    };
+    private volatile Responses responses;
+    private volatile boolean running = true;
+
+    /**
+     * Listens on the given port of the loopback interface, or on any free port if it is 0.
+     */
+    public DiscoveryServer(KafkaBrokerDiscoverer discoverer, int port) throws IOException {
+        this(discoverer, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    public DiscoveryServer(KafkaBrokerDiscoverer discoverer, InetSocketAddress address)
+            throws IOException {
+        Preconditions.checkNotNull(discoverer);
+        Preconditions.checkNotNull(address);
+        this.discoverer = discoverer;
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(address);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+        responses = new Responses(discoverer.getSnapshot(), null);
+        discoverer.addSnapshotListener(snapshotListener);
+        // Anything published before the listener was added would otherwise be missed
+        offer(discoverer.getSnapshot());
+        thread = new Thread(new Runnable() {
+
+            public void run() {
+                serve();
+            }
+        }, "kafka-discovery-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Renders the snapshot's responses unless a newer version is already being served, since
+     * snapshots from the constructor and the discoverer's listeners can arrive out of order.
+     * Held requests are only woken if the ETag has changed.
+     */
+    private void offer(BrokerSnapshot snapshot) {
+        synchronized (this) {
+            if (snapshot.getVersion() <= responses.version) {
+                return;
+            }
+            Responses previous = responses;
+            responses = new Responses(snapshot, previous);
+            if (responses.etag.equals(previous.etag)) {
+                return;
+            }
+        }
+        selector.wakeup();
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    private void serve() {
+        try {
+            while (running) {
+                selector.select(SELECT_TIMEOUT_MILLIS);
+                Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                while (selected.hasNext()) {
+                    SelectionKey key = selected.next();
+                    selected.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else if (key.isReadable()) {
+                            read(key);
+                        } else if (key.isWritable()) {
+                            write(key);
+                        }
+                    } catch (IOException e) {
+                        // The client went away; nothing else depends on this connection
+                        closeQuietly(key);
+                    } catch (RuntimeException e) {
+                        // A bug in one exchange must not take the server down with it
+                        closeQuietly(key);
+                    }
+                }
+                checkPendingExchanges(responses, System.nanoTime());
+            }
+        } catch (IOException e) {
+            // The selector itself has failed, so the server can't go on
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // Already shutting down
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ, new Exchange(System.nanoTime()
+                + REQUEST_TIMEOUT_NANOS));
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        Exchange exchange = (Exchange) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+        if (channel.read(exchange.request) < 0) {
+            closeQuietly(key);
+            return;
+        }
+        int headerLength = findEndOfHeaders(exchange.request);
+        if (headerLength < 0) {
+            if (!exchange.request.hasRemaining()) {
+                respond(key, BAD_REQUEST);
+            }
+            return;
+        }
+        String header = new String(exchange.request.array(), 0, headerLength,
+                Charsets.ISO_8859_1);
+        handle(key, exchange, header);
+    }
+
+    private void handle(SelectionKey key, Exchange exchange, String header) throws IOException {
+        int lineEnd = header.indexOf("\r\n");
+        String[] requestLine = (lineEnd < 0 ? header : header.substring(0, lineEnd)).split(" ");
+        if (requestLine.length != 3) {
+            respond(key, BAD_REQUEST);
+            return;
+        }
+        if (!requestLine[0].equals("GET")) {
+            respond(key, METHOD_NOT_ALLOWED);
+            return;
+        }
+        String target = requestLine[1];
+        int queryStart = target.indexOf('?');
+        String path = queryStart < 0 ? target : target.substring(0, queryStart);
+        if (path.equals(CONNECTION_STRING_PATH)) {
+            exchange.brokers = false;
+        } else if (path.equals(BROKERS_PATH)) {
+            exchange.brokers = true;
+        } else {
+            respond(key, NOT_FOUND);
+            return;
+        }
+        long waitSeconds = 0;
+        if (queryStart >= 0) {
+            int wait = target.indexOf(WAIT_PARAMETER, queryStart);
+            if (wait >= 0) {
+                int valueEnd = target.indexOf('&', wait);
+                try {
+                    waitSeconds = Math.min(MAX_WAIT_SECONDS, Long.parseLong(target.substring(
+                            wait + WAIT_PARAMETER.length(), valueEnd < 0 ? target.length()
+                                    : valueEnd)));
+                } catch (NumberFormatException e) {
+                    respond(key, BAD_REQUEST);
+                    return;
+                }
+            }
+        }
+        exchange.ifNoneMatch = findIfNoneMatch(header);
+
+        Responses current = responses;
+        if (current.connectionString == null || !current.etag.equals(exchange.ifNoneMatch)) {
+            respondWith(key, exchange, current);
+        } else if (waitSeconds <= 0) {
+            respond(key, current.notModified);
+        } else {
+            exchange.waiting = true;
+            exchange.deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(waitSeconds);
+            key.interestOps(0);
+        }
+    }
+
+    /**
+     * Answers held requests whose brokers have changed or whose wait has run out, and drops
+     * connections that never sent a complete request.
+     */
+    private void checkPendingExchanges(Responses current, long now) {
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if (!(attachment instanceof Exchange) || !key.isValid()) {
+                continue;
+            }
+            Exchange exchange = (Exchange) attachment;
+            if (exchange.response != null) {
+                continue;
+            }
+            try {
+                if (!exchange.waiting) {
+                    if (now - exchange.deadline > 0) {
+                        closeQuietly(key);
+                    }
+                } else if (!current.etag.equals(exchange.ifNoneMatch)) {
+                    respondWith(key, exchange, current);
+                } else if (now - exchange.deadline > 0) {
+                    respond(key, current.notModified);
+                }
+            } catch (IOException e) {
+                closeQuietly(key);
+            } catch (RuntimeException e) {
+                // As in serve(), one exchange failing leaves the others alone
+                closeQuietly(key);
+            }
+        }
+    }
+
+    /**
+     * Sends the current body, or a 503 while there are no brokers to send.
+     */
+    private void respondWith(SelectionKey key, Exchange exchange, Responses current)
+            throws IOException {
+        if (current.connectionString == null) {
+            respond(key, UNAVAILABLE);
+        } else {
+            respond(key, exchange.brokers ? current.brokers : current.connectionString);
+        }
+    }
+
+    private void respond(SelectionKey key, byte[] response) throws IOException {
+        Exchange exchange = (Exchange) key.attachment();
+        exchange.response = ByteBuffer.wrap(response);
+        key.interestOps(SelectionKey.OP_WRITE);
+        write(key);
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        Exchange exchange = (Exchange) key.attachment();
+        ((SocketChannel) key.channel()).write(exchange.response);
+        if (!exchange.response.hasRemaining()) {
+            closeQuietly(key);
+        }
+    }
+
+    private static int findEndOfHeaders(ByteBuffer request) {
+        byte[] bytes = request.array();
+        for (int i = 3; i < request.position(); i++) {
+            if (bytes[i] == '\n' && bytes[i - 1] == '\r' && bytes[i - 2] == '\n'
+                    && bytes[i - 3] == '\r') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static String findIfNoneMatch(String header) {
+        int start = header.toLowerCase(Locale.ROOT).indexOf("\r\n" + IF_NONE_MATCH);
+        if (start < 0) {
+            return null;
+        }
+        start += 2 + IF_NONE_MATCH.length();
+        return header.substring(start, header.indexOf("\r\n", start)).trim();
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // Nothing more can be sent on it either way
+        }
+    }
+
+    private static byte[] makeResponse(String status, String etag, String contentType,
+            String body) {
+        return makeResponse(status, etag, contentType, body.getBytes(Charsets.UTF_8));
+    }
+
+    private static byte[] makeResponse(String status, String etag, String contentType,
+            byte[] bodyBytes) {
+        StringBuilder head = new StringBuilder(128);
+        head.append("HTTP/1.1 ").append(status).append("\r\n");
+        if (etag != null) {
+            head.append("ETag: ").append(etag).append("\r\n");
+        }
+        if (contentType != null) {
+            head.append("Content-Type: ").append(contentType).append("\r\n");
+        }
+        head.append("Cache-Control: no-cache\r\nConnection: close\r\nContent-Length: ")
+            .append(bodyBytes.length).append("\r\n\r\n");
+        byte[] headBytes = head.toString().getBytes(Charsets.ISO_8859_1);
+        byte[] response = new byte[headBytes.length + bodyBytes.length];
+        System.arraycopy(headBytes, 0, response, 0, headBytes.length);
+        System.arraycopy(bodyBytes, 0, response, headBytes.length, bodyBytes.length);
+        return response;
+    }
+
+    /**
+     * Stops serving. The discoverer is left open.
+     */
+    public void close() throws IOException {
+        discoverer.removeSnapshotListener(snapshotListener);
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        serverChannel.close();
+    }
+
+    /**
+     * Every response for one snapshot, rendered up front.
+     */
+    private class Responses {
+
+        private final long version;
+        private final String etag;
+        private final byte[] connectionStringBody;
+        private final byte[] brokersBody;
+        private final byte[] connectionString;
+        private final byte[] brokers;
+        private final byte[] notModified;
+
+        /**
+         * @param previous the responses being replaced, whose ETag is kept if the bodies are
+         *        byte for byte the same, or null
+         */
+        Responses(BrokerSnapshot snapshot, Responses previous) {
+            version = snapshot.getVersion();
+            if (snapshot.getConnectionString() == null) {
+                connectionStringBody = null;
+                brokersBody = null;
+            } else {
+                connectionStringBody = (snapshot.getConnectionString() + "\n").getBytes(
+                        Charsets.UTF_8);
+                brokersBody = jsonWriter.writeBrokers(snapshot.getBrokers(),
+                        snapshot.getConnectionString()).getBytes(Charsets.UTF_8);
+            }
+            if (previous != null
+                    && Arrays.equals(connectionStringBody, previous.connectionStringBody)
+                    && Arrays.equals(brokersBody, previous.brokersBody)) {
+                etag = previous.etag;
+            } else {
+                etag = "\"" + etagPrefix + "-" + snapshot.getVersion() + "\"";
+            }
+            if (connectionStringBody == null) {
+                connectionString = null;
+                brokers = null;
+            } else {
+                connectionString = makeResponse("200 OK", etag, "text/plain; charset=utf-8",
+                        connectionStringBody);
+                brokers = makeResponse("200 OK", etag, "application/json", brokersBody);
+            }
+            notModified = makeResponse("304 Not Modified", etag, null, "");
+        }
+    }
+
+    private static class Exchange {
+
+        private final ByteBuffer request = ByteBuffer.allocate(MAX_REQUEST_BYTES);
+        private ByteBuffer response;
+        private boolean brokers;
+        private String ifNoneMatch;
+        private boolean waiting;
+        private long deadline;
+
+        Exchange(long deadline) {
+            this.deadline = deadline;
+        }
+    }
+
+}
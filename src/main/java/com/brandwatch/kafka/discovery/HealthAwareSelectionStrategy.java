@@ -0,0 +1,43 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Leaves brokers that a {@link BrokerHealthTracker} has suppressed out of the brokers another
+ * strategy chooses from. If every broker is suppressed, the other strategy chooses from all of
+ * them, as a flapping broker is better than none.
+ *
+ * <pre>
+ * BrokerHealthTracker tracker = new BrokerHealthTracker();
+ * BrokerInfoFetcher fetcher = new BrokerInfoFetcher(zookeeper,
+ *         new HealthAwareSelectionStrategy(new LowestIdSelectionStrategy(), tracker));
+ * tracker.attachTo(fetcher);
+ * </pre>
+ */
+public class HealthAwareSelectionStrategy implements BrokerSelectionStrategy {
+
+    private final BrokerSelectionStrategy delegate;
+    private final BrokerHealthTracker healthTracker;
+
+    public HealthAwareSelectionStrategy(BrokerSelectionStrategy delegate,
+            BrokerHealthTracker healthTracker) {
+        Preconditions.checkNotNull(delegate);
+        Preconditions.checkNotNull(healthTracker);
+        this.delegate = delegate;
+        this.healthTracker = healthTracker;
+    }
+
+    public List<BrokerInfo> select(List<BrokerInfo> brokers) {
+        List<BrokerInfo> healthy = new ArrayList<BrokerInfo>(brokers.size());
+        for (BrokerInfo brokerInfo : brokers) {
+            if (!healthTracker.isSuppressed(brokerInfo.getId())) {
+                healthy.add(brokerInfo);
+            }
+        }
+        return delegate.select(healthy.isEmpty() ? brokers : healthy);
+    }
+
+}
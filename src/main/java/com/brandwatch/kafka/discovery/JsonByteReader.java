@@ -0,0 +1,348 @@
+package com.brandwatch.kafka.discovery;
+
+import com.brandwatch.kafka.discovery.BrokerParserException.Reason;
+import com.google.common.base.Charsets;
+
+/**
+ * A minimal streaming JSON reader over a byte array.
+ * <p>
+ * Values are pulled one at a time in document order and nothing is materialised unless the
+ * caller asks for it: field names are matched in place against pre-encoded candidates and
+ * unwanted values are skipped without building a tree. The caller is responsible for the
+ * commas between elements, via {@link #nextElementOrEnd(char)}.
+ */
+final class JsonByteReader {
+
+    private final byte[] data;
+    private final int end;
+    private int position;
+
+    JsonByteReader(byte[] data, int start, int end) {
+        this.data = data;
+        this.position = start;
+        this.end = end;
+    }
+
+    static byte[] encode(String name) {
+        return name.getBytes(Charsets.UTF_8);
+    }
+
+    void beginObject() throws BrokerParserException {
+        expect('{');
+    }
+
+    void beginArray() throws BrokerParserException {
+        expect('[');
+    }
+
+    /**
+     * Consumes the closing character of an empty object or array.
+     *
+     * @return true if the container was empty and has been closed
+     */
+    boolean tryEnd(char close) {
+        skipWhitespace();
+        if (position < end && data[position] == close) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Consumes the separator after an element.
+     *
+     * @return true if another element follows, false if the container has been closed
+     */
+    boolean nextElementOrEnd(char close) throws BrokerParserException {
+        skipWhitespace();
+        if (position < end) {
+            byte b = data[position++];
+            if (b == ',') {
+                return true;
+            } else if (b == close) {
+                return false;
+            }
+        }
+        throw new BrokerParserException("Expected , or " + close + " at position "
+                + (position - 1));
+    }
+
+    /**
+     * Reads a field name and the colon that follows it.
+     *
+     * @return the index of the matching candidate, or -1 if the name is not one of them
+     */
+    int nextName(byte[][] candidates) throws BrokerParserException {
+        int nameStart = nextNameStart();
+        int nameEnd = position - 1;
+        expectColon();
+        for (int i = 0; i < candidates.length; i++) {
+            if (regionEquals(nameStart, nameEnd, candidates[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    String nextName() throws BrokerParserException {
+        int nameStart = nextNameStart();
+        String name = decode(nameStart, position - 1);
+        expectColon();
+        return name;
+    }
+
+    /**
+     * @return the string value, or null if the value is a JSON null
+     */
+    String nextString() throws BrokerParserException {
+        skipWhitespace();
+        checkValuePresent();
+        if (data[position] == 'n') {
+            expectLiteral("null");
+            return null;
+        }
+        int valueStart = position + 1;
+        expect('"');
+        boolean escaped = skipStringBody();
+        return escaped ? unescape(valueStart, position - 1) : decode(valueStart, position - 1);
+    }
+
+    /**
+     * Reads an integral value that may be written either as a number or as a quoted number.
+     */
+    long nextLong() throws BrokerParserException {
+        skipWhitespace();
+        checkValuePresent();
+        boolean quoted = data[position] == '"';
+        if (quoted) {
+            position++;
+        }
+        int numberStart = position;
+        boolean negative = position < end && data[position] == '-';
+        if (negative) {
+            position++;
+        }
+        long value = 0;
+        int digits = 0;
+        while (position < end && data[position] >= '0' && data[position] <= '9') {
+            int digit = data[position++] - '0';
+            if (value > (Long.MAX_VALUE - digit) / 10) {
+                throw invalidNumber(numberStart);
+            }
+            value = value * 10 + digit;
+            digits++;
+        }
+        if (digits == 0 || (quoted && (position >= end || data[position++] != '"'))) {
+            throw invalidNumber(numberStart);
+        }
+        return negative ? -value : value;
+    }
+
+    int nextInt() throws BrokerParserException {
+        int numberStart = position;
+        long value = nextLong();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw invalidNumber(numberStart);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Skips the next value, including any nested objects or arrays, in a single pass.
+     */
+    void skipValue() throws BrokerParserException {
+        skipWhitespace();
+        checkValuePresent();
+        int depth = 0;
+        do {
+            skipWhitespace();
+            if (position >= end) {
+                throw new BrokerParserException("Unexpected end of broker configuration");
+            }
+            byte b = data[position];
+            if (b == '{' || b == '[') {
+                position++;
+                depth++;
+            } else if (b == '}' || b == ']') {
+                position++;
+                depth--;
+            } else if (b == '"') {
+                position++;
+                skipStringBody();
+            } else if (b == ',' || b == ':') {
+                if (depth == 0) {
+                    throw new BrokerParserException("Unexpected " + (char) b + " at position "
+                            + position);
+                }
+                position++;
+            } else {
+                skipScalar();
+            }
+        } while (depth > 0);
+        if (depth < 0) {
+            throw new BrokerParserException("Unbalanced brackets in broker configuration");
+        }
+    }
+
+    boolean isAtEnd() {
+        skipWhitespace();
+        return position >= end;
+    }
+
+    private int nextNameStart() throws BrokerParserException {
+        skipWhitespace();
+        if (position >= end || data[position] != '"') {
+            throw new BrokerParserException("Keys should be quoted strings");
+        }
+        position++;
+        int nameStart = position;
+        skipStringBody();
+        if (position - 1 == nameStart) {
+            throw new BrokerParserException("Keys should not be empty");
+        }
+        return nameStart;
+    }
+
+    private void expectColon() throws BrokerParserException {
+        skipWhitespace();
+        if (position >= end || data[position] != ':') {
+            throw new BrokerParserException("Keys and values should be separated by colons");
+        }
+        position++;
+    }
+
+    private void checkValuePresent() throws BrokerParserException {
+        if (position >= end || data[position] == ',' || data[position] == '}'
+                || data[position] == ']') {
+            throw new BrokerParserException(Reason.MISSING_VALUE,
+                    "Null or empty values are not allowed");
+        }
+    }
+
+    /**
+     * Advances past the closing quote of a string whose opening quote has been consumed.
+     *
+     * @return true if the string contained escape sequences
+     */
+    private boolean skipStringBody() throws BrokerParserException {
+        boolean escaped = false;
+        while (position < end) {
+            byte b = data[position++];
+            if (b == '"') {
+                return escaped;
+            } else if (b == '\\') {
+                escaped = true;
+                position++;
+            }
+        }
+        throw new BrokerParserException("Unterminated string in broker configuration");
+    }
+
+    private void skipScalar() {
+        while (position < end) {
+            byte b = data[position];
+            if (b == ',' || b == '}' || b == ']' || b == ':' || isWhitespace(b)) {
+                return;
+            }
+            position++;
+        }
+    }
+
+    private void expectLiteral(String literal) throws BrokerParserException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (position >= end || data[position++] != literal.charAt(i)) {
+                throw new BrokerParserException("Invalid literal at position " + (position - 1));
+            }
+        }
+    }
+
+    private void expect(char expected) throws BrokerParserException {
+        skipWhitespace();
+        if (position >= end || data[position] != expected) {
+            throw new BrokerParserException("Expected " + expected + " at position " + position);
+        }
+        position++;
+    }
+
+    private void skipWhitespace() {
+        while (position < end && isWhitespace(data[position])) {
+            position++;
+        }
+    }
+
+    private boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private boolean regionEquals(int start, int stop, byte[] expected) {
+        if (stop - start != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (data[start + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private BrokerParserException invalidNumber(int numberStart) {
+        int numberEnd = Math.min(Math.max(position, numberStart), end);
+        return new BrokerParserException(Reason.INVALID_VALUE, "Invalid numeric value: "
+                + decode(numberStart, numberEnd));
+    }
+
+    private String decode(int start, int stop) {
+        return new String(data, start, stop - start, Charsets.UTF_8);
+    }
+
+    private String unescape(int start, int stop) throws BrokerParserException {
+        String raw = decode(start, stop);
+        StringBuilder builder = new StringBuilder(raw.length());
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c != '\\') {
+                builder.append(c);
+                continue;
+            }
+            char escape = raw.charAt(++i);
+            switch (escape) {
+            case 'b':
+                builder.append('\b');
+                break;
+            case 'f':
+                builder.append('\f');
+                break;
+            case 'n':
+                builder.append('\n');
+                break;
+            case 'r':
+                builder.append('\r');
+                break;
+            case 't':
+                builder.append('\t');
+                break;
+            case 'u':
+                builder.append(parseUnicodeEscape(raw, i + 1));
+                i += 4;
+                break;
+            default:
+                builder.append(escape);
+                break;
+            }
+        }
+        return builder.toString();
+    }
+
+    private char parseUnicodeEscape(String raw, int start) throws BrokerParserException {
+        if (start + 4 > raw.length()) {
+            throw new BrokerParserException("Invalid unicode escape in broker configuration");
+        }
+        try {
+            return (char) Integer.parseInt(raw.substring(start, start + 4), 16);
+        } catch (NumberFormatException e) {
+            throw new BrokerParserException("Invalid unicode escape in broker configuration");
+        }
+    }
+}
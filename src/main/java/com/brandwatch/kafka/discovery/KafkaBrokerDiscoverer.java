@@ -2,31 +2,489 @@ package com.brandwatch.kafka.discovery;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 
+/**
+ * Discovers a set of Kafka brokers to bootstrap from.
+ * <p>
+ * A discoverer is safe to share between threads. The current brokers and their connection
+ * string are held in an immutable {@link BrokerSnapshot} that is swapped atomically whenever
+ * the registered brokers change, so reads never lock and never allocate.
+ * <p>
+ * The constructors block until Zookeeper has been reached and the brokers have been read. Use
+ * {@link #createAsync(String, String)} to do that work in the background instead, or give the
+ * discoverer a {@link BrokerSnapshotStore} so that it can start from the last brokers it saw.
+ */
 public class KafkaBrokerDiscoverer implements Closeable {
 
+    public static final long DEFAULT_COALESCING_WINDOW_MILLIS = 1000;
+    public static final long DEFAULT_MAX_NOTIFICATION_DELAY_MILLIS = 10000;
+    public static final long INITIAL_RETRY_DELAY_MILLIS = 1000;
+    public static final long MAX_RETRY_DELAY_MILLIS = 60000;
+
     private ConnectionStringCreator connectionStringCreator;
     private BrokerInfoFetcher dataFetcher;
-    private List<BrokerInfo> brokers;
+    private final BrokerSnapshotStore snapshotStore;
+    private final AtomicReference<BrokerSnapshot> snapshot = new AtomicReference<BrokerSnapshot>(
+            new BrokerSnapshot(0, Collections.<BrokerInfo> emptyList(), null, 0));
+    private ScheduledExecutorService notificationExecutor;
+    private ScheduledExecutorService retryExecutor;
+    private ExecutorService snapshotWriter;
+    private List<BrokerInfo> persistedBrokers;
+    private long persistedFingerprint;
+    private volatile boolean servingStoredBrokers = false;
+    private boolean closed = false;
+    private final List<BrokerSnapshotListener> snapshotListeners =
+            new CopyOnWriteArrayList<BrokerSnapshotListener>();
+    private final List<Closeable> subscriptions = new CopyOnWriteArrayList<Closeable>();
 
     public KafkaBrokerDiscoverer(String host, String port) throws Exception {
+        this(host, port, new LowestIdSelectionStrategy());
+    }
+
+    public KafkaBrokerDiscoverer(String host, String port,
+            BrokerSelectionStrategy selectionStrategy) throws Exception {
+        this(new BrokerInfoFetcher(Joiner.on(":").join(Preconditions.checkNotNull(host),
+                Preconditions.checkNotNull(port)), selectionStrategy));
+    }
+
+    public KafkaBrokerDiscoverer(BrokerInfoFetcher dataFetcher) throws Exception {
+        this(dataFetcher, null, true);
+    }
+
+    /**
+     * Serves the brokers saved in the store straight away, if there are any, and reads the live
+     * brokers from Zookeeper in the background; they replace the stored ones once they arrive,
+     * and every later change is saved back to the store. With nothing stored this blocks like
+     * {@link #KafkaBrokerDiscoverer(BrokerInfoFetcher)}.
+     * <p>
+     * If Zookeeper can't be reached the live read is retried in the background, backing off
+     * from {@link #INITIAL_RETRY_DELAY_MILLIS} to {@link #MAX_RETRY_DELAY_MILLIS}, and the
+     * discoverer reports itself {@link #isStale() stale} for as long as the stored brokers are
+     * being served.
+     */
+    public KafkaBrokerDiscoverer(BrokerInfoFetcher dataFetcher, BrokerSnapshotStore snapshotStore)
+            throws Exception {
+        this(dataFetcher, Preconditions.checkNotNull(snapshotStore), false);
+        List<BrokerInfo> storedBrokers = readQuietly(snapshotStore);
+        if (storedBrokers == null || storedBrokers.isEmpty()) {
+            dataFetcher.fetchBrokerInfo();
+            publishSnapshot();
+        } else {
+            servingStoredBrokers = true;
+            publishSnapshot(storedBrokers, false);
+            fetchLiveBrokers(INITIAL_RETRY_DELAY_MILLIS);
+        }
+    }
+
+    /**
+     * @param retryDelayMillis how long to wait before trying again if this attempt fails
+     */
+    private void fetchLiveBrokers(final long retryDelayMillis) {
+        dataFetcher.fetchBrokerInfoAsync().whenComplete(
+                new BiConsumer<List<BrokerInfo>, Throwable>() {
+
+                    public void accept(List<BrokerInfo> brokers, Throwable failure) {
+                        if (failure == null) {
+                            servingStoredBrokers = false;
+                            publishSnapshot();
+                        } else {
+                            scheduleRetry(retryDelayMillis);
+                        }
+                    }
+                });
+    }
+
+    private synchronized void scheduleRetry(final long delayMillis) {
+        if (closed) {
+            return;
+        }
+        if (retryExecutor == null) {
+            retryExecutor = makeRetryExecutor();
+        }
+        retryExecutor.schedule(new Runnable() {
+
+            public void run() {
+                fetchLiveBrokers(Math.min(delayMillis * 2, MAX_RETRY_DELAY_MILLIS));
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    ScheduledExecutorService makeRetryExecutor() {
+        return Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "kafka-broker-discovery-retry");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    ExecutorService makeSnapshotWriter() {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "kafka-broker-snapshot-writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private KafkaBrokerDiscoverer(BrokerInfoFetcher dataFetcher,
+            BrokerSnapshotStore snapshotStore, boolean fetchNow) throws Exception {
+        Preconditions.checkNotNull(dataFetcher);
+        connectionStringCreator = new ConnectionStringCreator();
+        this.dataFetcher = dataFetcher;
+        this.snapshotStore = snapshotStore;
+        dataFetcher.addBrokerChangeListener(new BrokerChangeListener() {
+
+            public void brokersChanged(List<BrokerInfo> brokers) {
+                publishSnapshot();
+            }
+        });
+        if (fetchNow) {
+            dataFetcher.fetchBrokerInfo();
+            publishSnapshot();
+        }
+    }
+
+    /**
+     * Creates a discoverer that bootstraps from the brokers leading the most partitions of the
+     * given topics. Blocks until the brokers and the topics' leaders have been read.
+     *
+     * @see LeaderAwareSelectionStrategy
+     */
+    public static KafkaBrokerDiscoverer forTopics(String host, String port,
+            Collection<String> topics) throws Exception {
+        LeaderAwareSelectionStrategy strategy = new LeaderAwareSelectionStrategy(topics);
+        KafkaBrokerDiscoverer discoverer = new KafkaBrokerDiscoverer(host, port, strategy);
+        try {
+            await(strategy.attachTo(discoverer.dataFetcher));
+        } catch (Exception e) {
+            discoverer.close();
+            throw e;
+        }
+        return discoverer;
+    }
+
+    public static CompletableFuture<KafkaBrokerDiscoverer> createAsync(String host, String port) {
+        return createAsync(host, port, new LowestIdSelectionStrategy());
+    }
+
+    public static CompletableFuture<KafkaBrokerDiscoverer> createAsync(String host, String port,
+            BrokerSelectionStrategy selectionStrategy) {
         Preconditions.checkNotNull(host);
         Preconditions.checkNotNull(port);
-        connectionStringCreator = new ConnectionStringCreator();
-        String zookeeperConnectionString = Joiner.on(":").join(host, port);
-        dataFetcher = new BrokerInfoFetcher(zookeeperConnectionString);
-        brokers = dataFetcher.fetchBrokerInfo();
+        try {
+            return createAsync(new BrokerInfoFetcher(Joiner.on(":").join(host, port),
+                    selectionStrategy));
+        } catch (Exception e) {
+            return failedFuture(e);
+        }
+    }
+
+    /**
+     * Creates a discoverer without blocking the calling thread. The returned future completes
+     * on a Curator thread once the brokers have been read; dependent stages should not block.
+     * If discovery fails the fetcher is closed.
+     */
+    public static CompletableFuture<KafkaBrokerDiscoverer> createAsync(
+            final BrokerInfoFetcher dataFetcher) {
+        final KafkaBrokerDiscoverer discoverer;
+        try {
+            discoverer = new KafkaBrokerDiscoverer(dataFetcher, null, false);
+        } catch (Exception e) {
+            return failedFuture(e);
+        }
+        CompletableFuture<KafkaBrokerDiscoverer> result = dataFetcher.fetchBrokerInfoAsync()
+            .thenApply(new Function<List<BrokerInfo>, KafkaBrokerDiscoverer>() {
+
+                public KafkaBrokerDiscoverer apply(List<BrokerInfo> brokers) {
+                    discoverer.publishSnapshot();
+                    return discoverer;
+                }
+            });
+        result.whenComplete(new BiConsumer<KafkaBrokerDiscoverer, Throwable>() {
+
+            public void accept(KafkaBrokerDiscoverer ignored, Throwable failure) {
+                if (failure != null) {
+                    closeQuietly(dataFetcher);
+                }
+            }
+        });
+        return result;
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(Exception e) {
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    private static void closeQuietly(BrokerInfoFetcher dataFetcher) {
+        try {
+            dataFetcher.close();
+        } catch (Exception e) {
+            // Discovery has already failed; that is the error worth reporting
+        }
+    }
+
+    private static List<BrokerInfo> readQuietly(BrokerSnapshotStore snapshotStore) {
+        try {
+            return snapshotStore.read();
+        } catch (IOException e) {
+            // An unreadable snapshot is no worse than none; it is overwritten on the next change
+            return null;
+        }
     }
 
     public String getConnectionString() throws Exception {
-        return connectionStringCreator.createConnectionString(brokers);
+        return snapshot.get().getConnectionString();
+    }
+
+    public CompletableFuture<String> getConnectionStringAsync() {
+        return dataFetcher.fetchBrokerInfoAsync().thenApply(
+                new Function<List<BrokerInfo>, String>() {
+
+                    public String apply(List<BrokerInfo> brokers) {
+                        return snapshot.get().getConnectionString();
+                    }
+                });
+    }
+
+    public List<BrokerInfo> getBrokers() {
+        return snapshot.get().getBrokers();
+    }
+
+    public BrokerSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * @return whether the brokers being served may be out of date because Zookeeper can't be
+     *         reached, or has only just been reached again, or because they were read from the
+     *         snapshot store and the live brokers haven't arrived yet
+     * @see BrokerInfoFetcher#isStale()
+     */
+    public boolean isStale() {
+        return servingStoredBrokers || dataFetcher.isStale();
+    }
+
+    public DiscoveryMetrics getMetrics() {
+        return dataFetcher.getMetrics();
+    }
+
+    /**
+     * The first call starts watching the controller, and returns
+     * {@link ClusterStateCache#NO_CONTROLLER} until it has been read.
+     */
+    public int getControllerId() throws Exception {
+        return dataFetcher.getClusterState().getControllerId();
+    }
+
+    /**
+     * @see BrokerInfoFetcher#leaderFor(String, int)
+     */
+    public int leaderFor(String topic, int partition) {
+        return dataFetcher.leaderFor(topic, partition);
+    }
+
+    /**
+     * The first call for a topic blocks until its partition leaders have been read; after that
+     * they are kept up to date by watches.
+     *
+     * @return a connection string for the brokers leading the topic's partitions, ordered by
+     *         id, or {@link #getConnectionString()} if none of them is registered
+     */
+    public String getLeaderConnectionString(String topic) throws Exception {
+        TopicLeaderCache leaders = awaitTopic(topic);
+        Set<Integer> leaderIds = new TreeSet<Integer>();
+        for (int leader : leaders.getLeaders()) {
+            if (leader != TopicLeaderCache.NO_LEADER) {
+                leaderIds.add(leader);
+            }
+        }
+        BrokerTable brokers = dataFetcher.getBrokerTable();
+        List<BrokerInfo> leaderBrokers = new ArrayList<BrokerInfo>(leaderIds.size());
+        for (Integer leaderId : leaderIds) {
+            BrokerInfo leader = brokers.findById(leaderId);
+            if (leader != null) {
+                leaderBrokers.add(leader);
+            }
+        }
+        if (leaderBrokers.isEmpty()) {
+            return getConnectionString();
+        }
+        return connectionStringCreator.createConnectionString(leaderBrokers);
+    }
+
+    private TopicLeaderCache awaitTopic(String topic) throws Exception {
+        return await(dataFetcher.getClusterState().watchTopic(topic));
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public void addSnapshotListener(BrokerSnapshotListener listener) {
+        Preconditions.checkNotNull(listener);
+        snapshotListeners.add(listener);
+    }
+
+    public void removeSnapshotListener(BrokerSnapshotListener listener) {
+        snapshotListeners.remove(listener);
+    }
+
+    public Closeable onBrokersChanged(BrokerChangeEventListener listener) {
+        return onBrokersChanged(listener, DEFAULT_COALESCING_WINDOW_MILLIS,
+                DEFAULT_MAX_NOTIFICATION_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Subscribes to changes in the registered brokers, coalesced so that a burst of changes,
+     * such as a rolling restart, is delivered as one event. An event is sent once the brokers
+     * have been quiet for <code>window</code>, or <code>maxDelay</code> after the first change
+     * it contains, whichever is sooner. Events are delivered one at a time on a thread owned
+     * by this discoverer.
+     *
+     * @return closing this cancels the subscription; closing the discoverer cancels it too
+     */
+    public Closeable onBrokersChanged(BrokerChangeEventListener listener, long window,
+            long maxDelay, TimeUnit unit) {
+        final CoalescingBrokerChangeListener subscription = new CoalescingBrokerChangeListener(
+                dataFetcher, listener, getNotificationExecutor(), window, maxDelay, unit);
+        Closeable closeable = new Closeable() {
+
+            public void close() {
+                subscriptions.remove(this);
+                subscription.close();
+            }
+        };
+        subscriptions.add(closeable);
+        return closeable;
+    }
+
+    private synchronized ScheduledExecutorService getNotificationExecutor() {
+        Preconditions.checkState(!closed, "The discoverer has been closed");
+        if (notificationExecutor == null) {
+            notificationExecutor = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactory() {
+
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "kafka-broker-change-notifier");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        return notificationExecutor;
+    }
+
+    /**
+     * Always reads the fetcher's latest bootstrap brokers rather than a value handed in by the
+     * caller, so whichever of two racing publishers runs last leaves the newest state behind.
+     * The connection string is only re-rendered if the hosts and ports have changed.
+     */
+    private void publishSnapshot() {
+        publishSnapshot(null, true);
+    }
+
+    /**
+     * @param brokers the brokers to publish, or null for the fetcher's latest
+     * @param persist whether to save them to the snapshot store, if there is one. They are
+     *            only saved if they render differently from what was saved last, and the write
+     *            happens on its own thread so that a slow disk never holds up the publication.
+     */
+    private synchronized void publishSnapshot(List<BrokerInfo> brokers, boolean persist) {
+        if (brokers == null) {
+            brokers = dataFetcher.getBootstrapBrokers();
+        }
+        BrokerSnapshot current = snapshot.get();
+        long fingerprint = connectionStringCreator.fingerprint(brokers);
+        String connectionString;
+        if (current.getConnectionString() != null && fingerprint == current.getFingerprint()
+                && connectionStringCreator.rendersSameAs(brokers, current.getBrokers())) {
+            connectionString = current.getConnectionString();
+        } else {
+            connectionString = connectionStringCreator.createConnectionString(brokers);
+        }
+        BrokerSnapshot published = new BrokerSnapshot(current.getVersion() + 1, brokers,
+                connectionString, fingerprint);
+        snapshot.set(published);
+        for (BrokerSnapshotListener listener : snapshotListeners) {
+            listener.snapshotPublished(published);
+        }
+        if (persist && snapshotStore != null && !closed && (persistedBrokers == null
+                || fingerprint != persistedFingerprint
+                || !connectionStringCreator.rendersSameAs(brokers, persistedBrokers))) {
+            persistedBrokers = brokers;
+            persistedFingerprint = fingerprint;
+            if (snapshotWriter == null) {
+                snapshotWriter = makeSnapshotWriter();
+            }
+            final List<BrokerInfo> toWrite = brokers;
+            snapshotWriter.execute(new Runnable() {
+
+                public void run() {
+                    try {
+                        snapshotStore.write(toWrite);
+                    } catch (IOException e) {
+                        // The live view is unaffected; the next change will try to save again
+                    }
+                }
+            });
+        }
     }
 
     public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+        }
+        // Unhooked from the fetcher before their executor goes, so a late broker change can't
+        // be handed to an executor that will reject it
+        for (Closeable subscription : subscriptions) {
+            subscription.close();
+        }
+        synchronized (this) {
+            if (notificationExecutor != null) {
+                notificationExecutor.shutdownNow();
+            }
+            if (retryExecutor != null) {
+                retryExecutor.shutdownNow();
+            }
+            if (snapshotWriter != null) {
+                // Lets the last write finish
+                snapshotWriter.shutdown();
+            }
+        }
         dataFetcher.close();
     }
 
@@ -0,0 +1,131 @@
+package com.brandwatch.kafka.discovery;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Orders the candidates chosen by another strategy by how quickly they accept a TCP
+ * connection, as measured by a {@link BrokerLatencyProber}. The candidate strategy should be
+ * deterministic for a given set of brokers, so that probes measure the brokers that will be
+ * ranked.
+ * <p>
+ * Selection itself only reads cached averages and never touches the network. Probing happens
+ * on a background thread started by {@link #startRefreshing(BrokerInfoFetcher, long, TimeUnit)},
+ * both periodically and soon after the registered brokers change; whenever a probe changes
+ * the order, the fetcher is asked to {@link BrokerInfoFetcher#reselect() reselect}.
+ *
+ * <pre>
+ * LatencyAwareSelectionStrategy strategy = new LatencyAwareSelectionStrategy(
+ *         new ConsistentHashSelectionStrategy(clientId, 6), 3);
+ * BrokerInfoFetcher fetcher = new BrokerInfoFetcher(zookeeper, strategy);
+ * strategy.startRefreshing(fetcher, 30, TimeUnit.SECONDS);
+ * KafkaBrokerDiscoverer discoverer = new KafkaBrokerDiscoverer(fetcher);
+ * </pre>
+ */
+public class LatencyAwareSelectionStrategy implements BrokerSelectionStrategy, Closeable {
+
+    private final BrokerSelectionStrategy candidateStrategy;
+    private final int count;
+    private final BrokerLatencyProber prober;
+    private final ScheduledExecutorService executor;
+
+    private volatile List<BrokerInfo> lastSelection;
+    private volatile List<BrokerInfo> lastProbedBrokers;
+    private BrokerInfoFetcher refreshedFetcher;
+    private BrokerChangeListener changeListener;
+
+    public LatencyAwareSelectionStrategy(BrokerSelectionStrategy candidateStrategy, int count) {
+        this(candidateStrategy, count, new BrokerLatencyProber());
+    }
+
+    public LatencyAwareSelectionStrategy(BrokerSelectionStrategy candidateStrategy, int count,
+            BrokerLatencyProber prober) {
+        Preconditions.checkNotNull(candidateStrategy);
+        Preconditions.checkArgument(count > 0, "count must be positive");
+        Preconditions.checkNotNull(prober);
+        this.candidateStrategy = candidateStrategy;
+        this.count = count;
+        this.prober = prober;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "kafka-broker-latency-prober");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public List<BrokerInfo> select(List<BrokerInfo> brokers) {
+        List<BrokerInfo> ranked = prober.rank(candidateStrategy.select(brokers));
+        List<BrokerInfo> selection = ranked.size() <= count ? ranked : ranked.subList(0, count);
+        lastSelection = selection;
+        return selection;
+    }
+
+    /**
+     * Probes the candidates every <code>interval</code>, and again whenever the fetcher
+     * publishes a new set of brokers.
+     */
+    public synchronized void startRefreshing(final BrokerInfoFetcher fetcher, long interval,
+            TimeUnit unit) {
+        Preconditions.checkNotNull(fetcher);
+        Preconditions.checkState(changeListener == null, "Already refreshing");
+        final Runnable refresh = new Runnable() {
+
+            public void run() {
+                refresh(fetcher);
+            }
+        };
+        changeListener = new BrokerChangeListener() {
+
+            public void brokersChanged(List<BrokerInfo> brokers) {
+                // Our own reselect() republishes the same list; only new membership is probed
+                if (brokers != lastProbedBrokers) {
+                    try {
+                        executor.execute(refresh);
+                    } catch (RejectedExecutionException e) {
+                        // Closed while the fetcher was publishing
+                    }
+                }
+            }
+        };
+        refreshedFetcher = fetcher;
+        fetcher.addBrokerChangeListener(changeListener);
+        executor.scheduleWithFixedDelay(refresh, interval, interval, unit);
+    }
+
+    void refresh(BrokerInfoFetcher fetcher) {
+        List<BrokerInfo> brokers = fetcher.getAllBrokers();
+        lastProbedBrokers = brokers;
+        try {
+            prober.retainOnly(brokers);
+            prober.probe(candidateStrategy.select(brokers));
+        } catch (IOException e) {
+            return;
+        }
+        List<BrokerInfo> previous = lastSelection;
+        if (previous == null || !previous.equals(select(brokers))) {
+            fetcher.reselect();
+        }
+    }
+
+    /**
+     * Stops probing and stops listening to the fetcher. The last ranking is kept.
+     */
+    public synchronized void close() {
+        if (changeListener != null) {
+            refreshedFetcher.removeBrokerChangeListener(changeListener);
+        }
+        executor.shutdownNow();
+    }
+
+}
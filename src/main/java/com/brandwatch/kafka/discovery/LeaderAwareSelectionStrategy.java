@@ -0,0 +1,173 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Prefers the brokers that lead the most partitions of the topics a client is going to use, so
+ * that its first metadata request goes to a broker it will need a connection to anyway.
+ * <p>
+ * Brokers are ranked by how many of the topics' partitions they lead, most first, with ties
+ * going to the lower id. If fewer than <code>count</code> brokers lead anything, the rest are
+ * filled in from another strategy. Until the strategy has been attached, or while the topics'
+ * leaders are still being read, the other strategy chooses alone.
+ * <p>
+ * Selection only reads the leaders cached by a {@link ClusterStateCache} and never touches
+ * Zookeeper. Once attached, the fetcher is asked to {@link BrokerInfoFetcher#reselect()
+ * reselect} whenever a change of leader changes the selection.
+ *
+ * <pre>
+ * LeaderAwareSelectionStrategy strategy = new LeaderAwareSelectionStrategy(
+ *         Arrays.asList("events", "clicks"));
+ * BrokerInfoFetcher fetcher = new BrokerInfoFetcher(zookeeper, strategy);
+ * KafkaBrokerDiscoverer discoverer = new KafkaBrokerDiscoverer(fetcher);
+ * strategy.attachTo(fetcher).get();
+ * </pre>
+ *
+ * @see KafkaBrokerDiscoverer#forTopics(String, String, Collection)
+ */
+public class LeaderAwareSelectionStrategy implements BrokerSelectionStrategy {
+
+    public static final int DEFAULT_COUNT = 3;
+
+    private static final Comparator<RankedBroker> MOST_LEADERS_FIRST =
+            new Comparator<RankedBroker>() {
+
+                public int compare(RankedBroker left, RankedBroker right) {
+                    if (left.leaderCount != right.leaderCount) {
+                        return Integer.compare(right.leaderCount, left.leaderCount);
+                    }
+                    return Integer.compare(left.brokerInfo.getId(), right.brokerInfo.getId());
+                }
+            };
+
+    private final BrokerSelectionStrategy fallbackStrategy;
+    private final int count;
+    private final List<String> topics;
+
+    private volatile List<TopicLeaderCache> topicLeaders = Collections.emptyList();
+    private volatile List<BrokerInfo> lastSelection;
+
+    public LeaderAwareSelectionStrategy(Collection<String> topics) {
+        this(new LowestIdSelectionStrategy(), DEFAULT_COUNT, topics);
+    }
+
+    /**
+     * @param fallbackStrategy chooses the brokers that don't lead any of the topics' partitions
+     */
+    public LeaderAwareSelectionStrategy(BrokerSelectionStrategy fallbackStrategy, int count,
+            Collection<String> topics) {
+        Preconditions.checkNotNull(fallbackStrategy);
+        Preconditions.checkArgument(count > 0, "count must be positive");
+        Preconditions.checkNotNull(topics);
+        Preconditions.checkArgument(!topics.isEmpty(), "topics must not be empty");
+        this.fallbackStrategy = fallbackStrategy;
+        this.count = count;
+        this.topics = Collections.unmodifiableList(new ArrayList<String>(topics));
+    }
+
+    public List<String> getTopics() {
+        return topics;
+    }
+
+    public List<BrokerInfo> select(List<BrokerInfo> brokers) {
+        Map<Integer, Integer> leaderCounts = countLeaders();
+        List<RankedBroker> leaders = new ArrayList<RankedBroker>(leaderCounts.size());
+        for (BrokerInfo brokerInfo : brokers) {
+            Integer leaderCount = leaderCounts.get(brokerInfo.getId());
+            if (leaderCount != null) {
+                leaders.add(new RankedBroker(brokerInfo, leaderCount));
+            }
+        }
+        List<BrokerInfo> selection = new ArrayList<BrokerInfo>(count);
+        Set<Integer> selectedIds = new HashSet<Integer>();
+        for (RankedBroker leader : PartialSelection.smallest(leaders, count,
+                MOST_LEADERS_FIRST)) {
+            selection.add(leader.brokerInfo);
+            selectedIds.add(leader.brokerInfo.getId());
+        }
+        if (selection.size() < count) {
+            for (BrokerInfo brokerInfo : fallbackStrategy.select(brokers)) {
+                if (selection.size() == count) {
+                    break;
+                } else if (selectedIds.add(brokerInfo.getId())) {
+                    selection.add(brokerInfo);
+                }
+            }
+        }
+        lastSelection = selection;
+        return selection;
+    }
+
+    private Map<Integer, Integer> countLeaders() {
+        Map<Integer, Integer> leaderCounts = new HashMap<Integer, Integer>();
+        for (TopicLeaderCache topic : topicLeaders) {
+            for (int leader : topic.getLeaders()) {
+                if (leader != TopicLeaderCache.NO_LEADER) {
+                    Integer leaderCount = leaderCounts.get(leader);
+                    leaderCounts.put(leader, leaderCount == null ? 1 : leaderCount + 1);
+                }
+            }
+        }
+        return leaderCounts;
+    }
+
+    /**
+     * Starts watching the topics through the fetcher's {@link ClusterStateCache}. Each time a
+     * topic loads or its leaders change, the selection is worked out again and, if it has
+     * changed, the fetcher is asked to reselect.
+     *
+     * @return completes once every topic's leaders have been read and taken into account
+     * @throws IllegalStateException if the fetcher hasn't fetched its brokers yet
+     */
+    public CompletableFuture<Void> attachTo(final BrokerInfoFetcher fetcher) {
+        Preconditions.checkNotNull(fetcher);
+        ClusterStateCache clusterState = fetcher.getClusterState();
+        TopicLeaderListener listener = new TopicLeaderListener() {
+
+            public void leadersChanged(TopicLeaderCache topic) {
+                refresh(fetcher);
+            }
+        };
+        List<TopicLeaderCache> watched = new ArrayList<TopicLeaderCache>(topics.size());
+        CompletableFuture<?>[] loads = new CompletableFuture<?>[topics.size()];
+        for (int i = 0; i < topics.size(); i++) {
+            TopicLeaderCache topic = clusterState.topicCache(topics.get(i));
+            topic.addLeaderListener(listener);
+            watched.add(topic);
+            loads[i] = topic.start();
+        }
+        topicLeaders = Collections.unmodifiableList(watched);
+        refresh(fetcher);
+        return CompletableFuture.allOf(loads);
+    }
+
+    void refresh(BrokerInfoFetcher fetcher) {
+        List<BrokerInfo> previous = lastSelection;
+        if (!select(fetcher.getAllBrokers()).equals(previous)) {
+            fetcher.reselect();
+        }
+    }
+
+    private static final class RankedBroker {
+
+        private final BrokerInfo brokerInfo;
+        private final int leaderCount;
+
+        RankedBroker(BrokerInfo brokerInfo, int leaderCount) {
+            this.brokerInfo = brokerInfo;
+            this.leaderCount = leaderCount;
+        }
+    }
+
+}
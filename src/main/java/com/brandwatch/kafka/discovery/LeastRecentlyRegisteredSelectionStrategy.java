@@ -0,0 +1,46 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.Comparator;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Selects the brokers whose registrations are oldest. A broker that has been up the longest
+ * is the least likely to be in the middle of a restart.
+ */
+public class LeastRecentlyRegisteredSelectionStrategy implements BrokerSelectionStrategy {
+
+    private static final Comparator<BrokerInfo> REGISTRATION_ORDER = new Comparator<BrokerInfo>() {
+
+        public int compare(BrokerInfo left, BrokerInfo right) {
+            long leftTime = registrationTime(left);
+            long rightTime = registrationTime(right);
+            if (leftTime != rightTime) {
+                return leftTime < rightTime ? -1 : 1;
+            }
+            return left.getId() < right.getId() ? -1 : left.getId() == right.getId() ? 0 : 1;
+        }
+    };
+
+    private final int count;
+
+    public LeastRecentlyRegisteredSelectionStrategy() {
+        this(LowestIdSelectionStrategy.DEFAULT_BROKER_COUNT);
+    }
+
+    public LeastRecentlyRegisteredSelectionStrategy(int count) {
+        Preconditions.checkArgument(count > 0, "count must be positive");
+        this.count = count;
+    }
+
+    public List<BrokerInfo> select(List<BrokerInfo> brokers) {
+        return PartialSelection.smallest(brokers, count, REGISTRATION_ORDER);
+    }
+
+    private static long registrationTime(BrokerInfo brokerInfo) {
+        return brokerInfo.getTimestamp() == null ? Long.MAX_VALUE : brokerInfo.getTimestamp()
+            .getTime();
+    }
+
+}
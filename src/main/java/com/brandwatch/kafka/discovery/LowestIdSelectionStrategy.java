@@ -0,0 +1,33 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Selects the brokers with the lowest ids. This is the default strategy, and since the
+ * registered brokers are already ordered by id it costs nothing.
+ */
+public class LowestIdSelectionStrategy implements BrokerSelectionStrategy {
+
+    public static final int DEFAULT_BROKER_COUNT = 3;
+
+    private final int count;
+
+    public LowestIdSelectionStrategy() {
+        this(DEFAULT_BROKER_COUNT);
+    }
+
+    public LowestIdSelectionStrategy(int count) {
+        Preconditions.checkArgument(count > 0, "count must be positive");
+        this.count = count;
+    }
+
+    public List<BrokerInfo> select(List<BrokerInfo> brokers) {
+        if (brokers.size() <= count) {
+            return brokers;
+        }
+        return brokers.subList(0, count);
+    }
+
+}
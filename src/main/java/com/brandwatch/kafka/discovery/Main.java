@@ -1,13 +1,27 @@
 package com.brandwatch.kafka.discovery;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.commons.cli.BasicParser;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Options;
 
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+
 public class Main {
 
+    private static final String CONNECTION_STRING_FORMAT = "connection-string";
+    private static final String JSON_FORMAT = "json";
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 5;
+
     private static Options options;
     private static HelpFormatter helpFormatter;
 
@@ -20,11 +34,127 @@ public class Main {
             printHelp();
             return;
         }
+        String format = commandLine.getOptionValue("format", CONNECTION_STRING_FORMAT);
+        if (!format.equals(CONNECTION_STRING_FORMAT) && !format.equals(JSON_FORMAT)) {
+            printHelp();
+            return;
+        }
+
+        BrokerInfoFetcher fetcher = new BrokerInfoFetcher(Joiner.on(":").join(
+                commandLine.getOptionValue("host"), commandLine.getOptionValue("port")));
+        KafkaBrokerDiscoverer kafkaBrokerDiscoverer = new KafkaBrokerDiscoverer(fetcher);
+        if (commandLine.hasOption("serve")) {
+            serve(kafkaBrokerDiscoverer, Integer.parseInt(commandLine.getOptionValue("serve")));
+        } else if (commandLine.hasOption("watch")) {
+            long window = Long.parseLong(commandLine.getOptionValue("window",
+                    Long.toString(KafkaBrokerDiscoverer.DEFAULT_COALESCING_WINDOW_MILLIS)));
+            watch(kafkaBrokerDiscoverer, fetcher, format.equals(JSON_FORMAT), window);
+        } else {
+            System.out.println(Strings.nullToEmpty(kafkaBrokerDiscoverer.getConnectionString()));
+            kafkaBrokerDiscoverer.close();
+        }
+    }
+
+    /**
+     * Serves the brokers to local processes over HTTP until the process is stopped.
+     */
+    private static void serve(KafkaBrokerDiscoverer discoverer, int port) throws Exception {
+        DiscoveryServer server = new DiscoveryServer(discoverer, port);
+        System.err.println("Serving brokers on port " + server.getPort());
+        awaitShutdown(new CountDownLatch(1), server, discoverer);
+    }
+
+    /**
+     * Prints the current brokers, then a line for every coalesced change until the process is
+     * stopped or stdout is closed. In JSON mode the first line lists every broker as added.
+     */
+    private static void watch(KafkaBrokerDiscoverer discoverer, BrokerInfoFetcher fetcher,
+            boolean json, long window) throws Exception {
+        CountDownLatch finished = new CountDownLatch(1);
+        ChangePrinter printer = new ChangePrinter(discoverer, json, System.out, finished);
+        Closeable subscription = discoverer.onBrokersChanged(printer, window, Math.max(window,
+                KafkaBrokerDiscoverer.DEFAULT_MAX_NOTIFICATION_DELAY_MILLIS),
+                TimeUnit.MILLISECONDS);
+        printer.brokersChanged(BrokerChangeEvent.between(Collections.<BrokerInfo> emptyList(),
+                fetcher.getAllBrokers()));
+        awaitShutdown(finished, subscription, discoverer);
+    }
 
-        KafkaBrokerDiscoverer kafkaBrokerDiscoverer = new KafkaBrokerDiscoverer(
-                commandLine.getOptionValue("host"), commandLine.getOptionValue("port"));
-        System.out.println(kafkaBrokerDiscoverer.getConnectionString());
-        kafkaBrokerDiscoverer.close();
+    /**
+     * Blocks until the latch is released or the process is stopped, then closes everything in
+     * order. A shutdown hook gives the closing a few seconds to finish.
+     */
+    private static void awaitShutdown(final CountDownLatch finished, Closeable... closeables)
+            throws InterruptedException {
+        final CountDownLatch closed = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread("kafka-broker-discovery-shutdown") {
+
+            @Override
+            public void run() {
+                finished.countDown();
+                try {
+                    closed.await(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        try {
+            finished.await();
+        } finally {
+            for (Closeable closeable : closeables) {
+                closeQuietly(closeable);
+            }
+            closed.countDown();
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Shutting down anyway
+        }
+    }
+
+    /**
+     * Prints a line for each change. With no brokers registered the connection string is an
+     * empty line, and in JSON mode it is <code>null</code>.
+     */
+    static class ChangePrinter implements BrokerChangeEventListener {
+
+        private final KafkaBrokerDiscoverer discoverer;
+        private final boolean json;
+        private final PrintStream out;
+        private final CountDownLatch finished;
+        private final BrokerJsonWriter jsonWriter = new BrokerJsonWriter();
+        private String lastLine;
+
+        ChangePrinter(KafkaBrokerDiscoverer discoverer, boolean json, PrintStream out,
+                CountDownLatch finished) {
+            this.discoverer = discoverer;
+            this.json = json;
+            this.out = out;
+            this.finished = finished;
+        }
+
+        public synchronized void brokersChanged(BrokerChangeEvent event) {
+            String connectionString = discoverer.getSnapshot().getConnectionString();
+            if (json) {
+                out.println(jsonWriter.writeChange(event, connectionString));
+            } else {
+                String line = Strings.nullToEmpty(connectionString);
+                if (!line.equals(lastLine)) {
+                    out.println(line);
+                }
+                lastLine = line;
+            }
+            out.flush();
+            if (out.checkError()) {
+                // Whoever was reading has gone away
+                finished.countDown();
+            }
+        }
     }
 
     private static void printHelp() {
@@ -35,6 +165,14 @@ public class Main {
         options = new Options();
         options.addOption("h", "host", true, "Zookeeper host");
         options.addOption("p", "port", true, "Zookeeper port");
+        options.addOption("w", "watch", false,
+                "Keep running and print a line each time the brokers change");
+        options.addOption("f", "format", true,
+                "Output format: connection-string (the default) or json");
+        options.addOption("s", "serve", true,
+                "Keep running and serve the brokers over HTTP on this local port");
+        options.addOption(null, "window", true,
+                "How long the brokers must be quiet, in milliseconds, before a change is printed");
         helpFormatter = new HelpFormatter();
     }
 }
@@ -0,0 +1,129 @@
+package com.brandwatch.kafka.discovery;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+
+/**
+ * Discovers the bootstrap brokers of several Kafka clusters that share a Zookeeper ensemble,
+ * each under its own chroot.
+ * <p>
+ * Every cluster watches its own <code>brokers/ids</code> path, but all of them do so over one
+ * Zookeeper session, which this discoverer holds open until it is closed. Each cluster keeps
+ * its own broker index and snapshot, so {@link #getConnectionString(String)} is answered from
+ * memory.
+ *
+ * <pre>
+ * MultiClusterDiscoverer discoverer = new MultiClusterDiscoverer("zookeeper1", "2181");
+ * discoverer.addCluster("logs", "/kafka/logs");
+ * discoverer.addCluster("metrics", "/kafka/metrics");
+ * discoverer.getConnectionString("logs");
+ * </pre>
+ */
+public class MultiClusterDiscoverer implements Closeable {
+
+    private final String hostAndPort;
+    private final ZookeeperConnectionRegistry connectionRegistry;
+    private final ZookeeperConnector session;
+    private final ConcurrentMap<String, KafkaBrokerDiscoverer> clusters =
+            new ConcurrentHashMap<String, KafkaBrokerDiscoverer>();
+
+    public MultiClusterDiscoverer(String host, String port) {
+        this(Joiner.on(":").join(Preconditions.checkNotNull(host),
+                Preconditions.checkNotNull(port)), ZookeeperConnectionRegistry.getShared());
+    }
+
+    /**
+     * @param hostAndPort the ensemble's connect string, without a chroot
+     */
+    public MultiClusterDiscoverer(String hostAndPort,
+            ZookeeperConnectionRegistry connectionRegistry) {
+        Preconditions.checkNotNull(hostAndPort);
+        Preconditions.checkNotNull(connectionRegistry);
+        this.hostAndPort = hostAndPort;
+        this.connectionRegistry = connectionRegistry;
+        this.session = connectionRegistry.acquire(hostAndPort);
+    }
+
+    public void addCluster(String clusterName, String chroot) throws Exception {
+        addCluster(clusterName, chroot, new LowestIdSelectionStrategy());
+    }
+
+    /**
+     * Starts watching a cluster and blocks until its brokers have been read.
+     *
+     * @throws IllegalArgumentException if a cluster with this name has already been added
+     */
+    public void addCluster(String clusterName, String chroot,
+            BrokerSelectionStrategy selectionStrategy) throws Exception {
+        Preconditions.checkNotNull(clusterName);
+        Preconditions.checkArgument(!clusters.containsKey(clusterName),
+                "Cluster %s has already been added", clusterName);
+        addCluster(clusterName, new KafkaBrokerDiscoverer(makeBrokerInfoFetcher(chroot,
+                selectionStrategy)));
+    }
+
+    void addCluster(String clusterName, KafkaBrokerDiscoverer discoverer) throws IOException {
+        if (clusters.putIfAbsent(clusterName, discoverer) != null) {
+            discoverer.close();
+            throw new IllegalArgumentException("Cluster " + clusterName
+                    + " has already been added");
+        }
+    }
+
+    BrokerInfoFetcher makeBrokerInfoFetcher(String chroot,
+            BrokerSelectionStrategy selectionStrategy) throws Exception {
+        return new BrokerInfoFetcher(hostAndPort, chroot, selectionStrategy,
+                connectionRegistry);
+    }
+
+    /**
+     * Stops watching a cluster. Does nothing if no cluster has that name.
+     */
+    public void removeCluster(String clusterName) throws IOException {
+        KafkaBrokerDiscoverer discoverer = clusters.remove(clusterName);
+        if (discoverer != null) {
+            discoverer.close();
+        }
+    }
+
+    public Set<String> getClusterNames() {
+        return Collections.unmodifiableSet(clusters.keySet());
+    }
+
+    public String getConnectionString(String clusterName) throws Exception {
+        return getCluster(clusterName).getConnectionString();
+    }
+
+    public List<BrokerInfo> getBrokers(String clusterName) {
+        return getCluster(clusterName).getBrokers();
+    }
+
+    public BrokerSnapshot getSnapshot(String clusterName) {
+        return getCluster(clusterName).getSnapshot();
+    }
+
+    private KafkaBrokerDiscoverer getCluster(String clusterName) {
+        KafkaBrokerDiscoverer discoverer = clusters.get(clusterName);
+        Preconditions.checkArgument(discoverer != null, "Unknown cluster %s", clusterName);
+        return discoverer;
+    }
+
+    public void close() throws IOException {
+        try {
+            for (String clusterName : clusters.keySet()) {
+                removeCluster(clusterName);
+            }
+        } finally {
+            session.close();
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks the smallest few elements of a list without sorting all of it.
+ * <p>
+ * A quickselect partitions a copy of the input around the <i>k</i>th element in expected O(n)
+ * time, after which only the first <i>k</i> elements are sorted.
+ */
+final class PartialSelection {
+
+    private PartialSelection() {
+    }
+
+    /**
+     * @return the <code>count</code> smallest items in ascending order
+     */
+    @SuppressWarnings("unchecked")
+    static <T> List<T> smallest(List<T> items, int count, Comparator<? super T> comparator) {
+        if (count <= 0 || items.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Object[] elements = items.toArray();
+        int selected = Math.min(count, elements.length);
+        if (selected < elements.length) {
+            select(elements, selected - 1, (Comparator<Object>) comparator);
+        }
+        Arrays.sort(elements, 0, selected, (Comparator<Object>) comparator);
+        List<T> result = new ArrayList<T>(selected);
+        for (int i = 0; i < selected; i++) {
+            result.add((T) elements[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Rearranges the elements so that the one at index <code>k</code> is where it would be if
+     * the array were sorted, with nothing larger before it and nothing smaller after it.
+     */
+    private static void select(Object[] elements, int k, Comparator<Object> comparator) {
+        int left = 0;
+        int right = elements.length - 1;
+        while (left < right) {
+            int pivotIndex = partition(elements, left, right,
+                    left + ThreadLocalRandom.current().nextInt(right - left + 1), comparator);
+            if (pivotIndex == k) {
+                return;
+            } else if (pivotIndex < k) {
+                left = pivotIndex + 1;
+            } else {
+                right = pivotIndex - 1;
+            }
+        }
+    }
+
+    private static int partition(Object[] elements, int left, int right, int pivotIndex,
+            Comparator<Object> comparator) {
+        Object pivot = elements[pivotIndex];
+        swap(elements, pivotIndex, right);
+        int store = left;
+        for (int i = left; i < right; i++) {
+            if (comparator.compare(elements[i], pivot) < 0) {
+                swap(elements, i, store++);
+            }
+        }
+        swap(elements, store, right);
+        return store;
+    }
+
+    private static void swap(Object[] elements, int i, int j) {
+        Object element = elements[i];
+        elements[i] = elements[j];
+        elements[j] = element;
+    }
+}
@@ -0,0 +1,122 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.brandwatch.kafka.discovery.ConsistentHashSelectionStrategy.ScoredBroker;
+import com.google.common.base.Preconditions;
+
+/**
+ * Spreads the selection across racks by taking one broker from each rack in turn, so that
+ * losing a single rack never leaves a client without a bootstrap broker. Brokers that don't
+ * register a rack are treated as one rack of their own.
+ * <p>
+ * Given a client id, the brokers are ranked by rendezvous hashing on it, as in
+ * {@link ConsistentHashSelectionStrategy}, so each client takes its own broker from each rack
+ * and a fleet of clients spreads across every machine. Without one the lowest ids are taken,
+ * and every client bootstraps from the same brokers.
+ */
+public class RackAwareSelectionStrategy implements BrokerSelectionStrategy {
+
+    private final Long clientHash;
+    private final int count;
+
+    public RackAwareSelectionStrategy() {
+        this(LowestIdSelectionStrategy.DEFAULT_BROKER_COUNT);
+    }
+
+    public RackAwareSelectionStrategy(int count) {
+        Preconditions.checkArgument(count > 0, "count must be positive");
+        this.clientHash = null;
+        this.count = count;
+    }
+
+    public RackAwareSelectionStrategy(String clientId) {
+        this(clientId, LowestIdSelectionStrategy.DEFAULT_BROKER_COUNT);
+    }
+
+    public RackAwareSelectionStrategy(String clientId, int count) {
+        Preconditions.checkNotNull(clientId);
+        Preconditions.checkArgument(count > 0, "count must be positive");
+        this.clientHash = ConsistentHashSelectionStrategy.hashClientId(clientId);
+        this.count = count;
+    }
+
+    public List<BrokerInfo> select(List<BrokerInfo> brokers) {
+        List<List<BrokerInfo>> racks = clientHash == null ? racksById(brokers)
+                : racksByScore(brokers, clientHash);
+
+        int selected = Math.min(count, brokers.size());
+        List<BrokerInfo> result = new ArrayList<BrokerInfo>(selected);
+        for (int round = 0; result.size() < selected; round++) {
+            for (List<BrokerInfo> rack : racks) {
+                if (round < rack.size() && result.size() < selected) {
+                    result.add(rack.get(round));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The brokers arrive ordered by id, so each rack is too, and racks are visited in the order
+     * of their lowest id.
+     */
+    private List<List<BrokerInfo>> racksById(List<BrokerInfo> brokers) {
+        Map<String, List<BrokerInfo>> brokersByRack = new LinkedHashMap<String, List<BrokerInfo>>();
+        for (BrokerInfo brokerInfo : brokers) {
+            List<BrokerInfo> rack = brokersByRack.get(brokerInfo.getRack());
+            if (rack == null) {
+                rack = new ArrayList<BrokerInfo>();
+                brokersByRack.put(brokerInfo.getRack(), rack);
+            }
+            rack.add(brokerInfo);
+        }
+        return new ArrayList<List<BrokerInfo>>(brokersByRack.values());
+    }
+
+    /**
+     * Each broker is scored once, and only the best <code>count</code> of each rack are picked
+     * and ranked. Racks are visited in the order of their best-ranked broker, so with a client id
+     * the racks that get a second broker vary from client to client too.
+     */
+    private List<List<BrokerInfo>> racksByScore(List<BrokerInfo> brokers, long hash) {
+        Map<String, List<ScoredBroker>> brokersByRack =
+                new HashMap<String, List<ScoredBroker>>();
+        for (BrokerInfo brokerInfo : brokers) {
+            List<ScoredBroker> rack = brokersByRack.get(brokerInfo.getRack());
+            if (rack == null) {
+                rack = new ArrayList<ScoredBroker>();
+                brokersByRack.put(brokerInfo.getRack(), rack);
+            }
+            rack.add(new ScoredBroker(brokerInfo,
+                    ConsistentHashSelectionStrategy.score(hash, brokerInfo)));
+        }
+        List<List<ScoredBroker>> rankedRacks =
+                new ArrayList<List<ScoredBroker>>(brokersByRack.size());
+        for (List<ScoredBroker> rack : brokersByRack.values()) {
+            rankedRacks.add(PartialSelection.smallest(rack, count, ScoredBroker.HIGHEST_FIRST));
+        }
+        Collections.sort(rankedRacks, new Comparator<List<ScoredBroker>>() {
+
+            public int compare(List<ScoredBroker> left, List<ScoredBroker> right) {
+                return ScoredBroker.HIGHEST_FIRST.compare(left.get(0), right.get(0));
+            }
+        });
+        List<List<BrokerInfo>> racks = new ArrayList<List<BrokerInfo>>(rankedRacks.size());
+        for (List<ScoredBroker> rankedRack : rankedRacks) {
+            List<BrokerInfo> rack = new ArrayList<BrokerInfo>(rankedRack.size());
+            for (ScoredBroker scoredBroker : rankedRack) {
+                rack.add(scoredBroker.getBrokerInfo());
+            }
+            racks.add(rack);
+        }
+        return racks;
+    }
+
+}
@@ -0,0 +1,46 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Selects a uniformly random sample of brokers, so that bootstrap load from a fleet of clients
+ * is spread over the whole cluster.
+ */
+public class RandomSelectionStrategy implements BrokerSelectionStrategy {
+
+    private final int count;
+    private final Random random;
+
+    public RandomSelectionStrategy() {
+        this(LowestIdSelectionStrategy.DEFAULT_BROKER_COUNT);
+    }
+
+    public RandomSelectionStrategy(int count) {
+        this(count, new Random());
+    }
+
+    public RandomSelectionStrategy(int count, Random random) {
+        Preconditions.checkArgument(count > 0, "count must be positive");
+        Preconditions.checkNotNull(random);
+        this.count = count;
+        this.random = random;
+    }
+
+    /**
+     * Runs only the first <code>count</code> steps of a Fisher-Yates shuffle.
+     */
+    public List<BrokerInfo> select(List<BrokerInfo> brokers) {
+        List<BrokerInfo> candidates = new ArrayList<BrokerInfo>(brokers);
+        int selected = Math.min(count, candidates.size());
+        for (int i = 0; i < selected; i++) {
+            Collections.swap(candidates, i, i + random.nextInt(candidates.size() - i));
+        }
+        return candidates.subList(0, selected);
+    }
+
+}
@@ -0,0 +1,262 @@
+package com.brandwatch.kafka.discovery;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.TreeCache;
+import org.apache.curator.framework.recipes.cache.TreeCacheEvent;
+import org.apache.curator.framework.recipes.cache.TreeCacheListener;
+import org.apache.curator.utils.ZKPaths;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Keeps the leader of every partition of one topic, read from
+ * <code>/brokers/topics/&lt;topic&gt;/partitions/&lt;n&gt;/state</code> and kept up to date by
+ * watches.
+ * <p>
+ * The leaders are held in an array indexed by partition that is replaced whenever a leader
+ * changes, so {@link #leaderFor(int)} is an array read. As with the broker index in
+ * {@link BrokerInfoFetcher}, changes are ignored until the cache has loaded the whole topic,
+ * and the array is then built once from what it holds. A partition whose state can't be parsed
+ * is treated as having no leader.
+ */
+public class TopicLeaderCache implements Closeable {
+
+    public static final int NO_LEADER = ClusterStateParser.NO_BROKER;
+
+    private static final String PARTITIONS = "partitions";
+    private static final String STATE = "state";
+    /**
+     * The topic, its partitions node, each partition and each partition's state.
+     */
+    private static final int MAX_DEPTH = 3;
+
+    private final String topic;
+    private final String topicPath;
+    private final String partitionsPath;
+    private final ClusterStateParser parser = new ClusterStateParser();
+    private final TreeCache treeCache;
+    private final CompletableFuture<TopicLeaderCache> loaded =
+            new CompletableFuture<TopicLeaderCache>();
+    private volatile int[] leaders = new int[0];
+    private final List<TopicLeaderListener> listeners =
+            new CopyOnWriteArrayList<TopicLeaderListener>();
+    private boolean started = false;
+    private boolean seeded = false;
+
+    /**
+     * @param topicPath the topic's node, normally <code>/brokers/topics/&lt;topic&gt;</code>
+     *            under the cluster's chroot
+     */
+    public TopicLeaderCache(CuratorFramework curatorFramework, String topicPath) {
+        Preconditions.checkNotNull(curatorFramework);
+        Preconditions.checkNotNull(topicPath);
+        this.topic = ZKPaths.getNodeFromPath(topicPath);
+        this.topicPath = topicPath;
+        this.partitionsPath = ZKPaths.makePath(topicPath, PARTITIONS);
+        this.treeCache = TreeCache.newBuilder(curatorFramework, topicPath).setCacheData(true)
+            .setMaxDepth(MAX_DEPTH).setExecutor(new ThreadFactory() {
+
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "kafka-topic-leaders-" + topic);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }).build();
+        treeCache.getListenable().addListener(new PartitionStateListener());
+    }
+
+    /**
+     * Starts reading the topic in the background, unless it has been started already.
+     *
+     * @return completes once every partition's leader has been read. A topic that doesn't
+     *         exist loads with no partitions, and fills in if it is created later.
+     */
+    public synchronized CompletableFuture<TopicLeaderCache> start() {
+        if (!started) {
+            started = true;
+            try {
+                treeCache.start();
+            } catch (Exception e) {
+                loaded.completeExceptionally(e);
+            }
+        }
+        return loaded;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public boolean isLoaded() {
+        return loaded.isDone() && !loaded.isCompletedExceptionally();
+    }
+
+    /**
+     * @return the number of partitions seen so far, or 0 before the topic has loaded
+     */
+    public int getPartitionCount() {
+        return leaders.length;
+    }
+
+    /**
+     * @return the id of the partition's leader, or {@link #NO_LEADER} if it has none, the
+     *         partition doesn't exist or the topic hasn't loaded yet
+     */
+    public int leaderFor(int partition) {
+        int[] current = leaders;
+        return partition >= 0 && partition < current.length ? current[partition] : NO_LEADER;
+    }
+
+    /**
+     * @return the leader of each partition, indexed by partition
+     */
+    public int[] getLeaders() {
+        return leaders.clone();
+    }
+
+    public void addLeaderListener(TopicLeaderListener listener) {
+        Preconditions.checkNotNull(listener);
+        listeners.add(listener);
+    }
+
+    public void removeLeaderListener(TopicLeaderListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void notifyListeners() {
+        for (TopicLeaderListener listener : listeners) {
+            listener.leadersChanged(this);
+        }
+    }
+
+    private synchronized void loadInitialLeaders() {
+        Map<String, ChildData> partitions = treeCache.getCurrentChildren(partitionsPath);
+        int[] initial = new int[0];
+        if (partitions != null) {
+            for (String child : partitions.keySet()) {
+                int partition = parsePartition(child);
+                if (partition >= 0) {
+                    initial = withLeader(initial, partition, readLeader(treeCache.getCurrentData(
+                            ZKPaths.makePath(ZKPaths.makePath(partitionsPath, child), STATE))));
+                }
+            }
+        }
+        leaders = initial;
+        seeded = true;
+    }
+
+    /**
+     * @return whether the leaders have changed
+     */
+    private synchronized boolean partitionChanged(TreeCacheEvent event) {
+        if (!seeded || event.getData() == null) {
+            return false;
+        }
+        String path = event.getData().getPath();
+        if (path.equals(topicPath)) {
+            if (event.getType() != TreeCacheEvent.Type.NODE_REMOVED) {
+                return false;
+            }
+            // The topic has been deleted
+            leaders = new int[0];
+            return true;
+        }
+        int partition = partitionOfStatePath(path);
+        if (partition < 0) {
+            return false;
+        }
+        int leader = event.getType() == TreeCacheEvent.Type.NODE_REMOVED ? NO_LEADER
+                : readLeader(event.getData());
+        if (leader == leaderFor(partition) && partition < leaders.length) {
+            return false;
+        }
+        leaders = withLeader(leaders, partition, leader);
+        return true;
+    }
+
+    private static int[] withLeader(int[] current, int partition, int leader) {
+        int[] updated;
+        if (partition < current.length) {
+            updated = current.clone();
+        } else {
+            updated = Arrays.copyOf(current, partition + 1);
+            Arrays.fill(updated, current.length, partition, NO_LEADER);
+        }
+        updated[partition] = leader;
+        return updated;
+    }
+
+    private int readLeader(ChildData stateData) {
+        if (stateData == null || stateData.getData() == null) {
+            return NO_LEADER;
+        }
+        try {
+            return parser.parseLeader(stateData.getData());
+        } catch (BrokerParserException e) {
+            // A partition we can't read is no use for finding a leader
+            return NO_LEADER;
+        }
+    }
+
+    /**
+     * @return the partition whose state node this is, or -1 if it isn't one
+     */
+    private int partitionOfStatePath(String path) {
+        if (!path.startsWith(partitionsPath + ZKPaths.PATH_SEPARATOR)) {
+            return -1;
+        }
+        ZKPaths.PathAndNode pathAndNode = ZKPaths.getPathAndNode(path);
+        if (!pathAndNode.getNode().equals(STATE)
+                || !ZKPaths.getPathAndNode(pathAndNode.getPath()).getPath().equals(
+                        partitionsPath)) {
+            return -1;
+        }
+        return parsePartition(ZKPaths.getNodeFromPath(pathAndNode.getPath()));
+    }
+
+    private static int parsePartition(String node) {
+        try {
+            return Integer.parseInt(node);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public void close() {
+        treeCache.close();
+        loaded.cancel(false);
+    }
+
+    private class PartitionStateListener implements TreeCacheListener {
+
+        public void childEvent(CuratorFramework client, TreeCacheEvent event) {
+            switch (event.getType()) {
+            case INITIALIZED:
+                loadInitialLeaders();
+                // Listeners have caught up by the time anyone waiting on the load wakes
+                notifyListeners();
+                loaded.complete(TopicLeaderCache.this);
+                break;
+            case NODE_ADDED:
+            case NODE_UPDATED:
+            case NODE_REMOVED:
+                if (partitionChanged(event)) {
+                    notifyListeners();
+                }
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,11 @@
+package com.brandwatch.kafka.discovery;
+
+/**
+ * Notified by a {@link TopicLeaderCache} when it first loads and whenever a partition's leader
+ * changes after that. Callbacks run on the cache's event thread, so they should be quick.
+ */
+public interface TopicLeaderListener {
+
+    void leadersChanged(TopicLeaderCache topic);
+
+}
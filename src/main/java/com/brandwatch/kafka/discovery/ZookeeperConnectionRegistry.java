@@ -0,0 +1,90 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.curator.framework.CuratorFramework;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Shares one Curator client, and so one Zookeeper session, between every user of the same
+ * connect string.
+ * <p>
+ * Each {@link #acquire(String)} hands out a {@link ZookeeperConnector} and takes a reference
+ * on the underlying client; the client is closed when the last of those connectors is closed.
+ * Discoverers use the process-wide {@link #getShared() shared registry} unless given another.
+ * Every session opened by a registry uses the registry's {@link ZookeeperSettings}.
+ */
+public class ZookeeperConnectionRegistry {
+
+    private static final ZookeeperConnectionRegistry SHARED = new ZookeeperConnectionRegistry();
+
+    private final ZookeeperSettings settings;
+    private final Map<String, SharedClient> clients = new HashMap<String, SharedClient>();
+
+    public ZookeeperConnectionRegistry() {
+        this(ZookeeperSettings.getDefaults());
+    }
+
+    public ZookeeperConnectionRegistry(ZookeeperSettings settings) {
+        Preconditions.checkNotNull(settings);
+        this.settings = settings;
+    }
+
+    public static ZookeeperConnectionRegistry getShared() {
+        return SHARED;
+    }
+
+    public synchronized ZookeeperConnector acquire(String hostAndPort) {
+        Preconditions.checkNotNull(hostAndPort);
+        SharedClient client = clients.get(hostAndPort);
+        if (client == null) {
+            client = new SharedClient(makeCuratorFramework(hostAndPort));
+            clients.put(hostAndPort, client);
+        }
+        client.references++;
+        return new ZookeeperConnector(client.curatorFramework, this, hostAndPort);
+    }
+
+    synchronized void release(String hostAndPort) {
+        SharedClient client = clients.get(hostAndPort);
+        if (client != null && --client.references == 0) {
+            clients.remove(hostAndPort);
+            client.curatorFramework.close();
+        }
+    }
+
+    /**
+     * @return the number of open connectors sharing the session for this connect string
+     */
+    public synchronized int getReferenceCount(String hostAndPort) {
+        SharedClient client = clients.get(hostAndPort);
+        return client == null ? 0 : client.references;
+    }
+
+    /**
+     * @return the number of distinct Zookeeper sessions currently open through this registry
+     */
+    public synchronized int getSessionCount() {
+        return clients.size();
+    }
+
+    public ZookeeperSettings getSettings() {
+        return settings;
+    }
+
+    CuratorFramework makeCuratorFramework(String hostAndPort) {
+        return ZookeeperConnector.newCuratorFramework(hostAndPort, settings);
+    }
+
+    private static class SharedClient {
+
+        private final CuratorFramework curatorFramework;
+        private int references;
+
+        SharedClient(CuratorFramework curatorFramework) {
+            this.curatorFramework = curatorFramework;
+        }
+    }
+}
@@ -1,23 +1,69 @@
 package com.brandwatch.kafka.discovery;
 
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
-import org.apache.curator.retry.ExponentialBackoffRetry;
 
-public class ZookeeperConnector {
+/**
+ * A handle on a started Curator client.
+ * <p>
+ * A connector created with {@link #ZookeeperConnector(String)} owns its own Zookeeper session
+ * and closes it on {@link #close()}. Connectors handed out by a
+ * {@link ZookeeperConnectionRegistry} share a session with every other connector for the
+ * same connect string, and closing one only releases its reference.
+ */
+public class ZookeeperConnector implements Closeable {
 
     private CuratorFramework curatorFramework;
+    private final ZookeeperConnectionRegistry registry;
+    private final String hostAndPort;
+    private final AtomicBoolean closed = new AtomicBoolean();
 
     public ZookeeperConnector(String hostAndPort) {
-        curatorFramework = CuratorFrameworkFactory
+        this(hostAndPort, ZookeeperSettings.getDefaults());
+    }
+
+    public ZookeeperConnector(String hostAndPort, ZookeeperSettings settings) {
+        this(newCuratorFramework(hostAndPort, settings), null, hostAndPort);
+    }
+
+    ZookeeperConnector(CuratorFramework curatorFramework, ZookeeperConnectionRegistry registry,
+            String hostAndPort) {
+        this.curatorFramework = curatorFramework;
+        this.registry = registry;
+        this.hostAndPort = hostAndPort;
+    }
+
+    static CuratorFramework newCuratorFramework(String hostAndPort, ZookeeperSettings settings) {
+        CuratorFramework curatorFramework = CuratorFrameworkFactory
             .builder()
             .connectString(hostAndPort)
-            .retryPolicy(new ExponentialBackoffRetry(1000, 3))
+            .sessionTimeoutMs(settings.getSessionTimeoutMillis())
+            .connectionTimeoutMs(settings.getConnectionTimeoutMillis())
+            .retryPolicy(settings.getRetryPolicy())
             .build();
         curatorFramework.start();
+        return curatorFramework;
     }
 
     public CuratorFramework getCuratorFramework() {
         return curatorFramework;
     }
+
+    /**
+     * Closes the session, or releases this connector's reference to a shared one. Calling it
+     * more than once has no further effect.
+     */
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        if (registry == null) {
+            curatorFramework.close();
+        } else {
+            registry.release(hostAndPort);
+        }
+    }
 }
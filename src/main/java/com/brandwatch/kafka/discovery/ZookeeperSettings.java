@@ -0,0 +1,66 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.RetryPolicy;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+
+import com.google.common.base.Preconditions;
+import com.google.common.primitives.Ints;
+
+/**
+ * How Curator clients talk to Zookeeper: how long a session survives without contact, how
+ * long to wait for a connection, and how to retry an operation that failed because the
+ * connection was lost.
+ * <p>
+ * Short timeouts and few retries make a fetcher that can't reach Zookeeper fail fast, so that
+ * a caller with a {@link BrokerSnapshotStore} falls back to its stored brokers quickly.
+ */
+public class ZookeeperSettings {
+
+    public static final int DEFAULT_SESSION_TIMEOUT_MILLIS = 60000;
+    public static final int DEFAULT_CONNECTION_TIMEOUT_MILLIS = 15000;
+    public static final int DEFAULT_RETRY_BASE_SLEEP_MILLIS = 1000;
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
+    private static final ZookeeperSettings DEFAULTS = new ZookeeperSettings(
+            DEFAULT_SESSION_TIMEOUT_MILLIS, DEFAULT_CONNECTION_TIMEOUT_MILLIS,
+            TimeUnit.MILLISECONDS, new ExponentialBackoffRetry(DEFAULT_RETRY_BASE_SLEEP_MILLIS,
+                    DEFAULT_MAX_RETRIES));
+
+    private final int sessionTimeoutMillis;
+    private final int connectionTimeoutMillis;
+    private final RetryPolicy retryPolicy;
+
+    public ZookeeperSettings(long sessionTimeout, long connectionTimeout, TimeUnit unit,
+            RetryPolicy retryPolicy) {
+        Preconditions.checkArgument(sessionTimeout > 0, "sessionTimeout must be positive");
+        Preconditions.checkArgument(connectionTimeout > 0, "connectionTimeout must be positive");
+        Preconditions.checkNotNull(unit);
+        Preconditions.checkNotNull(retryPolicy);
+        this.sessionTimeoutMillis = Ints.checkedCast(unit.toMillis(sessionTimeout));
+        this.connectionTimeoutMillis = Ints.checkedCast(unit.toMillis(connectionTimeout));
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * @return a 60 second session timeout, a 15 second connection timeout and up to three
+     *         retries with exponential backoff from one second
+     */
+    public static ZookeeperSettings getDefaults() {
+        return DEFAULTS;
+    }
+
+    public int getSessionTimeoutMillis() {
+        return sessionTimeoutMillis;
+    }
+
+    public int getConnectionTimeoutMillis() {
+        return connectionTimeoutMillis;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+}
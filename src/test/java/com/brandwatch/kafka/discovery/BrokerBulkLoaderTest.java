@@ -0,0 +1,99 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.KeeperException.NoNodeException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+public class BrokerBulkLoaderTest {
+
+    private static final String BROKER_IDS_PATH = "/brokers/ids";
+
+    private TestingServer testingServer;
+    private CuratorFramework curatorFramework;
+    private BrokerBulkLoader bulkLoader;
+
+    @Before
+    public void setup() throws Exception {
+        testingServer = new TestingServer();
+        curatorFramework = ZookeeperConnector.newCuratorFramework(testingServer
+            .getConnectString(), ZookeeperSettings.getDefaults());
+        bulkLoader = new BrokerBulkLoader(curatorFramework, new DataParser());
+    }
+
+    @After
+    public void teardown() throws Exception {
+        curatorFramework.close();
+        testingServer.close();
+    }
+
+    @Test
+    public void givenRegisteredBrokers_loadAll_returnsThemOrderedById() throws Exception {
+        for (int id = 12; id >= 1; id--) {
+            register(id);
+        }
+
+        Map<Integer, BrokerInfo> brokers = bulkLoader.loadAll(BROKER_IDS_PATH).get();
+
+        Assert.assertEquals(12, brokers.size());
+        int expectedId = 1;
+        for (Map.Entry<Integer, BrokerInfo> broker : brokers.entrySet()) {
+            Assert.assertEquals(expectedId, broker.getKey().intValue());
+            Assert.assertEquals("kafka" + expectedId, broker.getValue().getHost());
+            Assert.assertEquals(expectedId, broker.getValue().getId());
+            expectedId++;
+        }
+    }
+
+    @Test
+    public void givenABrokerThatHasGone_load_leavesItOut() throws Exception {
+        register(1);
+        register(3);
+
+        Map<Integer, BrokerInfo> brokers = bulkLoader.load(BROKER_IDS_PATH, Arrays.asList(1, 2, 3))
+            .get();
+
+        Assert.assertEquals(Arrays.asList(1, 3), Arrays.asList(brokers.keySet().toArray()));
+    }
+
+    @Test
+    public void givenNoBrokerIdsNode_loadAll_failsWithANoNodeException() throws Exception {
+        try {
+            bulkLoader.loadAll(BROKER_IDS_PATH).get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof NoNodeException);
+        }
+    }
+
+    @Test
+    public void givenAnUnparseableRegistration_loadAll_failsWithABrokerParserException()
+            throws Exception {
+        register(1);
+        curatorFramework.create().forPath(BROKER_IDS_PATH + "/2", "garbage".getBytes(
+                Charsets.UTF_8));
+
+        try {
+            bulkLoader.loadAll(BROKER_IDS_PATH).get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof BrokerParserException);
+        }
+    }
+
+    private void register(int id) throws Exception {
+        String registration = "{\"jmx_port\":-1,\"timestamp\":\"1428512949385\",\"host\":\"kafka"
+                + id + "\",\"version\":1,\"port\":9092}";
+        curatorFramework.create().creatingParentsIfNeeded().forPath(BROKER_IDS_PATH + "/" + id,
+                registration.getBytes(Charsets.UTF_8));
+    }
+}
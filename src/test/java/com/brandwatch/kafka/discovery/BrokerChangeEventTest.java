@@ -0,0 +1,52 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BrokerChangeEventTest {
+
+    @Test
+    public void givenIdenticalBrokers_between_returnsAnEmptyEvent() {
+        BrokerChangeEvent event = BrokerChangeEvent.between(Arrays.asList(makeBroker(1, 1L)),
+                Arrays.asList(makeBroker(1, 1L)));
+        Assert.assertTrue(event.isEmpty());
+    }
+
+    @Test
+    public void givenChangedMembership_between_reportsAddedRemovedAndUpdatedBrokers() {
+        List<BrokerInfo> previous = Arrays.asList(makeBroker(1, 1L), makeBroker(2, 1L),
+                makeBroker(4, 1L));
+        List<BrokerInfo> current = Arrays.asList(makeBroker(2, 2L), makeBroker(3, 1L),
+                makeBroker(4, 1L), makeBroker(5, 1L));
+
+        BrokerChangeEvent event = BrokerChangeEvent.between(previous, current);
+
+        Assert.assertEquals(Arrays.asList(makeBroker(3, 1L), makeBroker(5, 1L)), event.getAdded());
+        Assert.assertEquals(Arrays.asList(makeBroker(1, 1L)), event.getRemoved());
+        Assert.assertEquals(Arrays.asList(makeBroker(2, 2L)), event.getUpdated());
+        Assert.assertSame(current, event.getBrokers());
+    }
+
+    @Test
+    public void givenNoPreviousBrokers_between_reportsEveryBrokerAsAdded() {
+        List<BrokerInfo> current = Arrays.asList(makeBroker(1, 1L), makeBroker(2, 1L));
+        BrokerChangeEvent event = BrokerChangeEvent.between(
+                Collections.<BrokerInfo> emptyList(), current);
+        Assert.assertEquals(current, event.getAdded());
+        Assert.assertTrue(event.getRemoved().isEmpty());
+    }
+
+    private BrokerInfo makeBroker(int id, long timestamp) {
+        BrokerInfo brokerInfo = new BrokerInfo();
+        brokerInfo.setId(id);
+        brokerInfo.setHost("kafka" + id);
+        brokerInfo.setPort(9092);
+        brokerInfo.setTimestamp(new Date(timestamp));
+        return brokerInfo;
+    }
+}
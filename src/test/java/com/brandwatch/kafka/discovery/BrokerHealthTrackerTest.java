@@ -0,0 +1,100 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Ticker;
+
+public class BrokerHealthTrackerTest {
+
+    private long now;
+    private BrokerHealthTracker tracker;
+
+    @Before
+    public void setup() {
+        tracker = new BrokerHealthTracker(1, TimeUnit.MINUTES, 3, 1, new Ticker() {
+
+            @Override
+            public long read() {
+                return now;
+            }
+        });
+        tracker.brokersChanged(Arrays.asList(makeBroker(1, 0), makeBroker(2, 0)));
+    }
+
+    @Test
+    public void givenASingleRestart_isSuppressed_returnsFalse() {
+        restart(1, 1);
+        Assert.assertEquals(1, tracker.getFlapScore(1), 0.001);
+        Assert.assertFalse(tracker.isSuppressed(1));
+    }
+
+    @Test
+    public void givenARestartLoop_isSuppressed_returnsTrueUntilTheScoreDecays() {
+        restart(1, 1);
+        restart(1, 2);
+        restart(1, 3);
+        Assert.assertTrue(tracker.isSuppressed(1));
+        Assert.assertFalse(tracker.isSuppressed(2));
+
+        now += TimeUnit.MINUTES.toNanos(1);
+        Assert.assertTrue(tracker.isSuppressed(1));
+        now += TimeUnit.MINUTES.toNanos(1);
+        Assert.assertFalse(tracker.isSuppressed(1));
+    }
+
+    @Test
+    public void givenReRegistrationsWithoutRemovals_isSuppressed_countsThemAsFlaps() {
+        for (int timestamp = 1; timestamp <= 3; timestamp++) {
+            tracker.brokersChanged(Arrays.asList(makeBroker(1, timestamp), makeBroker(2, 0)));
+        }
+        Assert.assertTrue(tracker.isSuppressed(1));
+    }
+
+    @Test
+    public void givenASuppressedBroker_healthAwareSelect_leavesItOut() {
+        restart(1, 1);
+        restart(1, 2);
+        restart(1, 3);
+        HealthAwareSelectionStrategy strategy = new HealthAwareSelectionStrategy(
+                new LowestIdSelectionStrategy(1), tracker);
+
+        List<BrokerInfo> selected = strategy.select(Arrays.asList(makeBroker(1, 3),
+                makeBroker(2, 0)));
+
+        Assert.assertEquals(2, selected.get(0).getId());
+    }
+
+    @Test
+    public void givenEveryBrokerSuppressed_healthAwareSelect_fallsBackToAllOfThem() {
+        restart(1, 1);
+        restart(1, 2);
+        restart(1, 3);
+        HealthAwareSelectionStrategy strategy = new HealthAwareSelectionStrategy(
+                new LowestIdSelectionStrategy(1), tracker);
+
+        List<BrokerInfo> selected = strategy.select(Arrays.asList(makeBroker(1, 3)));
+
+        Assert.assertEquals(1, selected.get(0).getId());
+    }
+
+    private void restart(int id, long timestamp) {
+        tracker.brokersChanged(Arrays.asList(makeBroker(2, 0)));
+        tracker.brokersChanged(Arrays.asList(makeBroker(id, timestamp), makeBroker(2, 0)));
+    }
+
+    private BrokerInfo makeBroker(int id, long timestamp) {
+        BrokerInfo brokerInfo = new BrokerInfo();
+        brokerInfo.setId(id);
+        brokerInfo.setHost("kafka" + id);
+        brokerInfo.setPort(9092);
+        brokerInfo.setTimestamp(new Date(timestamp));
+        return brokerInfo;
+    }
+}
@@ -1,19 +1,44 @@
 package com.brandwatch.kafka.discovery;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.CuratorZookeeperClient;
 import org.apache.curator.framework.CuratorFramework;
-import org.apache.curator.framework.api.ExistsBuilder;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.framework.api.GetChildrenBuilder;
+import org.apache.curator.framework.api.GetDataBuilder;
+import org.apache.curator.framework.api.Pathable;
+import org.apache.curator.framework.listen.ListenerContainer;
 import org.apache.curator.framework.recipes.cache.ChildData;
 import org.apache.curator.framework.recipes.cache.PathChildrenCache;
 import org.apache.curator.framework.recipes.cache.PathChildrenCache.StartMode;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent.Type;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.KeeperException.Code;
 import org.apache.zookeeper.KeeperException.NoNodeException;
 import org.apache.zookeeper.data.Stat;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.internal.util.reflection.Whitebox;
@@ -37,7 +62,28 @@ public class BrokerInfoFetcherTest {
     private PathChildrenCache pathChildrenCache;
 
     @Mock
-    private ExistsBuilder existsBuilder;
+    private ListenerContainer<PathChildrenCacheListener> listenerContainer;
+
+    @Mock
+    private ListenerContainer<ConnectionStateListener> connectionStateListenable;
+
+    @Mock
+    private CuratorZookeeperClient zookeeperClient;
+
+    @Mock
+    private ScheduledExecutorService reconcileExecutor;
+
+    @Mock
+    private GetChildrenBuilder getChildrenBuilder;
+
+    @Mock
+    private GetDataBuilder getDataBuilder;
+
+    private final Map<String, ChildData> registrations = new HashMap<String, ChildData>();
+    private final List<String> readPaths = new ArrayList<String>();
+    private boolean brokerIdsExist = true;
+    private long lastZxid = 0;
+    private List<Runnable> heldListings;
 
     private BrokerInfoFetcher brokerInfoFetcher;
 
@@ -47,13 +93,19 @@ public class BrokerInfoFetcherTest {
 
         Whitebox.setInternalState(brokerInfoFetcher, "zookeeperConnector", zookeeperConnector);
         Mockito.when(zookeeperConnector.getCuratorFramework()).thenReturn(curatorFramework);
+        Mockito.when(curatorFramework.getConnectionStateListenable()).thenReturn(
+                connectionStateListenable);
+        Mockito.when(curatorFramework.getZookeeperClient()).thenReturn(zookeeperClient);
+        Mockito.when(zookeeperClient.isConnected()).thenReturn(true);
         Mockito.doReturn(pathChildrenCache).when(brokerInfoFetcher).makePathChildrenCache();
         Mockito
             .doReturn(zookeeperConnector)
             .when(brokerInfoFetcher)
             .makeZookeeperConnector(Mockito.anyString());
         Mockito.doReturn(dataParser).when(brokerInfoFetcher).makeDataParser();
-        Mockito.when(curatorFramework.checkExists()).thenReturn(existsBuilder);
+        Mockito.doReturn(reconcileExecutor).when(brokerInfoFetcher).makeReconcileExecutor();
+        answerReadsImmediately();
+        Mockito.when(pathChildrenCache.getListenable()).thenReturn(listenerContainer);
     }
 
     @SuppressWarnings("resource")
@@ -71,21 +123,17 @@ public class BrokerInfoFetcherTest {
     @Test
     public void whenItIsNotInitialised_fetchBrokerInfo_initialisesZookeeperConnection()
             throws Exception {
-        Mockito.when(existsBuilder.forPath(Mockito.anyString())).thenReturn(new Stat());
-        Mockito.when(pathChildrenCache.getCurrentData()).thenReturn(new ArrayList<ChildData>());
 
         brokerInfoFetcher.fetchBrokerInfo();
 
         Mockito.verify(zookeeperConnector).getCuratorFramework();
-        Mockito.verify(pathChildrenCache).start(StartMode.BUILD_INITIAL_CACHE);
+        Mockito.verify(pathChildrenCache).start(StartMode.POST_INITIALIZED_EVENT);
 
         brokerInfoFetcher.close();
     }
 
     @Test
     public void whenItIsInitialised_fetchBrokerInfo_reusesZookeeperConnection() throws Exception {
-        Mockito.when(existsBuilder.forPath(Mockito.anyString())).thenReturn(new Stat());
-        Mockito.when(pathChildrenCache.getCurrentData()).thenReturn(new ArrayList<ChildData>());
 
         brokerInfoFetcher.fetchBrokerInfo();
         brokerInfoFetcher.fetchBrokerInfo();
@@ -99,14 +147,29 @@ public class BrokerInfoFetcherTest {
 
     @Test(expected = NoNodeException.class)
     public void whenPathDoesNotExist_fetchBrokerInfo_throwsAnException() throws Exception {
-        Mockito.when(existsBuilder.forPath(Mockito.anyString())).thenReturn(null);
+        brokerIdsExist = false;
         brokerInfoFetcher.fetchBrokerInfo();
     }
 
+    @Test
+    public void whenPathAppearsAfterAFailedFetch_fetchBrokerInfo_triesAgain() throws Exception {
+        brokerIdsExist = false;
+        try {
+            brokerInfoFetcher.fetchBrokerInfo();
+            Assert.fail();
+        } catch (NoNodeException e) {
+            Mockito.verify(zookeeperConnector).close();
+        }
+
+        brokerIdsExist = true;
+        givenBrokers(Arrays.asList(makeChildData("/brokers/ids/1")));
+        Mockito.when(dataParser.parseData(Mockito.any(byte[].class))).thenReturn(new BrokerInfo());
+
+        Assert.assertEquals(1, brokerInfoFetcher.fetchBrokerInfo().size());
+    }
+
     @Test
     public void whenNoBrokersAtPath_fetchBrokerInfo_returnsAnEmptyList() throws Exception {
-        Mockito.when(existsBuilder.forPath(Mockito.anyString())).thenReturn(new Stat());
-        Mockito.when(pathChildrenCache.getCurrentData()).thenReturn(new ArrayList<ChildData>());
 
         List<BrokerInfo> brokerInfo = brokerInfoFetcher.fetchBrokerInfo();
         Assert.assertTrue(brokerInfo.isEmpty());
@@ -114,7 +177,6 @@ public class BrokerInfoFetcherTest {
 
     @Test
     public void whenOneBrokerAtPath_fetchBrokerInfo_returnsThatBroker() throws Exception {
-        Mockito.when(existsBuilder.forPath(Mockito.anyString())).thenReturn(new Stat());
 
         ArrayList<ChildData> brokers = new ArrayList<ChildData>();
         ChildData childData = Mockito.mock(ChildData.class);
@@ -122,10 +184,10 @@ public class BrokerInfoFetcherTest {
         Mockito.when(childData.getPath()).thenReturn("/brokers/ids/1");
 
         brokers.add(childData);
-        Mockito.when(pathChildrenCache.getCurrentData()).thenReturn(brokers);
+        givenBrokers(brokers);
 
         BrokerInfo dummyBroker = new BrokerInfo();
-        Mockito.when(dataParser.parseData(Mockito.anyString())).thenReturn(dummyBroker);
+        Mockito.when(dataParser.parseData(Mockito.any(byte[].class))).thenReturn(dummyBroker);
 
         List<BrokerInfo> brokerInfo = brokerInfoFetcher.fetchBrokerInfo();
         Assert.assertEquals(1, brokerInfo.size());
@@ -135,7 +197,6 @@ public class BrokerInfoFetcherTest {
     @Test
     public void whenThreeBrokersAtPath_fetchBrokerInfo_returnsThoseBrokersInLexicographicOrderByBrokerId()
             throws Exception {
-        Mockito.when(existsBuilder.forPath(Mockito.anyString())).thenReturn(new Stat());
 
         ArrayList<ChildData> brokers = new ArrayList<ChildData>();
 
@@ -154,13 +215,13 @@ public class BrokerInfoFetcherTest {
         Mockito.when(childData3.getPath()).thenReturn("/brokers/ids/3");
         brokers.add(childData3);
 
-        Mockito.when(pathChildrenCache.getCurrentData()).thenReturn(brokers);
+        givenBrokers(brokers);
 
         final BrokerInfo dummyBroker1 = new BrokerInfo();
         final BrokerInfo dummyBroker2 = new BrokerInfo();
         final BrokerInfo dummyBroker3 = new BrokerInfo();
 
-        Mockito.when(dataParser.parseData(Mockito.anyString())).then(new Answer<BrokerInfo>() {
+        Mockito.when(dataParser.parseData(Mockito.any(byte[].class))).then(new Answer<BrokerInfo>() {
 
             private int counter = 0;
 
@@ -193,7 +254,6 @@ public class BrokerInfoFetcherTest {
     @Test
     public void whenFiveBrokersAtPath_fetchBrokerInfo_returnsTopThreeBrokersInLexicographicOrderByBrokerId()
             throws Exception {
-        Mockito.when(existsBuilder.forPath(Mockito.anyString())).thenReturn(new Stat());
 
         ArrayList<ChildData> brokers = new ArrayList<ChildData>();
 
@@ -222,7 +282,7 @@ public class BrokerInfoFetcherTest {
         Mockito.when(childData5.getPath()).thenReturn("/brokers/ids/5");
         brokers.add(childData5);
 
-        Mockito.when(pathChildrenCache.getCurrentData()).thenReturn(brokers);
+        givenBrokers(brokers);
 
         final BrokerInfo dummyBroker1 = new BrokerInfo();
         final BrokerInfo dummyBroker2 = new BrokerInfo();
@@ -230,7 +290,7 @@ public class BrokerInfoFetcherTest {
         final BrokerInfo dummyBroker4 = new BrokerInfo();
         final BrokerInfo dummyBroker5 = new BrokerInfo();
 
-        Mockito.when(dataParser.parseData(Mockito.anyString())).then(new Answer<BrokerInfo>() {
+        Mockito.when(dataParser.parseData(Mockito.any(byte[].class))).then(new Answer<BrokerInfo>() {
 
             private int counter = 0;
 
@@ -265,4 +325,563 @@ public class BrokerInfoFetcherTest {
         Assert.assertEquals(2, brokerInfo.get(1).getId());
         Assert.assertEquals(3, brokerInfo.get(2).getId());
     }
+
+    @Test
+    public void whenNothingHasChanged_fetchBrokerInfo_returnsTheSameSnapshotWithoutReparsing()
+            throws Exception {
+        ArrayList<ChildData> brokers = new ArrayList<ChildData>();
+        brokers.add(makeChildData("/brokers/ids/1"));
+        givenBrokers(brokers);
+        Mockito.when(dataParser.parseData(Mockito.any(byte[].class))).thenReturn(new BrokerInfo());
+
+        List<BrokerInfo> first = brokerInfoFetcher.fetchBrokerInfo();
+        List<BrokerInfo> second = brokerInfoFetcher.fetchBrokerInfo();
+
+        Assert.assertSame(first, second);
+        Mockito.verify(dataParser, Mockito.times(1)).parseData(Mockito.any(byte[].class));
+    }
+
+    @Test
+    public void whenBrokersAreAddedAndRemoved_fetchBrokerInfo_reflectsTheChanges()
+            throws Exception {
+        ArrayList<ChildData> brokers = new ArrayList<ChildData>();
+        brokers.add(makeChildData("/brokers/ids/2"));
+        givenBrokers(brokers);
+        Mockito.when(dataParser.parseData(Mockito.any(byte[].class))).then(new Answer<BrokerInfo>() {
+
+            public BrokerInfo answer(InvocationOnMock invocation) throws Throwable {
+                return new BrokerInfo();
+            }
+        });
+
+        Assert.assertEquals(1, brokerInfoFetcher.fetchBrokerInfo().size());
+        PathChildrenCacheListener listener = captureListener();
+        listener.childEvent(curatorFramework, new PathChildrenCacheEvent(Type.INITIALIZED, null));
+
+        listener.childEvent(curatorFramework, new PathChildrenCacheEvent(Type.CHILD_ADDED,
+                register("/brokers/ids/1")));
+        List<BrokerInfo> brokerInfo = brokerInfoFetcher.fetchBrokerInfo();
+        Assert.assertEquals(2, brokerInfo.size());
+        Assert.assertEquals(1, brokerInfo.get(0).getId());
+        Assert.assertEquals(2, brokerInfo.get(1).getId());
+
+        listener.childEvent(curatorFramework, new PathChildrenCacheEvent(Type.CHILD_REMOVED,
+                makeChildData("/brokers/ids/2")));
+        brokerInfo = brokerInfoFetcher.fetchBrokerInfo();
+        Assert.assertEquals(1, brokerInfo.size());
+        Assert.assertEquals(1, brokerInfo.get(0).getId());
+    }
+
+    @Test
+    public void whenBrokersChange_getMetrics_countsTheEventsAndTheBrokers() throws Exception {
+        givenBrokers(Arrays.asList(makeChildData("/brokers/ids/1")));
+        Mockito.when(dataParser.parseData(Mockito.any(byte[].class))).then(new Answer<BrokerInfo>() {
+
+            public BrokerInfo answer(InvocationOnMock invocation) throws Throwable {
+                return new BrokerInfo();
+            }
+        });
+
+        brokerInfoFetcher.fetchBrokerInfo();
+        PathChildrenCacheListener listener = captureListener();
+        listener.childEvent(curatorFramework, new PathChildrenCacheEvent(Type.INITIALIZED, null));
+        listener.childEvent(curatorFramework, new PathChildrenCacheEvent(Type.CHILD_ADDED,
+                register("/brokers/ids/2")));
+
+        DiscoveryMetrics metrics = brokerInfoFetcher.getMetrics();
+        Assert.assertEquals(2, metrics.getBrokerCount());
+        Assert.assertEquals(1, metrics.getCacheEventCount(Type.INITIALIZED));
+        Assert.assertEquals(1, metrics.getCacheEventCount(Type.CHILD_ADDED));
+        Assert.assertEquals(1, metrics.getFetchCount());
+        Assert.assertEquals(2, metrics.getParseCount());
+        Assert.assertTrue(metrics.getConnectTimeNanos() >= 0);
+        Assert.assertTrue(metrics.getInitialLoadTimeNanos() >= 0);
+        Assert.assertTrue(metrics.getCacheBuildTimeNanos() >= 0);
+    }
+
+    @Test
+    public void whenTheConnectionIsInterrupted_fetchBrokerInfo_keepsServingTheLastBrokers()
+            throws Exception {
+        PathChildrenCacheListener listener = givenAnInitialisedFetcher("/brokers/ids/1",
+                "/brokers/ids/2");
+        ConnectionStateListener stateListener = captureConnectionStateListener();
+
+        stateListener.stateChanged(curatorFramework, ConnectionState.SUSPENDED);
+        stateListener.stateChanged(curatorFramework, ConnectionState.LOST);
+        Assert.assertTrue(brokerInfoFetcher.isStale());
+
+        stateListener.stateChanged(curatorFramework, ConnectionState.RECONNECTED);
+        listener.childEvent(curatorFramework, new PathChildrenCacheEvent(Type.CHILD_REMOVED,
+                makeChildData("/brokers/ids/1")));
+        listener.childEvent(curatorFramework, new PathChildrenCacheEvent(Type.CHILD_REMOVED,
+                makeChildData("/brokers/ids/2")));
+        Assert.assertEquals(2, brokerInfoFetcher.fetchBrokerInfo().size());
+        Assert.assertTrue(brokerInfoFetcher.isStale());
+
+        captureReconciliation().run();
+        Assert.assertTrue(brokerInfoFetcher.fetchBrokerInfo().isEmpty());
+        Assert.assertFalse(brokerInfoFetcher.isStale());
+    }
+
+    @Test
+    public void whenABrokerReregistersAfterReconnecting_fetchBrokerInfo_neverDropsIt()
+            throws Exception {
+        PathChildrenCacheListener listener = givenAnInitialisedFetcher("/brokers/ids/1",
+                "/brokers/ids/2");
+        ConnectionStateListener stateListener = captureConnectionStateListener();
+
+        stateListener.stateChanged(curatorFramework, ConnectionState.LOST);
+        stateListener.stateChanged(curatorFramework, ConnectionState.RECONNECTED);
+        listener.childEvent(curatorFramework, new PathChildrenCacheEvent(Type.CHILD_REMOVED,
+                makeChildData("/brokers/ids/1")));
+        listener.childEvent(curatorFramework, new PathChildrenCacheEvent(Type.CHILD_REMOVED,
+                makeChildData("/brokers/ids/2")));
+        listener.childEvent(curatorFramework, new PathChildrenCacheEvent(Type.CHILD_ADDED,
+                makeChildData("/brokers/ids/2")));
+        captureReconciliation().run();
+
+        List<BrokerInfo> brokers = brokerInfoFetcher.fetchBrokerInfo();
+        Assert.assertEquals(1, brokers.size());
+        Assert.assertEquals(2, brokers.get(0).getId());
+    }
+
+    @Test
+    public void whenTheCacheInitialises_fetchBrokerInfo_reflectsChangesSinceTheFirstLoad()
+            throws Exception {
+        ChildData broker1 = makeChildData("/brokers/ids/1");
+        givenBrokers(Arrays.asList(broker1));
+        Mockito.when(dataParser.parseData(Mockito.any(byte[].class))).then(new Answer<BrokerInfo>() {
+
+            public BrokerInfo answer(InvocationOnMock invocation) throws Throwable {
+                return new BrokerInfo();
+            }
+        });
+        Assert.assertEquals(1, brokerInfoFetcher.fetchBrokerInfo().size());
+        PathChildrenCacheListener listener = captureListener();
+
+        // Replayed by the cache as it builds; already covered by reseeding below
+        listener.childEvent(curatorFramework, new PathChildrenCacheEvent(Type.CHILD_ADDED,
+                broker1));
+        Assert.assertEquals(1, brokerInfoFetcher.fetchBrokerInfo().size());
+
+        givenBrokers(Arrays.asList(broker1, makeChildData("/brokers/ids/2")));
+        listener.childEvent(curatorFramework, new PathChildrenCacheEvent(Type.INITIALIZED, null));
+        Assert.assertEquals(2, brokerInfoFetcher.fetchBrokerInfo().size());
+    }
+
+    @Test
+    public void whenTheCacheNeverInitialises_fetchBrokerInfo_stillReflectsChanges()
+            throws Exception {
+        givenBrokers(Arrays.asList(makeChildData("/brokers/ids/1")));
+        Mockito.when(dataParser.parseData(Mockito.any(byte[].class))).then(new Answer<BrokerInfo>() {
+
+            public BrokerInfo answer(InvocationOnMock invocation) throws Throwable {
+                return new BrokerInfo();
+            }
+        });
+        Assert.assertEquals(1, brokerInfoFetcher.fetchBrokerInfo().size());
+        PathChildrenCacheListener listener = captureListener();
+
+        listener.childEvent(curatorFramework, new PathChildrenCacheEvent(Type.CHILD_ADDED,
+                register("/brokers/ids/2")));
+        listener.childEvent(curatorFramework, new PathChildrenCacheEvent(Type.CHILD_REMOVED,
+                makeChildData("/brokers/ids/1")));
+
+        List<BrokerInfo> brokers = brokerInfoFetcher.fetchBrokerInfo();
+        Assert.assertEquals(1, brokers.size());
+        Assert.assertEquals(2, brokers.get(0).getId());
+    }
+
+    @Test
+    public void whenTheCacheReplaysTheFirstAnswer_fetchBrokerInfo_doesNotReadItAgain()
+            throws Exception {
+        givenAnInitialisedFetcher("/brokers/ids/1", "/brokers/ids/2");
+        PathChildrenCacheListener listener = captureListener();
+
+        for (ChildData childData : new ArrayList<ChildData>(registrations.values())) {
+            listener.childEvent(curatorFramework, new PathChildrenCacheEvent(Type.CHILD_ADDED,
+                    childData));
+        }
+
+        Assert.assertEquals(Arrays.asList("/brokers/ids/1", "/brokers/ids/2"), readPaths);
+    }
+
+    @Test
+    public void whenARegistrationIsRewritten_fetchBrokerInfo_readsAndPublishesIt()
+            throws Exception {
+        PathChildrenCacheListener listener = givenAnInitialisedFetcher("/brokers/ids/1");
+        BrokerInfo moved = new BrokerInfo();
+        moved.setHost("kafka1.example.com");
+        Mockito.when(dataParser.parseData(Mockito.any(byte[].class))).thenReturn(moved);
+
+        ChildData rewritten = makeChildData("/brokers/ids/1");
+        givenBrokers(Arrays.asList(rewritten));
+        listener.childEvent(curatorFramework, new PathChildrenCacheEvent(Type.CHILD_UPDATED,
+                rewritten));
+
+        List<BrokerInfo> brokers = brokerInfoFetcher.fetchBrokerInfo();
+        Assert.assertEquals(1, brokers.size());
+        Assert.assertEquals("kafka1.example.com", brokers.get(0).getHost());
+        Assert.assertEquals(Arrays.asList("/brokers/ids/1", "/brokers/ids/1"), readPaths);
+    }
+
+    @Test
+    public void whenItIsNotInitialised_fetchBrokerInfoAsync_loadsTheBrokersThenStartsTheCache()
+            throws Exception {
+        ArrayList<ChildData> brokers = new ArrayList<ChildData>();
+        brokers.add(makeChildData("/brokers/ids/1"));
+        givenBrokers(brokers);
+        Mockito.when(dataParser.parseData(Mockito.any(byte[].class))).thenReturn(new BrokerInfo());
+
+        CompletableFuture<List<BrokerInfo>> future = brokerInfoFetcher.fetchBrokerInfoAsync();
+
+        Assert.assertEquals(1, future.get().size());
+        Assert.assertEquals(1, future.get().get(0).getId());
+        Mockito.verify(pathChildrenCache).start(StartMode.POST_INITIALIZED_EVENT);
+        Assert.assertSame(future.get(), brokerInfoFetcher.fetchBrokerInfo());
+    }
+
+    @Test
+    public void whenPathDoesNotExist_fetchBrokerInfoAsync_completesExceptionally()
+            throws Exception {
+        brokerIdsExist = false;
+
+        CompletableFuture<List<BrokerInfo>> future = brokerInfoFetcher.fetchBrokerInfoAsync();
+
+        try {
+            future.get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof NoNodeException);
+        }
+    }
+
+    @Test
+    public void whenPathAppearsAfterAFailedAsyncFetch_fetchBrokerInfoAsync_triesAgain()
+            throws Exception {
+        brokerIdsExist = false;
+        try {
+            brokerInfoFetcher.fetchBrokerInfoAsync().get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Mockito.verify(zookeeperConnector).close();
+        }
+
+        brokerIdsExist = true;
+        givenBrokers(Arrays.asList(makeChildData("/brokers/ids/1")));
+        Mockito.when(dataParser.parseData(Mockito.any(byte[].class))).thenReturn(new BrokerInfo());
+
+        Assert.assertEquals(1, brokerInfoFetcher.fetchBrokerInfoAsync().get().size());
+        Mockito.verify(brokerInfoFetcher, Mockito.times(2)).makeZookeeperConnector(
+                Mockito.anyString());
+    }
+
+    @Test
+    public void givenAChroot_fetchBrokerInfo_readsTheBrokersUnderIt() throws Exception {
+        brokerInfoFetcher = makeFetcher("/kafka/logs", new LowestIdSelectionStrategy(),
+                BrokerInfoFetcher.LoadMode.FULL);
+        ArrayList<ChildData> brokers = new ArrayList<ChildData>();
+        brokers.add(makeChildData("/kafka/logs/brokers/ids/7"));
+        givenBrokers(brokers);
+        Mockito.when(dataParser.parseData(Mockito.any(byte[].class))).thenReturn(new BrokerInfo());
+
+        List<BrokerInfo> brokerInfo = brokerInfoFetcher.fetchBrokerInfo();
+
+        Assert.assertEquals(1, brokerInfo.size());
+        Assert.assertEquals(7, brokerInfo.get(0).getId());
+    }
+
+    @SuppressWarnings("resource")
+    @Test(expected = IllegalArgumentException.class)
+    public void givenARelativeChroot_constructor_throwsAnIllegalArgumentException()
+            throws Exception {
+        new BrokerInfoFetcher("localhost:2181", "kafka", new LowestIdSelectionStrategy(),
+                new ZookeeperConnectionRegistry());
+    }
+
+    @Test
+    public void givenLazyLoading_fetchBrokerInfoAsync_readsOnlyTheSelectedBrokersFirst()
+            throws Exception {
+        brokerInfoFetcher = makeFetcher(BrokerInfoFetcher.ROOT, new LowestIdSelectionStrategy(1),
+                BrokerInfoFetcher.LoadMode.LAZY);
+        givenBrokers(Arrays.asList(makeChildData("/brokers/ids/3"),
+                makeChildData("/brokers/ids/1"), makeChildData("/brokers/ids/2")));
+        Mockito.when(dataParser.parseData(Mockito.any(byte[].class))).then(new Answer<BrokerInfo>() {
+
+            public BrokerInfo answer(InvocationOnMock invocation) throws Throwable {
+                return new BrokerInfo();
+            }
+        });
+
+        final List<Integer> publishedSizes = new ArrayList<Integer>();
+        brokerInfoFetcher.addBrokerChangeListener(new BrokerChangeListener() {
+
+            public void brokersChanged(List<BrokerInfo> brokers) {
+                publishedSizes.add(brokers.size());
+            }
+        });
+
+        CompletableFuture<List<BrokerInfo>> future = brokerInfoFetcher.fetchBrokerInfoAsync();
+
+        Assert.assertEquals("/brokers/ids/1", readPaths.get(0));
+        Assert.assertEquals(1, future.get().size());
+        Assert.assertEquals(1, future.get().get(0).getId());
+        Mockito.verify(pathChildrenCache).start(StartMode.POST_INITIALIZED_EVENT);
+        Assert.assertEquals(Arrays.asList(1, 3), publishedSizes);
+    }
+
+    @Test
+    public void givenLazyLoading_fetchBrokerInfoAsync_readsTheRestOnceEach() throws Exception {
+        brokerInfoFetcher = makeFetcher(BrokerInfoFetcher.ROOT, new LowestIdSelectionStrategy(1),
+                BrokerInfoFetcher.LoadMode.LAZY);
+        givenBrokers(Arrays.asList(makeChildData("/brokers/ids/3"),
+                makeChildData("/brokers/ids/1"), makeChildData("/brokers/ids/2")));
+        Mockito.when(dataParser.parseData(Mockito.any(byte[].class))).then(new Answer<BrokerInfo>() {
+
+            public BrokerInfo answer(InvocationOnMock invocation) throws Throwable {
+                return new BrokerInfo();
+            }
+        });
+
+        brokerInfoFetcher.fetchBrokerInfoAsync().get();
+        PathChildrenCacheListener listener = captureListener();
+        for (ChildData childData : new ArrayList<ChildData>(registrations.values())) {
+            listener.childEvent(curatorFramework, new PathChildrenCacheEvent(Type.CHILD_ADDED,
+                    childData));
+        }
+        listener.childEvent(curatorFramework, new PathChildrenCacheEvent(Type.INITIALIZED, null));
+
+        Assert.assertEquals(Arrays.asList("/brokers/ids/1", "/brokers/ids/2", "/brokers/ids/3"),
+                readPaths);
+        Assert.assertEquals(3, brokerInfoFetcher.getAllBrokers().size());
+    }
+
+    @Test
+    public void whenTheFetcherIsLocked_leaderFor_stillAnswers() throws Exception {
+        givenAnInitialisedFetcher("/brokers/ids/1");
+        ClusterStateCache clusterState = Mockito.mock(ClusterStateCache.class);
+        Mockito.when(clusterState.leaderFor("events", 0)).thenReturn(1);
+        Mockito.doReturn(clusterState).when(brokerInfoFetcher).makeClusterStateCache();
+        brokerInfoFetcher.getClusterState();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            synchronized (brokerInfoFetcher) {
+                Future<Integer> leader = executor.submit(new Callable<Integer>() {
+
+                    public Integer call() {
+                        return brokerInfoFetcher.leaderFor("events", 0);
+                    }
+                });
+                Assert.assertEquals(1, leader.get(10, TimeUnit.SECONDS).intValue());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void whenClosedDuringTheFirstLoad_fetchBrokerInfoAsync_failsAndStartsNoCache()
+            throws Exception {
+        givenBrokers(Arrays.asList(makeChildData("/brokers/ids/1")));
+        Mockito.when(dataParser.parseData(Mockito.any(byte[].class))).thenReturn(new BrokerInfo());
+        BrokerChangeListener changeListener = Mockito.mock(BrokerChangeListener.class);
+        brokerInfoFetcher.addBrokerChangeListener(changeListener);
+        heldListings = new ArrayList<Runnable>();
+
+        CompletableFuture<List<BrokerInfo>> future = brokerInfoFetcher.fetchBrokerInfoAsync();
+        brokerInfoFetcher.close();
+        for (Runnable reply : heldListings) {
+            reply.run();
+        }
+
+        try {
+            future.get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        Mockito.verify(brokerInfoFetcher, Mockito.never()).makePathChildrenCache();
+        Mockito.verify(zookeeperConnector, Mockito.times(1)).close();
+        Mockito.verifyZeroInteractions(changeListener);
+        Assert.assertTrue(brokerInfoFetcher.getAllBrokers().isEmpty());
+    }
+
+    @Test
+    public void whenClosed_fetchBrokerInfoAsync_failsWithoutConnecting() throws Exception {
+        brokerInfoFetcher.close();
+
+        try {
+            brokerInfoFetcher.fetchBrokerInfoAsync().get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        Mockito.verify(brokerInfoFetcher, Mockito.never()).makeZookeeperConnector(
+                Mockito.anyString());
+    }
+
+    private BrokerInfoFetcher makeFetcher(String chroot, BrokerSelectionStrategy strategy,
+            BrokerInfoFetcher.LoadMode loadMode) throws Exception {
+        BrokerInfoFetcher fetcher = Mockito.spy(new BrokerInfoFetcher("localhost:2181", chroot,
+                strategy, new ZookeeperConnectionRegistry(), loadMode));
+        Mockito.doReturn(zookeeperConnector).when(fetcher).makeZookeeperConnector(
+                Mockito.anyString());
+        Mockito.doReturn(pathChildrenCache).when(fetcher).makePathChildrenCache();
+        Mockito.doReturn(dataParser).when(fetcher).makeDataParser();
+        return fetcher;
+    }
+
+    /**
+     * Serves these registrations to the bulk loader, answering each background read as soon
+     * as it is sent, and to the cache.
+     */
+    private void givenBrokers(List<ChildData> brokers) {
+        registrations.clear();
+        for (ChildData childData : brokers) {
+            registrations.put(childData.getPath(), childData);
+        }
+        Mockito.when(pathChildrenCache.getCurrentData()).thenReturn(
+                new ArrayList<ChildData>(brokers));
+    }
+
+    private void answerReadsImmediately() {
+        Mockito.when(curatorFramework.getChildren()).thenReturn(getChildrenBuilder);
+        Mockito.when(getChildrenBuilder.inBackground(Mockito.any(BackgroundCallback.class)))
+            .then(new Answer<Pathable<List<String>>>() {
+
+                public Pathable<List<String>> answer(InvocationOnMock invocation) {
+                    final BackgroundCallback callback = (BackgroundCallback) invocation
+                        .getArguments()[0];
+                    return new Pathable<List<String>>() {
+
+                        public List<String> forPath(final String path) throws Exception {
+                            Runnable reply = new Runnable() {
+
+                                public void run() {
+                                    replyWithChildren(callback, path);
+                                }
+                            };
+                            if (heldListings != null) {
+                                heldListings.add(reply);
+                            } else {
+                                reply.run();
+                            }
+                            return null;
+                        }
+                    };
+                }
+            });
+        Mockito.when(curatorFramework.getData()).thenReturn(getDataBuilder);
+        Mockito.when(getDataBuilder.inBackground(Mockito.any(BackgroundCallback.class)))
+            .then(new Answer<Pathable<byte[]>>() {
+
+                public Pathable<byte[]> answer(InvocationOnMock invocation) {
+                    final BackgroundCallback callback = (BackgroundCallback) invocation
+                        .getArguments()[0];
+                    return new Pathable<byte[]>() {
+
+                        public byte[] forPath(String path) throws Exception {
+                            readPaths.add(path);
+                            ChildData childData = registrations.get(path);
+                            callback.processResult(curatorFramework, childData == null
+                                    ? makeEvent(Code.NONODE, path, null, null, null)
+                                    : makeEvent(Code.OK, path, null, childData.getData(),
+                                            childData.getStat()));
+                            return null;
+                        }
+                    };
+                }
+            });
+    }
+
+    private void replyWithChildren(BackgroundCallback callback, String path) {
+        List<String> children = new ArrayList<String>();
+        for (String child : registrations.keySet()) {
+            if (ZKPaths.getPathAndNode(child).getPath().equals(path)) {
+                children.add(ZKPaths.getNodeFromPath(child));
+            }
+        }
+        try {
+            callback.processResult(curatorFramework, makeEvent(brokerIdsExist ? Code.OK
+                    : Code.NONODE, path, children, null, null));
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private CuratorEvent makeEvent(Code code, String path, List<String> children, byte[] data,
+            Stat stat) {
+        CuratorEvent event = Mockito.mock(CuratorEvent.class);
+        Mockito.when(event.getResultCode()).thenReturn(code.intValue());
+        Mockito.when(event.getPath()).thenReturn(path);
+        Mockito.when(event.getChildren()).thenReturn(children);
+        Mockito.when(event.getData()).thenReturn(data);
+        Mockito.when(event.getStat()).thenReturn(stat == null ? new Stat() : stat);
+        return event;
+    }
+
+    private PathChildrenCacheListener givenAnInitialisedFetcher(String... paths)
+            throws Exception {
+        List<ChildData> brokers = new ArrayList<ChildData>();
+        for (String path : paths) {
+            brokers.add(makeChildData(path));
+        }
+        givenBrokers(brokers);
+        Mockito.when(dataParser.parseData(Mockito.any(byte[].class))).then(new Answer<BrokerInfo>() {
+
+            public BrokerInfo answer(InvocationOnMock invocation) throws Throwable {
+                return new BrokerInfo();
+            }
+        });
+        brokerInfoFetcher.fetchBrokerInfo();
+        PathChildrenCacheListener listener = captureListener();
+        listener.childEvent(curatorFramework, new PathChildrenCacheEvent(Type.INITIALIZED, null));
+        return listener;
+    }
+
+    private ConnectionStateListener captureConnectionStateListener() {
+        ArgumentCaptor<ConnectionStateListener> captor = ArgumentCaptor
+            .forClass(ConnectionStateListener.class);
+        Mockito.verify(connectionStateListenable).addListener(captor.capture());
+        return captor.getValue();
+    }
+
+    private Runnable captureReconciliation() {
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        Mockito.verify(reconcileExecutor, Mockito.atLeastOnce()).schedule(captor.capture(),
+                Mockito.anyLong(), Mockito.any(TimeUnit.class));
+        return captor.getValue();
+    }
+
+    private PathChildrenCacheListener captureListener() {
+        ArgumentCaptor<PathChildrenCacheListener> captor = ArgumentCaptor
+            .forClass(PathChildrenCacheListener.class);
+        Mockito.verify(listenerContainer).addListener(captor.capture());
+        return captor.getValue();
+    }
+
+    /**
+     * Each call is a new write of the registration, with a later zxid than the last.
+     */
+    private ChildData makeChildData(String path) {
+        ChildData childData = Mockito.mock(ChildData.class);
+        Mockito.when(childData.getData()).thenReturn(new byte[] {});
+        Mockito.when(childData.getPath()).thenReturn(path);
+        Stat stat = new Stat();
+        stat.setMzxid(++lastZxid);
+        Mockito.when(childData.getStat()).thenReturn(stat);
+        return childData;
+    }
+
+    /**
+     * Adds a registration to those already served, as a broker registering would.
+     */
+    private ChildData register(String path) {
+        ChildData childData = makeChildData(path);
+        List<ChildData> brokers = new ArrayList<ChildData>(registrations.values());
+        brokers.add(childData);
+        givenBrokers(brokers);
+        return childData;
+    }
 }
@@ -0,0 +1,56 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BrokerJsonWriterTest {
+
+    private BrokerJsonWriter jsonWriter;
+
+    @Before
+    public void setup() {
+        jsonWriter = new BrokerJsonWriter();
+    }
+
+    @Test
+    public void givenAChange_writeChange_writesEachListOnOneLine() {
+        BrokerInfo kept = makeBroker(1, "kafka1");
+        BrokerInfo added = makeBroker(2, "kafka2");
+        added.setRack("a");
+        added.setTimestamp(new Date(42));
+        added.setEndpoints(Arrays.asList(new BrokerEndpoint("SSL", "SSL", "kafka2", 9093)));
+
+        String json = jsonWriter.writeChange(BrokerChangeEvent.between(Arrays.asList(kept),
+                Arrays.asList(kept, added)), "kafka1:9092,kafka2:9092");
+
+        Assert.assertEquals("{\"connectionString\":\"kafka1:9092,kafka2:9092\","
+                + "\"added\":[{\"id\":2,\"host\":\"kafka2\",\"port\":9092,\"rack\":\"a\","
+                + "\"timestamp\":42,"
+                + "\"endpoints\":[{\"listener\":\"SSL\",\"securityProtocol\":\"SSL\","
+                + "\"host\":\"kafka2\",\"port\":9093}]}],\"removed\":[],\"updated\":[]}", json);
+    }
+
+    @Test
+    public void givenAHostNeedingEscapes_writeBrokers_escapesIt() {
+        String json = jsonWriter.writeBrokers(Collections.singletonList(makeBroker(1,
+                "a\"b\\c\n")), null);
+
+        Assert.assertEquals("{\"connectionString\":null,\"brokers\":[{\"id\":1,"
+                + "\"host\":\"a\\\"b\\\\c\\u000a\",\"port\":9092,\"rack\":null,"
+                + "\"timestamp\":null,\"endpoints\":[]}]}", json);
+    }
+
+    private BrokerInfo makeBroker(int id, String host) {
+        BrokerInfo brokerInfo = new BrokerInfo();
+        brokerInfo.setId(id);
+        brokerInfo.setHost(host);
+        brokerInfo.setPort(9092);
+        return brokerInfo;
+    }
+
+}
@@ -0,0 +1,117 @@
+package com.brandwatch.kafka.discovery;
+
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BrokerLatencyProberTest {
+
+    private ServerSocketChannel listener;
+    private int closedPort;
+
+    @Before
+    public void setup() throws Exception {
+        listener = ServerSocketChannel.open();
+        listener.bind(new InetSocketAddress("127.0.0.1", 0));
+
+        ServerSocketChannel closed = ServerSocketChannel.open();
+        closed.bind(new InetSocketAddress("127.0.0.1", 0));
+        closedPort = ((InetSocketAddress) closed.getLocalAddress()).getPort();
+        closed.close();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        listener.close();
+    }
+
+    @Test
+    public void givenAListeningBroker_probe_recordsItsLatency() throws Exception {
+        BrokerLatencyProber prober = new BrokerLatencyProber(1, TimeUnit.SECONDS, 0.5);
+        BrokerInfo listening = makeBroker(1, listeningPort());
+
+        prober.probe(Arrays.asList(listening));
+
+        Assert.assertTrue(prober.getAverageLatencyNanos(1) < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void givenOneListeningAndOneRefusingBroker_rank_putsTheListeningBrokerFirst()
+            throws Exception {
+        BrokerLatencyProber prober = new BrokerLatencyProber(1, TimeUnit.SECONDS, 0.5);
+        BrokerInfo refusing = makeBroker(1, closedPort);
+        BrokerInfo listening = makeBroker(2, listeningPort());
+
+        prober.probe(Arrays.asList(refusing, listening));
+        List<BrokerInfo> ranked = prober.rank(Arrays.asList(refusing, listening));
+
+        Assert.assertSame(listening, ranked.get(0));
+        Assert.assertSame(refusing, ranked.get(1));
+    }
+
+    @Test
+    public void givenUnprobedBrokers_rank_keepsTheirOrderAfterProbedOnes() throws Exception {
+        BrokerLatencyProber prober = new BrokerLatencyProber(1, TimeUnit.SECONDS, 0.5);
+        BrokerInfo unprobed1 = makeBroker(1, closedPort);
+        BrokerInfo unprobed2 = makeBroker(2, closedPort);
+        BrokerInfo listening = makeBroker(3, listeningPort());
+
+        prober.probe(Arrays.asList(listening));
+        List<BrokerInfo> ranked = prober.rank(Arrays.asList(unprobed1, unprobed2, listening));
+
+        Assert.assertEquals(Arrays.asList(listening, unprobed1, unprobed2), ranked);
+    }
+
+    @Test
+    public void givenSlowAddressLookups_probe_timesOnlyTheConnect() throws Exception {
+        BrokerLatencyProber prober = new BrokerLatencyProber(200, TimeUnit.MILLISECONDS, 1) {
+
+            @Override
+            InetSocketAddress resolve(BrokerInfo brokerInfo) {
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.resolve(brokerInfo);
+            }
+        };
+
+        prober.probe(Arrays.asList(makeBroker(1, listeningPort()),
+                makeBroker(2, listeningPort())));
+
+        Assert.assertTrue(prober.getAverageLatencyNanos(1) < TimeUnit.MILLISECONDS.toNanos(200));
+        Assert.assertTrue(prober.getAverageLatencyNanos(2) < TimeUnit.MILLISECONDS.toNanos(200));
+    }
+
+    @Test
+    public void givenAnUnresolvableHost_probe_chargesItAsAFailure() throws Exception {
+        BrokerLatencyProber prober = new BrokerLatencyProber(200, TimeUnit.MILLISECONDS, 1);
+        BrokerInfo unresolvable = makeBroker(1, 9092);
+        unresolvable.setHost("broker.invalid");
+
+        prober.probe(Arrays.asList(unresolvable));
+
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(400),
+                prober.getAverageLatencyNanos(1), 0);
+    }
+
+    private int listeningPort() throws Exception {
+        return ((InetSocketAddress) listener.getLocalAddress()).getPort();
+    }
+
+    private BrokerInfo makeBroker(int id, int port) {
+        BrokerInfo brokerInfo = new BrokerInfo();
+        brokerInfo.setId(id);
+        brokerInfo.setHost("127.0.0.1");
+        brokerInfo.setPort(port);
+        return brokerInfo;
+    }
+}
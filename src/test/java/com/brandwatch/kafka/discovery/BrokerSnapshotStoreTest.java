@@ -0,0 +1,99 @@
+package com.brandwatch.kafka.discovery;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BrokerSnapshotStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path path;
+    private BrokerSnapshotStore store;
+
+    @Before
+    public void setup() {
+        path = temporaryFolder.getRoot().toPath().resolve("brokers.snapshot");
+        store = new BrokerSnapshotStore(path);
+    }
+
+    @Test
+    public void givenNothingStored_read_returnsNull() throws Exception {
+        Assert.assertNull(store.read());
+    }
+
+    @Test
+    public void givenStoredBrokers_read_returnsThemUnchanged() throws Exception {
+        BrokerInfo brokerInfo = new BrokerInfo();
+        brokerInfo.setId(3);
+        brokerInfo.setHost("kafka3");
+        brokerInfo.setPort(9092);
+        brokerInfo.setJmxPort(-1);
+        brokerInfo.setVersion(4);
+        brokerInfo.setTimestamp(new Date(1234567890L));
+        brokerInfo.setRack("eu-west-1a");
+        brokerInfo.setEndpoints(Arrays.asList(new BrokerEndpoint("SSL", "SSL", "kafka3", 9093)));
+        BrokerInfo minimal = new BrokerInfo();
+        minimal.setId(4);
+
+        store.write(Arrays.asList(brokerInfo, minimal));
+        List<BrokerInfo> brokers = store.read();
+
+        Assert.assertEquals(2, brokers.size());
+        BrokerInfo read = brokers.get(0);
+        Assert.assertEquals(3, read.getId());
+        Assert.assertEquals("kafka3", read.getHost());
+        Assert.assertEquals(9092, read.getPort());
+        Assert.assertEquals(-1, read.getJmxPort());
+        Assert.assertEquals(4, read.getVersion());
+        Assert.assertEquals(new Date(1234567890L), read.getTimestamp());
+        Assert.assertEquals("eu-west-1a", read.getRack());
+        Assert.assertEquals(brokerInfo.getEndpoints(), read.getEndpoints());
+        Assert.assertNull(brokers.get(1).getHost());
+        Assert.assertNull(brokers.get(1).getTimestamp());
+        Assert.assertTrue(brokers.get(1).getEndpoints().isEmpty());
+    }
+
+    @Test
+    public void givenASecondWrite_read_returnsTheLatestBrokersAndLeavesNoTemporaryFiles()
+            throws Exception {
+        store.write(Arrays.asList(new BrokerInfo()));
+        store.write(Collections.<BrokerInfo> emptyList());
+
+        Assert.assertTrue(store.read().isEmpty());
+        Assert.assertEquals(1, temporaryFolder.getRoot().list().length);
+    }
+
+    @Test(expected = IOException.class)
+    public void givenACorruptedFile_read_throwsAnIOException() throws Exception {
+        store.write(Arrays.asList(new BrokerInfo()));
+        RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw");
+        try {
+            file.seek(file.length() - 1);
+            int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 0xff);
+        } finally {
+            file.close();
+        }
+        store.read();
+    }
+
+    @Test(expected = IOException.class)
+    public void givenSomeOtherFile_read_throwsAnIOException() throws Exception {
+        Files.write(path, "{\"brokers\":[]}".getBytes("UTF-8"));
+        store.read();
+    }
+}
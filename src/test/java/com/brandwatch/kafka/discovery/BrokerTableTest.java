@@ -0,0 +1,143 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BrokerTableTest {
+
+    @Test
+    public void givenUnorderedBrokers_of_ordersThemById() {
+        BrokerTable table = BrokerTable.of(Arrays.asList(broker(3), broker(1), broker(2)));
+
+        Assert.assertEquals(Arrays.asList(1, 2, 3), ids(table));
+    }
+
+    @Test
+    public void givenNoBrokers_of_returnsTheEmptyTable() {
+        Assert.assertSame(BrokerTable.EMPTY,
+                BrokerTable.of(Collections.<BrokerInfo> emptyList()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void givenDuplicateIds_of_throws() {
+        BrokerTable.of(Arrays.asList(broker(1), broker(1)));
+    }
+
+    @Test
+    public void givenABroker_get_returnsAViewEqualToIt() {
+        BrokerInfo brokerInfo = broker(7);
+        brokerInfo.setJmxPort(9999);
+        brokerInfo.setVersion(4);
+        brokerInfo.setTimestamp(new Date(1234567890L));
+        brokerInfo.setRack("eu-west-1a");
+        brokerInfo.setEndpoints(Arrays.asList(new BrokerEndpoint("SSL", "SSL", "kafka7", 9093)));
+
+        BrokerInfo view = BrokerTable.of(Collections.singletonList(brokerInfo)).get(0);
+
+        Assert.assertEquals(brokerInfo, view);
+        Assert.assertEquals(brokerInfo.hashCode(), view.hashCode());
+        Assert.assertEquals(9999, view.getJmxPort());
+        Assert.assertEquals(new Date(1234567890L), view.getTimestamp());
+        Assert.assertEquals("kafka7", view.getEndpoint("SSL").getHost());
+    }
+
+    @Test
+    public void givenNoTimestamp_getTimestamp_returnsNull() {
+        BrokerTable table = BrokerTable.of(Collections.singletonList(broker(1)));
+
+        Assert.assertNull(table.get(0).getTimestamp());
+        Assert.assertEquals(Long.MIN_VALUE, table.getTimestampMillis(0));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void givenAView_setHost_throws() {
+        BrokerTable.of(Collections.singletonList(broker(1))).get(0).setHost("elsewhere");
+    }
+
+    @Test
+    public void givenEqualHostsInTwoTables_getHost_returnsTheSameInstance() {
+        BrokerTable first = BrokerTable.of(Collections.singletonList(broker(1)));
+        BrokerTable second = BrokerTable.of(Collections.singletonList(broker(1)));
+
+        Assert.assertSame(first.getHost(0), second.getHost(0));
+    }
+
+    @Test
+    public void givenManyBrokers_slotOf_findsEachOne() {
+        List<BrokerInfo> brokers = new ArrayList<BrokerInfo>();
+        for (int id = 0; id < 1000; id += 7) {
+            brokers.add(broker(id));
+        }
+        BrokerTable table = BrokerTable.of(brokers);
+
+        for (int slot = 0; slot < brokers.size(); slot++) {
+            Assert.assertEquals(slot, table.slotOf(brokers.get(slot).getId()));
+        }
+        Assert.assertEquals(-1, table.slotOf(1));
+        Assert.assertNull(table.findById(1));
+        Assert.assertEquals(brokers.get(2), table.findById(14));
+    }
+
+    @Test
+    public void givenANewId_withBroker_insertsItInOrder() {
+        BrokerTable table = BrokerTable.of(Arrays.asList(broker(1), broker(3)));
+
+        BrokerTable updated = table.withBroker(broker(2));
+
+        Assert.assertEquals(Arrays.asList(1, 2, 3), ids(updated));
+        Assert.assertEquals(Arrays.asList(1, 3), ids(table));
+    }
+
+    @Test
+    public void givenAnExistingId_withBroker_replacesIt() {
+        BrokerTable table = BrokerTable.of(Arrays.asList(broker(1), broker(2)));
+        BrokerInfo moved = broker(2);
+        moved.setHost("moved");
+
+        BrokerTable updated = table.withBroker(moved);
+
+        Assert.assertEquals(2, updated.size());
+        Assert.assertEquals("moved", updated.findById(2).getHost());
+        Assert.assertEquals("kafka2", table.findById(2).getHost());
+    }
+
+    @Test
+    public void givenRegisteredIds_withoutBrokers_removesThem() {
+        BrokerTable table = BrokerTable.of(Arrays.asList(broker(1), broker(2), broker(3)));
+
+        BrokerTable updated = table.withoutBrokers(Arrays.asList(1, 3, 4));
+
+        Assert.assertEquals(Collections.singletonList(2), ids(updated));
+        Assert.assertEquals(0, updated.slotOf(2));
+    }
+
+    @Test
+    public void givenUnregisteredIds_withoutBrokers_returnsTheSameTable() {
+        BrokerTable table = BrokerTable.of(Arrays.asList(broker(1), broker(2)));
+
+        Assert.assertSame(table, table.withoutBroker(5));
+    }
+
+    private static List<Integer> ids(BrokerTable table) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (int slot = 0; slot < table.size(); slot++) {
+            ids.add(table.getId(slot));
+        }
+        return ids;
+    }
+
+    private static BrokerInfo broker(int id) {
+        BrokerInfo brokerInfo = new BrokerInfo();
+        brokerInfo.setId(id);
+        brokerInfo.setHost(new String("kafka" + id));
+        brokerInfo.setPort(9092);
+        return brokerInfo;
+    }
+
+}
@@ -0,0 +1,213 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.KeeperException.NoNodeException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.google.common.base.Charsets;
+
+public class BulkClusterDiscovererTest {
+
+    private final Map<String, CompletableFuture<KafkaBrokerDiscoverer>> discoveries =
+            new HashMap<String, CompletableFuture<KafkaBrokerDiscoverer>>();
+    private final Map<String, BrokerInfoFetcher> fetchers =
+            new HashMap<String, BrokerInfoFetcher>();
+    private final List<String> started = new CopyOnWriteArrayList<String>();
+    private BulkClusterDiscoverer bulkDiscoverer;
+
+    @After
+    public void teardown() {
+        if (bulkDiscoverer != null) {
+            bulkDiscoverer.close();
+        }
+    }
+
+    @Test
+    public void givenClustersThatAllAnswer_discoverAll_returnsEveryConnectionString()
+            throws Exception {
+        bulkDiscoverer = stubbedDiscoverer(4, 10000);
+        KafkaBrokerDiscoverer logs = answer("logs", "kafka1:9092");
+        KafkaBrokerDiscoverer metrics = answer("metrics", "kafka2:9092");
+
+        BulkDiscoveryResult result = bulkDiscoverer.discoverAll(Arrays.asList(
+                new ClusterSpec("logs", "zookeeper1:2181"),
+                new ClusterSpec("metrics", "zookeeper2:2181")));
+
+        Assert.assertTrue(result.isComplete());
+        Assert.assertEquals("kafka1:9092", result.getConnectionString("logs"));
+        Assert.assertEquals("kafka2:9092", result.getConnectionString("metrics"));
+        Mockito.verify(logs).close();
+        Mockito.verify(metrics).close();
+    }
+
+    @Test
+    public void givenAClusterThatFails_discoverAll_reportsItAlongsideTheOthers()
+            throws Exception {
+        bulkDiscoverer = stubbedDiscoverer(4, 10000);
+        answer("logs", "kafka1:9092");
+        CompletableFuture<KafkaBrokerDiscoverer> failed =
+                new CompletableFuture<KafkaBrokerDiscoverer>();
+        failed.completeExceptionally(new NoNodeException("/brokers/ids"));
+        discoveries.put("metrics", failed);
+
+        BulkDiscoveryResult result = bulkDiscoverer.discoverAll(Arrays.asList(
+                new ClusterSpec("logs", "zookeeper1:2181"),
+                new ClusterSpec("metrics", "zookeeper2:2181")));
+
+        Assert.assertFalse(result.isComplete());
+        Assert.assertEquals(Collections.singleton("logs"), result.getSnapshots().keySet());
+        Assert.assertTrue(result.getErrors().get("metrics") instanceof NoNodeException);
+    }
+
+    @Test
+    public void givenAClusterThatNeverAnswers_discoverAll_timesItOutAndClosesIt()
+            throws Exception {
+        bulkDiscoverer = stubbedDiscoverer(4, 200);
+        answer("logs", "kafka1:9092");
+        discoveries.put("metrics", new CompletableFuture<KafkaBrokerDiscoverer>());
+
+        BulkDiscoveryResult result = bulkDiscoverer.discoverAll(Arrays.asList(
+                new ClusterSpec("logs", "zookeeper1:2181"),
+                new ClusterSpec("metrics", "zookeeper2:2181")));
+
+        Assert.assertEquals("kafka1:9092", result.getConnectionString("logs"));
+        Assert.assertTrue(result.getErrors().get("metrics") instanceof TimeoutException);
+        Mockito.verify(fetchers.get("metrics")).close();
+    }
+
+    @Test
+    public void givenMoreClustersThanTheLimit_discoverAll_startsNoMoreThanTheLimitAtOnce()
+            throws Exception {
+        bulkDiscoverer = stubbedDiscoverer(2, 10000);
+        for (String name : Arrays.asList("a", "b", "c", "d")) {
+            discoveries.put(name, new CompletableFuture<KafkaBrokerDiscoverer>());
+        }
+
+        CompletableFuture<BulkDiscoveryResult> result = bulkDiscoverer.discoverAllAsync(
+                Arrays.asList(new ClusterSpec("a", "zk:2181"), new ClusterSpec("b", "zk:2181"),
+                        new ClusterSpec("c", "zk:2181"), new ClusterSpec("d", "zk:2181")));
+        awaitStarted(2);
+        Thread.sleep(100);
+        Assert.assertEquals(Arrays.asList("a", "b"), started);
+
+        discoveries.get("a").complete(discoverer("kafka1:9092"));
+        awaitStarted(3);
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), started);
+
+        discoveries.get("b").complete(discoverer("kafka1:9092"));
+        awaitStarted(4);
+        discoveries.get("c").complete(discoverer("kafka1:9092"));
+        discoveries.get("d").complete(discoverer("kafka1:9092"));
+        Assert.assertEquals(4, result.get(10, TimeUnit.SECONDS).getSnapshots().size());
+    }
+
+    @Test
+    public void givenNoClusters_discoverAll_returnsAnEmptyResult() throws Exception {
+        bulkDiscoverer = stubbedDiscoverer(2, 10000);
+
+        BulkDiscoveryResult result = bulkDiscoverer.discoverAll(
+                Collections.<ClusterSpec> emptyList());
+
+        Assert.assertTrue(result.isComplete());
+        Assert.assertTrue(result.getSnapshots().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void givenTwoClustersWithTheSameName_discoverAll_throws() throws Exception {
+        bulkDiscoverer = stubbedDiscoverer(2, 10000);
+
+        bulkDiscoverer.discoverAll(Arrays.asList(new ClusterSpec("logs", "zookeeper1:2181"),
+                new ClusterSpec("logs", "zookeeper2:2181")));
+    }
+
+    @Test
+    public void givenClustersUnderChrootsOfOneEnsemble_discoverAll_readsEachOne()
+            throws Exception {
+        TestingServer testingServer = new TestingServer();
+        CuratorFramework curatorFramework = ZookeeperConnector.newCuratorFramework(
+                testingServer.getConnectString(), ZookeeperSettings.getDefaults());
+        ZookeeperConnectionRegistry registry = new ZookeeperConnectionRegistry();
+        try {
+            register(curatorFramework, "/kafka/logs/brokers/ids/1", "logs1");
+            register(curatorFramework, "/kafka/metrics/brokers/ids/1", "metrics1");
+            bulkDiscoverer = new BulkClusterDiscoverer(4, 10, TimeUnit.SECONDS, registry);
+
+            BulkDiscoveryResult result = bulkDiscoverer.discoverAll(Arrays.asList(
+                    new ClusterSpec("logs", testingServer.getConnectString(), "/kafka/logs"),
+                    new ClusterSpec("metrics", testingServer.getConnectString(),
+                            "/kafka/metrics"),
+                    new ClusterSpec("missing", testingServer.getConnectString(),
+                            "/kafka/missing")));
+
+            Assert.assertEquals("logs1:9092", result.getConnectionString("logs"));
+            Assert.assertEquals("metrics1:9092", result.getConnectionString("metrics"));
+            Assert.assertTrue(result.getErrors().get("missing") instanceof NoNodeException);
+            Assert.assertEquals(0, registry.getSessionCount());
+        } finally {
+            curatorFramework.close();
+            testingServer.close();
+        }
+    }
+
+    private BulkClusterDiscoverer stubbedDiscoverer(int maxConcurrency, long timeoutMillis) {
+        return new BulkClusterDiscoverer(maxConcurrency, timeoutMillis, TimeUnit.MILLISECONDS,
+                new ZookeeperConnectionRegistry()) {
+
+            @Override
+            BrokerInfoFetcher makeBrokerInfoFetcher(ClusterSpec cluster) {
+                BrokerInfoFetcher fetcher = Mockito.mock(BrokerInfoFetcher.class);
+                Mockito.when(fetcher.toString()).thenReturn(cluster.getName());
+                fetchers.put(cluster.getName(), fetcher);
+                return fetcher;
+            }
+
+            @Override
+            CompletableFuture<KafkaBrokerDiscoverer> discover(BrokerInfoFetcher fetcher) {
+                started.add(fetcher.toString());
+                return discoveries.get(fetcher.toString());
+            }
+        };
+    }
+
+    private KafkaBrokerDiscoverer answer(String clusterName, String connectionString) {
+        KafkaBrokerDiscoverer discoverer = discoverer(connectionString);
+        discoveries.put(clusterName, CompletableFuture.completedFuture(discoverer));
+        return discoverer;
+    }
+
+    private KafkaBrokerDiscoverer discoverer(String connectionString) {
+        KafkaBrokerDiscoverer discoverer = Mockito.mock(KafkaBrokerDiscoverer.class);
+        Mockito.when(discoverer.getSnapshot()).thenReturn(new BrokerSnapshot(1,
+                Collections.<BrokerInfo> emptyList(), connectionString, 0));
+        return discoverer;
+    }
+
+    private void awaitStarted(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (started.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static void register(CuratorFramework curatorFramework, String path, String host)
+            throws Exception {
+        curatorFramework.create().creatingParentsIfNeeded().forPath(path, ("{\"host\":\"" + host
+                + "\",\"port\":9092,\"jmx_port\":-1,\"version\":4,\"timestamp\":\"1\"}")
+            .getBytes(Charsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.test.TestingServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+public class ClusterStateCacheTest {
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private TestingServer testingServer;
+    private CuratorFramework curatorFramework;
+    private ClusterStateCache clusterState;
+
+    @Before
+    public void setup() throws Exception {
+        testingServer = new TestingServer();
+        curatorFramework = ZookeeperConnector.newCuratorFramework(testingServer
+            .getConnectString(), ZookeeperSettings.getDefaults());
+        clusterState = new ClusterStateCache(curatorFramework, "/kafka");
+    }
+
+    @After
+    public void teardown() throws Exception {
+        clusterState.close();
+        curatorFramework.close();
+        testingServer.close();
+    }
+
+    @Test
+    public void givenAController_getControllerId_returnsItOnceRead() throws Exception {
+        write("/kafka/controller", "{\"version\":1,\"brokerid\":2,\"timestamp\":\"1\"}");
+
+        Assert.assertEquals(2, awaitController(2));
+    }
+
+    @Test
+    public void givenANewController_getControllerId_followsIt() throws Exception {
+        write("/kafka/controller", "{\"version\":1,\"brokerid\":2,\"timestamp\":\"1\"}");
+        awaitController(2);
+
+        curatorFramework.delete().forPath("/kafka/controller");
+        write("/kafka/controller", "{\"version\":1,\"brokerid\":5,\"timestamp\":\"2\"}");
+
+        Assert.assertEquals(5, awaitController(5));
+    }
+
+    @Test
+    public void givenPartitionStates_watchTopic_loadsEveryLeader() throws Exception {
+        writeLeader("events", 0, 1);
+        writeLeader("events", 1, 2);
+        writeLeader("events", 2, 1);
+
+        TopicLeaderCache leaders = clusterState.watchTopic("events").get(TIMEOUT_MILLIS,
+                TimeUnit.MILLISECONDS);
+
+        Assert.assertEquals(3, leaders.getPartitionCount());
+        Assert.assertArrayEquals(new int[] { 1, 2, 1 }, leaders.getLeaders());
+        Assert.assertEquals(2, clusterState.leaderFor("events", 1));
+        Assert.assertEquals(TopicLeaderCache.NO_LEADER, clusterState.leaderFor("events", 3));
+    }
+
+    @Test
+    public void givenALeaderChange_leaderFor_followsIt() throws Exception {
+        writeLeader("events", 0, 1);
+        clusterState.watchTopic("events").get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        writeLeader("events", 0, 3);
+        writeLeader("events", 1, 2);
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while ((clusterState.leaderFor("events", 0) != 3 || clusterState.leaderFor("events",
+                1) != 2) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(3, clusterState.leaderFor("events", 0));
+        Assert.assertEquals(2, clusterState.leaderFor("events", 1));
+    }
+
+    @Test
+    public void givenAnUnwatchedTopic_leaderFor_returnsNoLeaderAndStartsWatching()
+            throws Exception {
+        writeLeader("events", 0, 1);
+
+        Assert.assertEquals(TopicLeaderCache.NO_LEADER, clusterState.leaderFor("events", 0));
+        Assert.assertNotNull(clusterState.getTopic("events"));
+        Assert.assertNull(clusterState.getTopic("other"));
+    }
+
+    @Test
+    public void whenClosed_leaderFor_returnsNoLeaderWithoutWatching() throws Exception {
+        writeLeader("events", 0, 1);
+        clusterState.close();
+
+        Assert.assertEquals(TopicLeaderCache.NO_LEADER, clusterState.leaderFor("events", 0));
+        Assert.assertNull(clusterState.getTopic("events"));
+    }
+
+    @Test
+    public void givenAMissingTopic_watchTopic_loadsNoPartitions() throws Exception {
+        TopicLeaderCache leaders = clusterState.watchTopic("missing").get(TIMEOUT_MILLIS,
+                TimeUnit.MILLISECONDS);
+
+        Assert.assertEquals(0, leaders.getPartitionCount());
+    }
+
+    private int awaitController(int expected) throws Exception {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (clusterState.getControllerId() != expected
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        return clusterState.getControllerId();
+    }
+
+    private void writeLeader(String topic, int partition, int leader) throws Exception {
+        write("/kafka/brokers/topics/" + topic + "/partitions/" + partition + "/state",
+                "{\"controller_epoch\":1,\"leader\":" + leader
+                        + ",\"version\":1,\"leader_epoch\":0,\"isr\":[" + leader + "]}");
+    }
+
+    private void write(String path, String data) throws Exception {
+        byte[] bytes = data.getBytes(Charsets.UTF_8);
+        if (curatorFramework.checkExists().forPath(path) == null) {
+            curatorFramework.create().creatingParentsIfNeeded().forPath(path, bytes);
+        } else {
+            curatorFramework.setData().forPath(path, bytes);
+        }
+    }
+
+}
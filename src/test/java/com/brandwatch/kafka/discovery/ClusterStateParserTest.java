@@ -0,0 +1,51 @@
+package com.brandwatch.kafka.discovery;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.brandwatch.kafka.discovery.BrokerParserException.Reason;
+import com.google.common.base.Charsets;
+
+public class ClusterStateParserTest {
+
+    private final ClusterStateParser parser = new ClusterStateParser();
+
+    @Test
+    public void givenAControllerNode_parseControllerId_returnsTheBrokerId() throws Exception {
+        Assert.assertEquals(2, parser.parseControllerId(bytes(
+                "{\"version\":1,\"brokerid\":2,\"timestamp\":\"1497871094136\"}")));
+    }
+
+    @Test
+    public void givenAPartitionState_parseLeader_returnsTheLeader() throws Exception {
+        Assert.assertEquals(3, parser.parseLeader(bytes("{\"controller_epoch\":7,\"leader\":3,"
+                + "\"version\":1,\"leader_epoch\":12,\"isr\":[3,1]}")));
+    }
+
+    @Test
+    public void givenAPartitionWithoutALeader_parseLeader_returnsNoBroker() throws Exception {
+        Assert.assertEquals(ClusterStateParser.NO_BROKER, parser.parseLeader(bytes(
+                "{\"controller_epoch\":7,\"leader\":-1,\"version\":1,\"isr\":[]}")));
+    }
+
+    @Test
+    public void givenNoLeaderField_parseLeader_throwsAMissingValueException() {
+        try {
+            parser.parseLeader(bytes("{\"version\":1,\"isr\":[1]}"));
+            Assert.fail();
+        } catch (BrokerParserException e) {
+            Assert.assertEquals(Reason.MISSING_VALUE, e.getReason());
+        }
+    }
+
+    @Test(expected = BrokerParserException.class)
+    public void givenMalformedJson_parseControllerId_throwsABrokerParserException()
+            throws Exception {
+        parser.parseControllerId(bytes("{\"brokerid\":2"));
+    }
+
+    private static byte[] bytes(String data) {
+        return data.getBytes(Charsets.UTF_8);
+    }
+
+}
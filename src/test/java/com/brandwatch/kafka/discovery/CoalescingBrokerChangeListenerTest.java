@@ -0,0 +1,113 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class CoalescingBrokerChangeListenerTest {
+
+    private final BlockingQueue<BrokerChangeEvent> events =
+            new LinkedBlockingQueue<BrokerChangeEvent>();
+    private final BrokerChangeEventListener recorder = new BrokerChangeEventListener() {
+
+        public void brokersChanged(BrokerChangeEvent event) {
+            events.add(event);
+        }
+    };
+
+    private ScheduledExecutorService executor;
+    private BrokerInfoFetcher dataFetcher;
+
+    @Before
+    public void setup() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        dataFetcher = Mockito.mock(BrokerInfoFetcher.class);
+        Mockito.when(dataFetcher.getAllBrokers()).thenReturn(
+                Arrays.asList(makeBroker(1), makeBroker(2)));
+    }
+
+    @After
+    public void teardown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void givenABurstOfChanges_brokersChanged_deliversOneConsolidatedEvent()
+            throws Exception {
+        CoalescingBrokerChangeListener listener = new CoalescingBrokerChangeListener(dataFetcher,
+                recorder, executor, 100, 10000, TimeUnit.MILLISECONDS);
+
+        listener.brokersChanged(Arrays.asList(makeBroker(2)));
+        listener.brokersChanged(Collections.<BrokerInfo> emptyList());
+        listener.brokersChanged(Arrays.asList(makeBroker(2), makeBroker(3)));
+
+        BrokerChangeEvent event = events.poll(5, TimeUnit.SECONDS);
+        Assert.assertEquals(Arrays.asList(makeBroker(3)), event.getAdded());
+        Assert.assertEquals(Arrays.asList(makeBroker(1)), event.getRemoved());
+        Assert.assertTrue(event.getUpdated().isEmpty());
+        Assert.assertNull(events.poll(300, TimeUnit.MILLISECONDS));
+        listener.close();
+    }
+
+    @Test
+    public void givenABrokerThatComesStraightBack_brokersChanged_deliversNothing()
+            throws Exception {
+        CoalescingBrokerChangeListener listener = new CoalescingBrokerChangeListener(dataFetcher,
+                recorder, executor, 50, 10000, TimeUnit.MILLISECONDS);
+
+        listener.brokersChanged(Arrays.asList(makeBroker(2)));
+        listener.brokersChanged(Arrays.asList(makeBroker(1), makeBroker(2)));
+
+        Assert.assertNull(events.poll(300, TimeUnit.MILLISECONDS));
+        listener.close();
+    }
+
+    @Test
+    public void givenContinuousChanges_brokersChanged_deliversWithinTheMaxDelay()
+            throws Exception {
+        CoalescingBrokerChangeListener listener = new CoalescingBrokerChangeListener(dataFetcher,
+                recorder, executor, 200, 400, TimeUnit.MILLISECONDS);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        List<BrokerInfo> brokers = Arrays.asList(makeBroker(1));
+        while (events.isEmpty() && System.nanoTime() < deadline) {
+            listener.brokersChanged(brokers);
+            Thread.sleep(20);
+        }
+
+        Assert.assertEquals(Arrays.asList(makeBroker(2)), events.poll().getRemoved());
+        listener.close();
+    }
+
+    @Test
+    public void whenTheExecutorHasShutDown_brokersChanged_dropsTheChange() throws Exception {
+        CoalescingBrokerChangeListener listener = new CoalescingBrokerChangeListener(dataFetcher,
+                recorder, executor, 50, 10000, TimeUnit.MILLISECONDS);
+        executor.shutdownNow();
+
+        listener.brokersChanged(Arrays.asList(makeBroker(2)));
+        listener.brokersChanged(Arrays.asList(makeBroker(3)));
+
+        Assert.assertTrue(events.isEmpty());
+        listener.close();
+    }
+
+    private BrokerInfo makeBroker(int id) {
+        BrokerInfo brokerInfo = new BrokerInfo();
+        brokerInfo.setId(id);
+        brokerInfo.setHost("kafka" + id);
+        brokerInfo.setPort(9092);
+        return brokerInfo;
+    }
+}
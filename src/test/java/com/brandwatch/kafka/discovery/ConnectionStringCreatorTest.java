@@ -56,4 +56,37 @@ public class ConnectionStringCreatorTest {
         String connectionString = connectionStringCreator.createConnectionString(brokers);
         Assert.assertEquals("host1:5555,host2:4444,host3:3333", connectionString);
     }
+
+    @Test
+    public void whenTheSameHostsAndPortsAreGiven_fingerprint_returnsTheSameValue() {
+        List<BrokerInfo> left = new ArrayList<BrokerInfo>();
+        List<BrokerInfo> right = new ArrayList<BrokerInfo>();
+        for (int i = 0; i < 3; i++) {
+            left.add(makeBroker("host" + i, 5555));
+            right.add(makeBroker("host" + i, 5555));
+        }
+        Assert.assertEquals(connectionStringCreator.fingerprint(left),
+                connectionStringCreator.fingerprint(right));
+        Assert.assertTrue(connectionStringCreator.rendersSameAs(left, right));
+    }
+
+    @Test
+    public void whenTheOrderDiffers_fingerprint_returnsADifferentValue() {
+        List<BrokerInfo> left = new ArrayList<BrokerInfo>();
+        left.add(makeBroker("host1", 5555));
+        left.add(makeBroker("host2", 5555));
+        List<BrokerInfo> right = new ArrayList<BrokerInfo>();
+        right.add(makeBroker("host2", 5555));
+        right.add(makeBroker("host1", 5555));
+        Assert.assertNotEquals(connectionStringCreator.fingerprint(left),
+                connectionStringCreator.fingerprint(right));
+        Assert.assertFalse(connectionStringCreator.rendersSameAs(left, right));
+    }
+
+    private BrokerInfo makeBroker(String host, int port) {
+        BrokerInfo brokerInfo = new BrokerInfo();
+        brokerInfo.setHost(host);
+        brokerInfo.setPort(port);
+        return brokerInfo;
+    }
 }
@@ -0,0 +1,61 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConsistentHashSelectionStrategyTest {
+
+    @Test
+    public void givenTheSameClientId_select_returnsTheSameBrokers() {
+        List<BrokerInfo> brokers = makeBrokers(20);
+        List<BrokerInfo> first = new ConsistentHashSelectionStrategy("client-a").select(brokers);
+        List<BrokerInfo> second = new ConsistentHashSelectionStrategy("client-a").select(brokers);
+        Assert.assertEquals(3, first.size());
+        Assert.assertEquals(first, second);
+    }
+
+    @Test
+    public void givenManyClients_select_spreadsThemAcrossTheCluster() {
+        List<BrokerInfo> brokers = makeBrokers(20);
+        Set<Integer> selectedIds = new HashSet<Integer>();
+        for (int client = 0; client < 100; client++) {
+            for (BrokerInfo brokerInfo : new ConsistentHashSelectionStrategy("client-" + client)
+                .select(brokers)) {
+                selectedIds.add(brokerInfo.getId());
+            }
+        }
+        Assert.assertEquals(20, selectedIds.size());
+    }
+
+    @Test
+    public void whenAnUnselectedBrokerLeaves_select_keepsTheSameBrokers() {
+        List<BrokerInfo> brokers = makeBrokers(20);
+        ConsistentHashSelectionStrategy strategy = new ConsistentHashSelectionStrategy("client-a");
+        List<BrokerInfo> before = strategy.select(brokers);
+
+        List<BrokerInfo> remaining = new ArrayList<BrokerInfo>(brokers);
+        for (BrokerInfo brokerInfo : brokers) {
+            if (!before.contains(brokerInfo)) {
+                remaining.remove(brokerInfo);
+                break;
+            }
+        }
+        Assert.assertEquals(before, strategy.select(remaining));
+    }
+
+    private List<BrokerInfo> makeBrokers(int count) {
+        List<BrokerInfo> brokers = new ArrayList<BrokerInfo>();
+        for (int id = 0; id < count; id++) {
+            BrokerInfo brokerInfo = new BrokerInfo();
+            brokerInfo.setId(id);
+            brokerInfo.setHost("host" + id);
+            brokers.add(brokerInfo);
+        }
+        return brokers;
+    }
+}
@@ -21,7 +21,7 @@ public class DataParserTest {
     @Test(expected = NullPointerException.class)
     public void givenANullDataString_parseData_throwsANullPointerException()
             throws BrokerParserException {
-        dataParser.parseData(null);
+        dataParser.parseData((String) null);
     }
 
     @Test(expected = BrokerParserException.class)
@@ -136,4 +136,59 @@ public class DataParserTest {
         BrokerInfo parseData = dataParser.parseData(invalidBrokerConfiguration);
         System.out.println(parseData.getHost());
     }
+
+    @Test
+    public void givenTheRawBytesOfOneBroker_parseData_returnsAValidBrokerInfo()
+            throws BrokerParserException {
+        byte[] validBrokerConfiguration = "{ \"host\":\"beetlejuice.runtime-collective.com\", \"jmx_port\":9093, \"port\":9092, \"timestamp\":\"1424095336398\", \"version\":1 }"
+            .getBytes();
+        BrokerInfo brokerInfo = dataParser.parseData(validBrokerConfiguration);
+        Assert.assertEquals("beetlejuice.runtime-collective.com", brokerInfo.getHost());
+        Assert.assertEquals(9093, brokerInfo.getJmxPort());
+        Assert.assertEquals(9092, brokerInfo.getPort());
+        Assert.assertEquals(1, brokerInfo.getVersion());
+        Assert.assertEquals(new Date(1424095336398L), brokerInfo.getTimestamp());
+    }
+
+    @Test(expected = BrokerParserException.class)
+    public void givenAStringWithANonNumericPort_parseData_throwsABrokerParserException()
+            throws BrokerParserException {
+        String invalidBrokerConfiguration = "{ \"host\":\"beetlejuice.runtime-collective.com\", \"jmx_port\":9093, \"port\":\"abc\", \"timestamp\":\"1424095336398\", \"version\":1 }";
+        dataParser.parseData(invalidBrokerConfiguration);
+    }
+
+    @Test
+    public void givenAStringWithUnknownKeys_parseData_skipsThem() throws BrokerParserException {
+        String brokerConfiguration = "{ \"host\":\"beetlejuice.runtime-collective.com\", \"features\":{\"a\":[1,{\"b\":\"c,d:e\"}]}, \"jmx_port\":9093, \"port\":9092, \"timestamp\":\"1424095336398\", \"version\":1 }";
+        BrokerInfo brokerInfo = dataParser.parseData(brokerConfiguration);
+        Assert.assertEquals("beetlejuice.runtime-collective.com", brokerInfo.getHost());
+        Assert.assertEquals(9092, brokerInfo.getPort());
+    }
+
+    @Test
+    public void givenAModernRegistration_parseData_returnsEndpointsAndRack()
+            throws BrokerParserException {
+        String brokerConfiguration = "{\"listener_security_protocol_map\":{\"INTERNAL\":\"PLAINTEXT\",\"EXTERNAL\":\"SSL\"},\"endpoints\":[\"INTERNAL://kafka1:9092\",\"EXTERNAL://[::1]:9093\"],\"rack\":\"rack-a\",\"jmx_port\":-1,\"host\":\"kafka1\",\"timestamp\":\"1424095336398\",\"port\":9092,\"version\":4}";
+        BrokerInfo brokerInfo = dataParser.parseData(brokerConfiguration);
+        Assert.assertEquals("kafka1", brokerInfo.getHost());
+        Assert.assertEquals(9092, brokerInfo.getPort());
+        Assert.assertEquals(-1, brokerInfo.getJmxPort());
+        Assert.assertEquals(4, brokerInfo.getVersion());
+        Assert.assertEquals("rack-a", brokerInfo.getRack());
+        Assert.assertEquals(2, brokerInfo.getEndpoints().size());
+        Assert.assertEquals(new BrokerEndpoint("INTERNAL", "PLAINTEXT", "kafka1", 9092),
+                brokerInfo.getEndpoint("INTERNAL"));
+        Assert.assertEquals(new BrokerEndpoint("EXTERNAL", "SSL", "::1", 9093),
+                brokerInfo.getEndpoint("EXTERNAL"));
+    }
+
+    @Test
+    public void givenARegistrationWithANullHost_parseData_usesTheFirstEndpoint()
+            throws BrokerParserException {
+        String brokerConfiguration = "{\"endpoints\":[\"SSL://kafka1:9093\"],\"jmx_port\":-1,\"host\":null,\"timestamp\":\"1424095336398\",\"port\":-1,\"version\":2}";
+        BrokerInfo brokerInfo = dataParser.parseData(brokerConfiguration);
+        Assert.assertEquals("kafka1", brokerInfo.getHost());
+        Assert.assertEquals(9093, brokerInfo.getPort());
+        Assert.assertEquals("SSL", brokerInfo.getEndpoints().get(0).getSecurityProtocol());
+    }
 }
@@ -0,0 +1,53 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent.Type;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class DiscoveryMetricsBinderTest {
+
+    private DiscoveryMetrics metrics;
+    private MeterRegistry registry;
+
+    @Before
+    public void setup() {
+        metrics = new DiscoveryMetrics();
+        registry = new SimpleMeterRegistry();
+        new DiscoveryMetricsBinder(metrics, Tags.of("cluster", "logs")).bindTo(registry);
+    }
+
+    @Test
+    public void whenBound_bindTo_publishesTheCurrentValues() {
+        metrics.setBrokerCount(3);
+        metrics.recordFetch(TimeUnit.MILLISECONDS.toNanos(2));
+        metrics.recordCacheEvent(Type.CHILD_UPDATED);
+
+        Assert.assertEquals(3, registry.get("kafka.discovery.brokers").tag("cluster", "logs")
+            .gauge().value(), 0);
+        FunctionTimer fetch = registry.get("kafka.discovery.fetch").functionTimer();
+        Assert.assertEquals(1, fetch.count(), 0);
+        Assert.assertEquals(2, fetch.totalTime(TimeUnit.MILLISECONDS), 0);
+        Assert.assertEquals(1, registry.get("kafka.discovery.cache.events")
+            .tag("type", "CHILD_UPDATED").functionCounter().count(), 0);
+    }
+
+    @Test
+    public void beforeConnecting_bindTo_reportsTheConnectTimeAsNaN() {
+        Assert.assertTrue(Double.isNaN(registry.get("kafka.discovery.connect.time").timeGauge()
+            .value()));
+
+        metrics.recordConnect(TimeUnit.MILLISECONDS.toNanos(5));
+
+        Assert.assertEquals(5, registry.get("kafka.discovery.connect.time").timeGauge()
+            .value(TimeUnit.MILLISECONDS), 0);
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.brandwatch.kafka.discovery;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent.Type;
+import org.apache.curator.framework.state.ConnectionState;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.brandwatch.kafka.discovery.BrokerParserException.Reason;
+import com.google.common.base.Charsets;
+
+public class DiscoveryMetricsTest {
+
+    private static final String VALID_REGISTRATION = "{\"host\":\"a\",\"port\":9092,"
+            + "\"jmx_port\":9999,\"version\":1,\"timestamp\":\"1424095336398\"}";
+
+    private DiscoveryMetrics metrics;
+
+    @Before
+    public void setup() {
+        metrics = new DiscoveryMetrics();
+    }
+
+    @Test
+    public void givenAValidRegistration_parse_countsItWithoutAFailure() throws Exception {
+        metrics.parse(new DataParser(), VALID_REGISTRATION.getBytes(Charsets.UTF_8));
+
+        Assert.assertEquals(1, metrics.getParseCount());
+        Assert.assertTrue(metrics.getParseTotalTimeNanos() >= metrics.getParseMaxTimeNanos());
+        for (Reason reason : Reason.values()) {
+            Assert.assertEquals(0, metrics.getParseFailureCount(reason));
+        }
+    }
+
+    @Test
+    public void givenAnInvalidRegistration_parse_countsTheFailureByReason() {
+        try {
+            metrics.parse(new DataParser(), VALID_REGISTRATION.replace("9092", "-1").getBytes(
+                    Charsets.UTF_8));
+            Assert.fail();
+        } catch (BrokerParserException e) {
+            Assert.assertEquals(Reason.INVALID_VALUE, e.getReason());
+        }
+
+        Assert.assertEquals(1, metrics.getParseCount());
+        Assert.assertEquals(1, metrics.getParseFailureCount(Reason.INVALID_VALUE));
+        Assert.assertEquals(Long.valueOf(1), metrics.getParseFailures().get("INVALID_VALUE"));
+    }
+
+    @Test
+    public void whenRecordedTwice_recordConnect_keepsTheFirstTime() {
+        Assert.assertEquals(-1, metrics.getConnectTimeNanos());
+
+        metrics.recordConnect(5);
+        metrics.recordConnect(7);
+
+        Assert.assertEquals(5, metrics.getConnectTimeNanos());
+    }
+
+    @Test
+    public void whenFetchesAreRecorded_getFetchMaxTimeNanos_returnsTheLongest() {
+        metrics.recordFetch(3);
+        metrics.recordFetch(10);
+        metrics.recordFetch(4);
+
+        Assert.assertEquals(3, metrics.getFetchCount());
+        Assert.assertEquals(17, metrics.getFetchTotalTimeNanos());
+        Assert.assertEquals(10, metrics.getFetchMaxTimeNanos());
+    }
+
+    @Test
+    public void whenEventsAreRecorded_getCacheEvents_includesEveryType() {
+        metrics.recordCacheEvent(Type.CHILD_REMOVED);
+        metrics.recordCacheEvent(Type.CHILD_REMOVED);
+
+        Map<String, Long> cacheEvents = metrics.getCacheEvents();
+        Assert.assertEquals(Type.values().length, cacheEvents.size());
+        Assert.assertEquals(Long.valueOf(2), cacheEvents.get("CHILD_REMOVED"));
+        Assert.assertEquals(Long.valueOf(0), cacheEvents.get("CHILD_ADDED"));
+    }
+
+    @Test
+    public void whenRegistered_registerMBean_exposesTheMetricsOverJmx() throws Exception {
+        metrics.setBrokerCount(4);
+        metrics.recordConnectionStateChange(ConnectionState.SUSPENDED);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        ObjectName name = metrics.registerMBean("test");
+        try {
+            Assert.assertEquals(4, server.getAttribute(name, "BrokerCount"));
+            Assert.assertTrue(server.getAttribute(name, "ConnectionStateChanges").toString()
+                .contains("SUSPENDED"));
+        } finally {
+            metrics.unregisterMBean("test");
+        }
+        Assert.assertFalse(server.isRegistered(name));
+    }
+
+}
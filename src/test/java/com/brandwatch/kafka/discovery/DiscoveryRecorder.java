@@ -0,0 +1,85 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records how a {@link BrokerInfoFetcher} behaves over a simulated scenario: how long the first
+ * answer took, how far the published brokers lagged behind Zookeeper, and how many changes
+ * were published and how quickly.
+ */
+class DiscoveryRecorder implements BrokerChangeListener {
+
+    private final AtomicLong events = new AtomicLong();
+    private volatile long firstEventNanos = -1;
+    private volatile long lastEventNanos = -1;
+    private long timeToFirstAnswerNanos = -1;
+    private long maxStalenessNanos = 0;
+
+    public void brokersChanged(List<BrokerInfo> brokers) {
+        long now = System.nanoTime();
+        if (events.getAndIncrement() == 0) {
+            firstEventNanos = now;
+        }
+        lastEventNanos = now;
+    }
+
+    /**
+     * Times a blocking fetch from a fetcher that hasn't been initialised yet.
+     */
+    List<BrokerInfo> timeFirstAnswer(BrokerInfoFetcher fetcher) throws Exception {
+        long start = System.nanoTime();
+        List<BrokerInfo> brokers = fetcher.fetchBrokerInfo();
+        timeToFirstAnswerNanos = System.nanoTime() - start;
+        return brokers;
+    }
+
+    /**
+     * Waits for the fetcher to publish the expected number of brokers and records how long
+     * that took as staleness, measured from <code>changedNanos</code>, when Zookeeper changed.
+     *
+     * @return whether the fetcher caught up before the timeout
+     */
+    boolean awaitBrokerCount(BrokerInfoFetcher fetcher, int expected, long changedNanos,
+            long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMillis * 1000000L;
+        while (fetcher.getAllBrokers().size() != expected) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        maxStalenessNanos = Math.max(maxStalenessNanos, System.nanoTime() - changedNanos);
+        return true;
+    }
+
+    long getEventCount() {
+        return events.get();
+    }
+
+    /**
+     * @return publications per second between the first and the last, or 0 if there were fewer
+     *         than two
+     */
+    double getEventsPerSecond() {
+        long count = events.get();
+        long elapsed = lastEventNanos - firstEventNanos;
+        return count < 2 || elapsed <= 0 ? 0 : (count - 1) * 1e9 / elapsed;
+    }
+
+    long getTimeToFirstAnswerMillis() {
+        return timeToFirstAnswerNanos / 1000000L;
+    }
+
+    long getMaxStalenessMillis() {
+        return maxStalenessNanos / 1000000L;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("timeToFirstAnswer=%dms maxStaleness=%dms events=%d "
+                + "eventsPerSecond=%.1f", getTimeToFirstAnswerMillis(), getMaxStalenessMillis(),
+                getEventCount(), getEventsPerSecond());
+    }
+
+}
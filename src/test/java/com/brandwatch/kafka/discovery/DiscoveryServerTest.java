@@ -0,0 +1,254 @@
+package com.brandwatch.kafka.discovery;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DiscoveryServerTest {
+
+    @Mock
+    private BrokerInfoFetcher brokerInfoFetcher;
+
+    private KafkaBrokerDiscoverer discoverer;
+    private DiscoveryServer server;
+    private DiscoveryClient client;
+
+    @Before
+    public void setup() throws Exception {
+        Mockito.when(brokerInfoFetcher.getBootstrapBrokers()).thenReturn(
+                Arrays.asList(makeBroker(1, "host1")));
+        discoverer = new KafkaBrokerDiscoverer(brokerInfoFetcher);
+        server = new DiscoveryServer(discoverer, 0);
+        client = new DiscoveryClient(server.getPort());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+        discoverer.close();
+    }
+
+    @Test
+    public void whenAsked_getConnectionString_returnsTheServedString() throws Exception {
+        Assert.assertEquals("host1:9092", client.getConnectionString());
+    }
+
+    @Test
+    public void whenAsked_getBrokersJson_returnsTheBootstrapBrokers() throws Exception {
+        String json = client.getBrokersJson();
+
+        Assert.assertTrue(json, json.startsWith("{\"connectionString\":\"host1:9092\","
+                + "\"brokers\":[{\"id\":1,\"host\":\"host1\""));
+    }
+
+    @Test
+    public void givenTheCurrentETag_aRequest_isAnsweredWithNotModified() throws Exception {
+        String etag = findETag(send("GET /connection-string HTTP/1.1\r\n\r\n"));
+
+        String response = send("GET /connection-string HTTP/1.1\r\nIf-None-Match: " + etag
+                + "\r\n\r\n");
+
+        Assert.assertTrue(response, response.startsWith("HTTP/1.1 304 Not Modified\r\n"));
+        Assert.assertEquals(etag, findETag(response));
+    }
+
+    @Test
+    public void givenAnETagFromBeforeARestart_aRequest_isAnsweredInFull() throws Exception {
+        String etag = findETag(send("GET /connection-string HTTP/1.1\r\n\r\n"));
+        server.close();
+        server = new DiscoveryServer(discoverer, 0);
+
+        String response = send("GET /connection-string HTTP/1.1\r\nIf-None-Match: " + etag
+                + "\r\n\r\n");
+
+        Assert.assertTrue(response, response.startsWith("HTTP/1.1 200 OK\r\n"));
+        Assert.assertFalse(etag.equals(findETag(response)));
+    }
+
+    @Test
+    public void givenAnUnknownPath_aRequest_isAnsweredWithNotFound() throws Exception {
+        Assert.assertTrue(send("GET /nothing HTTP/1.1\r\n\r\n").startsWith(
+                "HTTP/1.1 404 Not Found\r\n"));
+    }
+
+    @Test
+    public void whenTheBrokersChange_awaitConnectionString_returnsTheNewString()
+            throws Exception {
+        client.getConnectionString();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> awaited = executor.submit(new Callable<String>() {
+
+                public String call() throws Exception {
+                    return client.awaitConnectionString(30, TimeUnit.SECONDS);
+                }
+            });
+            Thread.sleep(200);
+            Assert.assertFalse(awaited.isDone());
+
+            List<BrokerInfo> changed = Arrays.asList(makeBroker(1, "host1"),
+                    makeBroker(2, "host2"));
+            Mockito.when(brokerInfoFetcher.getBootstrapBrokers()).thenReturn(changed);
+            captureListener().brokersChanged(changed);
+
+            Assert.assertEquals("host1:9092,host2:9092", awaited.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void whenEveryBrokerGoesWhileALongPollIsHeld_theServer_keepsAnswering()
+            throws Exception {
+        final String etag = findETag(send("GET /connection-string HTTP/1.1\r\n\r\n"));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> held = executor.submit(new Callable<String>() {
+
+                public String call() throws Exception {
+                    return send("GET /connection-string?wait=30 HTTP/1.1\r\nIf-None-Match: "
+                            + etag + "\r\n\r\n");
+                }
+            });
+            Thread.sleep(200);
+            Assert.assertFalse(held.isDone());
+
+            List<BrokerInfo> none = Collections.emptyList();
+            Mockito.when(brokerInfoFetcher.getBootstrapBrokers()).thenReturn(none);
+            captureListener().brokersChanged(none);
+
+            String response = held.get(10, TimeUnit.SECONDS);
+            Assert.assertTrue(response, response.startsWith("HTTP/1.1 503 Service Unavailable"));
+            Assert.assertTrue(send("GET /connection-string HTTP/1.1\r\n\r\n").startsWith(
+                    "HTTP/1.1 503 Service Unavailable"));
+
+            List<BrokerInfo> back = Arrays.asList(makeBroker(1, "host1"));
+            Mockito.when(brokerInfoFetcher.getBootstrapBrokers()).thenReturn(back);
+            captureListener().brokersChanged(back);
+            Assert.assertEquals("host1:9092", client.getConnectionString());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void whenNothingChanges_awaitConnectionString_returnsTheLastString()
+            throws Exception {
+        client.getConnectionString();
+
+        Assert.assertEquals("host1:9092", client.awaitConnectionString(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void givenAnOlderSnapshotArrivingLate_getConnectionString_returnsTheNewest()
+            throws Exception {
+        KafkaBrokerDiscoverer spiedDiscoverer = Mockito.spy(discoverer);
+        server.close();
+        server = new DiscoveryServer(spiedDiscoverer, 0);
+        ArgumentCaptor<BrokerSnapshotListener> captor = ArgumentCaptor
+            .forClass(BrokerSnapshotListener.class);
+        Mockito.verify(spiedDiscoverer).addSnapshotListener(captor.capture());
+
+        captor.getValue().snapshotPublished(new BrokerSnapshot(0, Arrays.asList(makeBroker(1,
+                "stale")), "stale:9092", 0));
+
+        Assert.assertEquals("host1:9092", new DiscoveryClient(server.getPort())
+            .getConnectionString());
+    }
+
+    @Test
+    public void givenASnapshotThatRendersTheSame_aHeldRequest_staysHeld() throws Exception {
+        KafkaBrokerDiscoverer spiedDiscoverer = Mockito.spy(discoverer);
+        server.close();
+        server = new DiscoveryServer(spiedDiscoverer, 0);
+        ArgumentCaptor<BrokerSnapshotListener> captor = ArgumentCaptor
+            .forClass(BrokerSnapshotListener.class);
+        Mockito.verify(spiedDiscoverer).addSnapshotListener(captor.capture());
+        BrokerSnapshot current = discoverer.getSnapshot();
+        final String etag = findETag(send("GET /connection-string HTTP/1.1\r\n\r\n"));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> held = executor.submit(new Callable<String>() {
+
+                public String call() throws Exception {
+                    return send("GET /connection-string?wait=30 HTTP/1.1\r\nif-none-match: "
+                            + etag + "\r\n\r\n");
+                }
+            });
+            Thread.sleep(200);
+
+            captor.getValue().snapshotPublished(new BrokerSnapshot(current.getVersion() + 1,
+                    current.getBrokers(), current.getConnectionString(), 0));
+            Thread.sleep(200);
+            Assert.assertFalse(held.isDone());
+            Assert.assertTrue(send("GET /brokers HTTP/1.1\r\nIf-None-Match: " + etag
+                    + "\r\n\r\n").startsWith("HTTP/1.1 304 Not Modified\r\n"));
+
+            captor.getValue().snapshotPublished(new BrokerSnapshot(current.getVersion() + 2,
+                    Arrays.asList(makeBroker(2, "host2")), "host2:9092", 0));
+            String response = held.get(10, TimeUnit.SECONDS);
+            Assert.assertTrue(response, response.startsWith("HTTP/1.1 200 OK\r\n"));
+            Assert.assertFalse(etag.equals(findETag(response)));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private String send(String request) throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        try {
+            OutputStream out = socket.getOutputStream();
+            out.write(request.getBytes(Charsets.ISO_8859_1));
+            out.flush();
+            InputStream in = socket.getInputStream();
+            return new String(ByteStreams.toByteArray(in), Charsets.ISO_8859_1);
+        } finally {
+            socket.close();
+        }
+    }
+
+    private String findETag(String response) {
+        int start = response.indexOf("ETag: ") + "ETag: ".length();
+        return response.substring(start, response.indexOf("\r\n", start));
+    }
+
+    private BrokerChangeListener captureListener() {
+        ArgumentCaptor<BrokerChangeListener> captor = ArgumentCaptor
+            .forClass(BrokerChangeListener.class);
+        Mockito.verify(brokerInfoFetcher).addBrokerChangeListener(captor.capture());
+        return captor.getValue();
+    }
+
+    private BrokerInfo makeBroker(int id, String host) {
+        BrokerInfo brokerInfo = new BrokerInfo();
+        brokerInfo.setId(id);
+        brokerInfo.setHost(host);
+        brokerInfo.setPort(9092);
+        return brokerInfo;
+    }
+
+}
@@ -0,0 +1,156 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs a {@link BrokerInfoFetcher} against a simulated Zookeeper with added latency, faults and
+ * broker churn. Timings are asserted as generous bounds, so that a regression to one round trip
+ * per broker fails without the test being flaky, and the recorded figures are included in the
+ * failure messages.
+ */
+public class DiscoverySimulationTest {
+
+    private static final int BROKER_COUNT = 1000;
+    private static final long TIMEOUT_MILLIS = 20000;
+
+    private ZookeeperSimulator simulator;
+    private ZookeeperConnectionRegistry registry;
+    private BrokerInfoFetcher fetcher;
+    private DiscoveryRecorder recorder;
+
+    @Before
+    public void setup() throws Exception {
+        simulator = new ZookeeperSimulator();
+        registry = new ZookeeperConnectionRegistry(new ZookeeperSettings(5, 1, TimeUnit.SECONDS,
+                new ExponentialBackoffRetry(100, 5)));
+        recorder = new DiscoveryRecorder();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        if (fetcher != null) {
+            fetcher.close();
+        }
+        simulator.close();
+    }
+
+    @Test
+    public void givenManyBrokersBehindASlowLink_fetchBrokerInfo_pipelinesTheReads()
+            throws Exception {
+        simulator.registerBrokers(1, BROKER_COUNT);
+        simulator.setLatency(10, TimeUnit.MILLISECONDS);
+        fetcher = newFetcher();
+
+        recorder.timeFirstAnswer(fetcher);
+
+        Assert.assertEquals(BROKER_COUNT, fetcher.getAllBrokers().size());
+        // Reading the brokers one round trip at a time would take at least 20 seconds
+        Assert.assertTrue(recorder.toString(), recorder.getTimeToFirstAnswerMillis() < 5000);
+    }
+
+    @Test
+    public void givenARollingRestart_theFetcher_convergesOnEveryBroker() throws Exception {
+        simulator.registerBrokers(1, 50);
+        simulator.setLatency(5, TimeUnit.MILLISECONDS);
+        fetcher = newFetcher();
+        recorder.timeFirstAnswer(fetcher);
+
+        simulator.rollingRestart(ids(1, 10), 20, TimeUnit.MILLISECONDS);
+        long restarted = System.nanoTime();
+
+        Assert.assertTrue(recorder.toString(),
+                recorder.awaitBrokerCount(fetcher, 50, restarted, TIMEOUT_MILLIS));
+        Assert.assertTrue(recorder.toString(), recorder.getEventCount() >= 10);
+        Assert.assertTrue(recorder.toString(), recorder.getMaxStalenessMillis() < 5000);
+    }
+
+    @Test
+    public void givenSeededChurn_theFetcher_endsWithEveryBroker() throws Exception {
+        simulator.registerBrokers(1, 50);
+        simulator.setLatency(5, TimeUnit.MILLISECONDS);
+        fetcher = newFetcher();
+        recorder.timeFirstAnswer(fetcher);
+
+        List<Integer> bounced = simulator.randomChurn(ids(1, 50), 200, 42L);
+        // Zookeeper may fold a bounce into a single change, so wait for a marker that can't be
+        simulator.register(51);
+        long churned = System.nanoTime();
+
+        Assert.assertEquals(200, bounced.size());
+        Assert.assertTrue(recorder.toString(),
+                recorder.awaitBrokerCount(fetcher, 51, churned, TIMEOUT_MILLIS));
+    }
+
+    @Test
+    public void givenAPartition_theFetcher_servesStaleBrokersUntilItHeals() throws Exception {
+        simulator.registerBrokers(1, 20);
+        fetcher = newFetcher();
+        fetcher.setReconnectGracePeriod(100, TimeUnit.MILLISECONDS);
+        recorder.timeFirstAnswer(fetcher);
+
+        simulator.partition();
+        awaitStale(true);
+        simulator.deregister(20);
+
+        Assert.assertEquals(20, fetcher.getAllBrokers().size());
+
+        simulator.heal();
+        long healed = System.nanoTime();
+        Assert.assertTrue(recorder.toString(),
+                recorder.awaitBrokerCount(fetcher, 19, healed, TIMEOUT_MILLIS));
+        awaitStale(false);
+    }
+
+    @Test
+    public void givenAnExpiredSession_theFetcher_seesBrokersRegisteredAfterwards()
+            throws Exception {
+        simulator.registerBrokers(1, 20);
+        fetcher = newFetcher();
+        fetcher.setReconnectGracePeriod(100, TimeUnit.MILLISECONDS);
+        recorder.timeFirstAnswer(fetcher);
+
+        ZookeeperConnector connector = registry.acquire(simulator.getConnectString());
+        try {
+            simulator.expireSession(connector.getCuratorFramework());
+        } finally {
+            connector.close();
+        }
+        simulator.register(21);
+        long registered = System.nanoTime();
+
+        Assert.assertTrue(recorder.toString(),
+                recorder.awaitBrokerCount(fetcher, 21, registered, TIMEOUT_MILLIS));
+    }
+
+    private BrokerInfoFetcher newFetcher() throws Exception {
+        BrokerInfoFetcher newFetcher = new BrokerInfoFetcher(simulator.getConnectString(),
+                BrokerInfoFetcher.ROOT, new LowestIdSelectionStrategy(), registry);
+        newFetcher.addBrokerChangeListener(recorder);
+        return newFetcher;
+    }
+
+    private void awaitStale(boolean stale) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (fetcher.isStale() != stale && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(stale, fetcher.isStale());
+    }
+
+    private static List<Integer> ids(int first, int count) {
+        List<Integer> ids = new ArrayList<Integer>(count);
+        for (int id = first; id < first + count; id++) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+}
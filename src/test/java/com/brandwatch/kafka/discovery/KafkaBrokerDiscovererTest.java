@@ -1,8 +1,21 @@
 package com.brandwatch.kafka.discovery;
 
+import java.net.ConnectException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.runners.MockitoJUnitRunner;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -14,6 +27,15 @@ public class KafkaBrokerDiscovererTest {
     @Mock
     private BrokerInfoFetcher brokerInfoFetcher;
 
+    @Mock
+    private ScheduledExecutorService retryExecutor;
+
+    @Mock
+    private ExecutorService snapshotWriter;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @SuppressWarnings("resource")
     @Test(expected = NullPointerException.class)
     public void whenGivenANullHost_getConnectionString_throwsANullPointerException()
@@ -27,4 +49,257 @@ public class KafkaBrokerDiscovererTest {
             throws Exception {
         new KafkaBrokerDiscoverer("host1", null);
     }
+
+    @Test
+    public void whenBrokersAreFetched_getConnectionString_returnsThePreRenderedString()
+            throws Exception {
+        Mockito.when(brokerInfoFetcher.getBootstrapBrokers()).thenReturn(
+                Arrays.asList(makeBroker(1, "host1")));
+
+        KafkaBrokerDiscoverer discoverer = new KafkaBrokerDiscoverer(brokerInfoFetcher);
+
+        Assert.assertEquals("host1:9092", discoverer.getConnectionString());
+        Assert.assertSame(discoverer.getConnectionString(), discoverer.getConnectionString());
+        Assert.assertEquals(1, discoverer.getSnapshot().getVersion());
+        discoverer.close();
+    }
+
+    @Test
+    public void whenTheBrokersChange_getConnectionString_returnsANewVersion() throws Exception {
+        Mockito.when(brokerInfoFetcher.getBootstrapBrokers()).thenReturn(
+                Arrays.asList(makeBroker(1, "host1")));
+        KafkaBrokerDiscoverer discoverer = new KafkaBrokerDiscoverer(brokerInfoFetcher);
+
+        List<BrokerInfo> changed = Arrays.asList(makeBroker(1, "host1"), makeBroker(2, "host2"));
+        Mockito.when(brokerInfoFetcher.getBootstrapBrokers()).thenReturn(changed);
+        captureListener().brokersChanged(changed);
+
+        Assert.assertEquals("host1:9092,host2:9092", discoverer.getConnectionString());
+        Assert.assertEquals(2, discoverer.getSnapshot().getVersion());
+        discoverer.close();
+    }
+
+    @Test
+    public void whenTheBootstrapHostsAreUnchanged_getConnectionString_reusesTheRenderedString()
+            throws Exception {
+        Mockito.when(brokerInfoFetcher.getBootstrapBrokers()).thenReturn(
+                Arrays.asList(makeBroker(1, "host1")));
+        KafkaBrokerDiscoverer discoverer = new KafkaBrokerDiscoverer(brokerInfoFetcher);
+        String connectionString = discoverer.getConnectionString();
+
+        List<BrokerInfo> reRegistered = Arrays.asList(makeBroker(1, "host1"));
+        Mockito.when(brokerInfoFetcher.getBootstrapBrokers()).thenReturn(reRegistered);
+        captureListener().brokersChanged(reRegistered);
+
+        Assert.assertSame(connectionString, discoverer.getConnectionString());
+        Assert.assertSame(reRegistered, discoverer.getBrokers());
+        discoverer.close();
+    }
+
+    @Test
+    public void givenAStoredSnapshot_constructor_servesItUntilTheLiveBrokersArrive()
+            throws Exception {
+        BrokerSnapshotStore store = new BrokerSnapshotStore(temporaryFolder.getRoot().toPath()
+            .resolve("brokers.snapshot"));
+        store.write(Arrays.asList(makeBroker(1, "stored1")));
+        CompletableFuture<List<BrokerInfo>> live = new CompletableFuture<List<BrokerInfo>>();
+        Mockito.when(brokerInfoFetcher.fetchBrokerInfoAsync()).thenReturn(live);
+
+        KafkaBrokerDiscoverer discoverer = makeDiscoverer(store);
+        Assert.assertEquals("stored1:9092", discoverer.getConnectionString());
+        Mockito.verify(brokerInfoFetcher, Mockito.never()).fetchBrokerInfo();
+
+        List<BrokerInfo> liveBrokers = Arrays.asList(makeBroker(2, "live2"));
+        Mockito.when(brokerInfoFetcher.getBootstrapBrokers()).thenReturn(liveBrokers);
+        live.complete(liveBrokers);
+
+        Assert.assertEquals("live2:9092", discoverer.getConnectionString());
+        Assert.assertEquals("stored1", store.read().get(0).getHost());
+        runWrites(1);
+        Assert.assertEquals("live2", store.read().get(0).getHost());
+        discoverer.close();
+    }
+
+    @Test
+    public void givenAStoredSnapshotAndNoZookeeper_constructor_retriesAndReportsStale()
+            throws Exception {
+        BrokerSnapshotStore store = new BrokerSnapshotStore(temporaryFolder.getRoot().toPath()
+            .resolve("brokers.snapshot"));
+        store.write(Arrays.asList(makeBroker(1, "stored1")));
+        CompletableFuture<List<BrokerInfo>> failed = new CompletableFuture<List<BrokerInfo>>();
+        failed.completeExceptionally(new ConnectException());
+        List<BrokerInfo> liveBrokers = Arrays.asList(makeBroker(2, "live2"));
+        Mockito.when(brokerInfoFetcher.fetchBrokerInfoAsync()).thenReturn(failed)
+            .thenReturn(failed).thenReturn(CompletableFuture.completedFuture(liveBrokers));
+        Mockito.when(brokerInfoFetcher.getBootstrapBrokers()).thenReturn(liveBrokers);
+
+        KafkaBrokerDiscoverer discoverer = new KafkaBrokerDiscoverer(brokerInfoFetcher, store) {
+
+            @Override
+            ScheduledExecutorService makeRetryExecutor() {
+                return retryExecutor;
+            }
+
+            @Override
+            ExecutorService makeSnapshotWriter() {
+                return snapshotWriter;
+            }
+        };
+        Assert.assertEquals("stored1:9092", discoverer.getConnectionString());
+        Assert.assertTrue(discoverer.isStale());
+
+        captureRetry(1, KafkaBrokerDiscoverer.INITIAL_RETRY_DELAY_MILLIS).run();
+        Assert.assertTrue(discoverer.isStale());
+        captureRetry(2, KafkaBrokerDiscoverer.INITIAL_RETRY_DELAY_MILLIS * 2).run();
+
+        Assert.assertEquals("live2:9092", discoverer.getConnectionString());
+        Assert.assertFalse(discoverer.isStale());
+        discoverer.close();
+        Mockito.verify(retryExecutor).shutdownNow();
+    }
+
+    @Test
+    public void givenAnEmptySnapshotStore_constructor_fetchesTheLiveBrokers() throws Exception {
+        BrokerSnapshotStore store = new BrokerSnapshotStore(temporaryFolder.getRoot().toPath()
+            .resolve("brokers.snapshot"));
+        Mockito.when(brokerInfoFetcher.getBootstrapBrokers()).thenReturn(
+                Arrays.asList(makeBroker(1, "host1")));
+
+        KafkaBrokerDiscoverer discoverer = makeDiscoverer(store);
+
+        Mockito.verify(brokerInfoFetcher).fetchBrokerInfo();
+        Assert.assertEquals("host1:9092", discoverer.getConnectionString());
+        runWrites(1);
+        Assert.assertEquals(1, store.read().size());
+        discoverer.close();
+    }
+
+    @Test
+    public void whenATopicHasLeaders_getLeaderConnectionString_returnsJustTheLeaders()
+            throws Exception {
+        Mockito.when(brokerInfoFetcher.getBootstrapBrokers()).thenReturn(
+                Arrays.asList(makeBroker(1, "host1")));
+        Mockito.when(brokerInfoFetcher.getBrokerTable()).thenReturn(BrokerTable.of(Arrays.asList(
+                makeBroker(1, "host1"), makeBroker(2, "host2"), makeBroker(3, "host3"))));
+        ClusterStateCache clusterState = Mockito.mock(ClusterStateCache.class);
+        TopicLeaderCache leaders = Mockito.mock(TopicLeaderCache.class);
+        Mockito.when(leaders.getLeaders()).thenReturn(new int[] { 3, 2, 3,
+            TopicLeaderCache.NO_LEADER });
+        Mockito.when(clusterState.watchTopic("events")).thenReturn(
+                CompletableFuture.completedFuture(leaders));
+        Mockito.when(brokerInfoFetcher.getClusterState()).thenReturn(clusterState);
+        KafkaBrokerDiscoverer discoverer = new KafkaBrokerDiscoverer(brokerInfoFetcher);
+
+        Assert.assertEquals("host2:9092,host3:9092", discoverer.getLeaderConnectionString(
+                "events"));
+        discoverer.close();
+    }
+
+    @Test
+    public void whenNoLeaderIsRegistered_getLeaderConnectionString_returnsTheConnectionString()
+            throws Exception {
+        Mockito.when(brokerInfoFetcher.getBootstrapBrokers()).thenReturn(
+                Arrays.asList(makeBroker(1, "host1")));
+        Mockito.when(brokerInfoFetcher.getBrokerTable()).thenReturn(BrokerTable.EMPTY);
+        ClusterStateCache clusterState = Mockito.mock(ClusterStateCache.class);
+        TopicLeaderCache leaders = Mockito.mock(TopicLeaderCache.class);
+        Mockito.when(leaders.getLeaders()).thenReturn(new int[] { 4 });
+        Mockito.when(clusterState.watchTopic("events")).thenReturn(
+                CompletableFuture.completedFuture(leaders));
+        Mockito.when(brokerInfoFetcher.getClusterState()).thenReturn(clusterState);
+        KafkaBrokerDiscoverer discoverer = new KafkaBrokerDiscoverer(brokerInfoFetcher);
+
+        Assert.assertEquals("host1:9092", discoverer.getLeaderConnectionString("events"));
+        discoverer.close();
+    }
+
+    @Test
+    public void whenTheBootstrapBrokersDoNotChange_publishing_savesThemOnlyOnce()
+            throws Exception {
+        BrokerSnapshotStore store = new BrokerSnapshotStore(temporaryFolder.getRoot().toPath()
+            .resolve("brokers.snapshot"));
+        List<BrokerInfo> brokers = Arrays.asList(makeBroker(1, "host1"));
+        Mockito.when(brokerInfoFetcher.getBootstrapBrokers()).thenReturn(brokers);
+        KafkaBrokerDiscoverer discoverer = makeDiscoverer(store);
+
+        captureListener().brokersChanged(brokers);
+        List<BrokerInfo> reRegistered = Arrays.asList(makeBroker(1, "host1"));
+        Mockito.when(brokerInfoFetcher.getBootstrapBrokers()).thenReturn(reRegistered);
+        captureListener().brokersChanged(reRegistered);
+        runWrites(1);
+        List<BrokerInfo> moved = Arrays.asList(makeBroker(1, "host2"));
+        Mockito.when(brokerInfoFetcher.getBootstrapBrokers()).thenReturn(moved);
+        captureListener().brokersChanged(moved);
+
+        Assert.assertEquals("host1", store.read().get(0).getHost());
+        runWrites(2);
+        Assert.assertEquals("host2", store.read().get(0).getHost());
+        discoverer.close();
+        Mockito.verify(snapshotWriter).shutdown();
+    }
+
+    @Test
+    public void whenClosed_theCoalescingSubscriptions_stopListeningToTheFetcher()
+            throws Exception {
+        Mockito.when(brokerInfoFetcher.getBootstrapBrokers()).thenReturn(
+                Arrays.asList(makeBroker(1, "host1")));
+        KafkaBrokerDiscoverer discoverer = new KafkaBrokerDiscoverer(brokerInfoFetcher);
+        discoverer.onBrokersChanged(Mockito.mock(BrokerChangeEventListener.class));
+        ArgumentCaptor<BrokerChangeListener> captor = ArgumentCaptor
+            .forClass(BrokerChangeListener.class);
+        Mockito.verify(brokerInfoFetcher, Mockito.times(2)).addBrokerChangeListener(
+                captor.capture());
+        BrokerChangeListener subscription = captor.getAllValues().get(1);
+
+        discoverer.close();
+
+        Mockito.verify(brokerInfoFetcher).removeBrokerChangeListener(subscription);
+        subscription.brokersChanged(Arrays.asList(makeBroker(2, "host2")));
+    }
+
+    /**
+     * Snapshots are written on the discoverer's own thread; this hands them to the test instead.
+     */
+    private KafkaBrokerDiscoverer makeDiscoverer(BrokerSnapshotStore store) throws Exception {
+        return new KafkaBrokerDiscoverer(brokerInfoFetcher, store) {
+
+            @Override
+            ExecutorService makeSnapshotWriter() {
+                return snapshotWriter;
+            }
+        };
+    }
+
+    /**
+     * Checks how many writes have been handed to the snapshot writer, and runs the latest.
+     */
+    private void runWrites(int writes) {
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        Mockito.verify(snapshotWriter, Mockito.times(writes)).execute(captor.capture());
+        captor.getAllValues().get(writes - 1).run();
+    }
+
+    private Runnable captureRetry(int retries, long delayMillis) {
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        Mockito.verify(retryExecutor, Mockito.times(retries)).schedule(captor.capture(),
+                Mockito.anyLong(), Mockito.eq(TimeUnit.MILLISECONDS));
+        Mockito.verify(retryExecutor).schedule(Mockito.any(Runnable.class),
+                Mockito.eq(delayMillis), Mockito.eq(TimeUnit.MILLISECONDS));
+        return captor.getValue();
+    }
+
+    private BrokerChangeListener captureListener() {
+        ArgumentCaptor<BrokerChangeListener> captor = ArgumentCaptor
+            .forClass(BrokerChangeListener.class);
+        Mockito.verify(brokerInfoFetcher).addBrokerChangeListener(captor.capture());
+        return captor.getValue();
+    }
+
+    private BrokerInfo makeBroker(int id, String host) {
+        BrokerInfo brokerInfo = new BrokerInfo();
+        brokerInfo.setId(id);
+        brokerInfo.setHost(host);
+        brokerInfo.setPort(9092);
+        return brokerInfo;
+    }
 }
@@ -0,0 +1,41 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+public class LatencyAwareSelectionStrategyTest {
+
+    @Test
+    public void whenClosed_close_stopsListeningToTheFetcher() {
+        BrokerInfoFetcher fetcher = Mockito.mock(BrokerInfoFetcher.class);
+        LatencyAwareSelectionStrategy strategy = new LatencyAwareSelectionStrategy(
+                new LowestIdSelectionStrategy(), 3);
+        strategy.startRefreshing(fetcher, 1, TimeUnit.HOURS);
+        ArgumentCaptor<BrokerChangeListener> listener =
+                ArgumentCaptor.forClass(BrokerChangeListener.class);
+        Mockito.verify(fetcher).addBrokerChangeListener(listener.capture());
+
+        strategy.close();
+
+        Mockito.verify(fetcher).removeBrokerChangeListener(listener.getValue());
+    }
+
+    @Test
+    public void givenAPublicationRacingClose_brokersChanged_doesNotThrow() {
+        BrokerInfoFetcher fetcher = Mockito.mock(BrokerInfoFetcher.class);
+        LatencyAwareSelectionStrategy strategy = new LatencyAwareSelectionStrategy(
+                new LowestIdSelectionStrategy(), 3);
+        strategy.startRefreshing(fetcher, 1, TimeUnit.HOURS);
+        ArgumentCaptor<BrokerChangeListener> listener =
+                ArgumentCaptor.forClass(BrokerChangeListener.class);
+        Mockito.verify(fetcher).addBrokerChangeListener(listener.capture());
+        strategy.close();
+
+        listener.getValue().brokersChanged(Collections.<BrokerInfo> emptyList());
+    }
+
+}
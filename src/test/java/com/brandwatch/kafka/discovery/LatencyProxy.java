@@ -0,0 +1,182 @@
+package com.brandwatch.kafka.discovery;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A TCP proxy for tests that sits between a client and a Zookeeper server and can slow down or
+ * cut the connection between them.
+ * <p>
+ * Every chunk of bytes is held for the configured one-way latency before being passed on, in
+ * both directions, so a round trip costs twice the latency however many requests are in
+ * flight; pipelined requests are delayed, not serialised. Dropping the connections looks to
+ * the client like a network failure, and while the proxy is blocked new connections are
+ * closed as soon as they are accepted, as during a partition.
+ */
+class LatencyProxy implements Closeable {
+
+    private final InetSocketAddress target;
+    private final ServerSocket serverSocket;
+    private final List<Socket> sockets = new CopyOnWriteArrayList<Socket>();
+    private volatile long latencyNanos = 0;
+    private volatile boolean blocked = false;
+
+    LatencyProxy(InetSocketAddress target) throws IOException {
+        this.target = target;
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(new Runnable() {
+
+            public void run() {
+                acceptConnections();
+            }
+        }, "latency-proxy-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    String getConnectString() {
+        return "127.0.0.1:" + serverSocket.getLocalPort();
+    }
+
+    void setLatency(long latency, TimeUnit unit) {
+        latencyNanos = unit.toNanos(latency);
+    }
+
+    /**
+     * Closes every open connection. If <code>blocked</code>, reconnection attempts are closed
+     * too until this is called again with false.
+     */
+    void dropConnections(boolean blocked) {
+        this.blocked = blocked;
+        for (Socket socket : sockets) {
+            closeQuietly(socket);
+        }
+        sockets.clear();
+    }
+
+    void unblock() {
+        blocked = false;
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            Socket client;
+            try {
+                client = serverSocket.accept();
+            } catch (IOException e) {
+                // Closed
+                return;
+            }
+            if (blocked) {
+                closeQuietly(client);
+                continue;
+            }
+            try {
+                Socket server = new Socket(target.getAddress(), target.getPort());
+                client.setTcpNoDelay(true);
+                server.setTcpNoDelay(true);
+                sockets.addAll(Arrays.asList(client, server));
+                relay(client, server);
+                relay(server, client);
+            } catch (IOException e) {
+                closeQuietly(client);
+            }
+        }
+    }
+
+    /**
+     * One thread reads and timestamps chunks; another releases each chunk once it is due.
+     */
+    private void relay(final Socket from, final Socket to) throws IOException {
+        final InputStream in = from.getInputStream();
+        final OutputStream out = to.getOutputStream();
+        final BlockingQueue<Chunk> queue = new LinkedBlockingQueue<Chunk>();
+        Thread reader = new Thread(new Runnable() {
+
+            public void run() {
+                byte[] buffer = new byte[64 * 1024];
+                try {
+                    int read;
+                    while ((read = in.read(buffer)) >= 0) {
+                        queue.put(new Chunk(Arrays.copyOf(buffer, read), System.nanoTime()
+                                + latencyNanos));
+                    }
+                } catch (IOException e) {
+                    // The connection has been dropped
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    queue.add(Chunk.END);
+                }
+            }
+        }, "latency-proxy-reader");
+        Thread writer = new Thread(new Runnable() {
+
+            public void run() {
+                try {
+                    Chunk chunk;
+                    while ((chunk = queue.take()) != Chunk.END) {
+                        long wait = chunk.dueNanos - System.nanoTime();
+                        if (wait > 0) {
+                            TimeUnit.NANOSECONDS.sleep(wait);
+                        }
+                        out.write(chunk.data);
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    // The connection has been dropped
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    closeQuietly(from);
+                    closeQuietly(to);
+                    sockets.remove(from);
+                    sockets.remove(to);
+                }
+            }
+        }, "latency-proxy-writer");
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+        reader.start();
+        writer.start();
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    public void close() throws IOException {
+        serverSocket.close();
+        dropConnections(true);
+    }
+
+    private static final class Chunk {
+
+        static final Chunk END = new Chunk(new byte[0], 0);
+
+        final byte[] data;
+        final long dueNanos;
+
+        Chunk(byte[] data, long dueNanos) {
+            this.data = data;
+            this.dueNanos = dueNanos;
+        }
+    }
+
+}
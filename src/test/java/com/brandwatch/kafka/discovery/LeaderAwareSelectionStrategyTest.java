@@ -0,0 +1,140 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LeaderAwareSelectionStrategyTest {
+
+    @Mock
+    private BrokerInfoFetcher fetcher;
+
+    @Mock
+    private ClusterStateCache clusterState;
+
+    @Mock
+    private TopicLeaderCache events;
+
+    @Mock
+    private TopicLeaderCache clicks;
+
+    private List<BrokerInfo> brokers;
+    private LeaderAwareSelectionStrategy strategy;
+
+    @Before
+    public void setup() {
+        brokers = new ArrayList<BrokerInfo>();
+        for (int id = 1; id <= 5; id++) {
+            BrokerInfo brokerInfo = new BrokerInfo();
+            brokerInfo.setId(id);
+            brokerInfo.setHost("host" + id);
+            brokerInfo.setPort(9092);
+            brokers.add(brokerInfo);
+        }
+        Mockito.when(fetcher.getClusterState()).thenReturn(clusterState);
+        Mockito.when(fetcher.getAllBrokers()).thenReturn(brokers);
+        stubTopic("events", events, new int[] { 5, 4, 5 });
+        stubTopic("clicks", clicks, new int[] { 5, 2, TopicLeaderCache.NO_LEADER });
+        strategy = new LeaderAwareSelectionStrategy(Arrays.asList("events", "clicks"));
+    }
+
+    @Test
+    public void givenAStrategyThatIsNotAttached_select_usesTheFallbackStrategy() {
+        Assert.assertEquals(Arrays.asList(1, 2, 3), ids(strategy.select(brokers)));
+    }
+
+    @Test
+    public void givenAnAttachedStrategy_select_ranksBrokersByLeadersHeld() throws Exception {
+        strategy.attachTo(fetcher).get();
+
+        Assert.assertEquals(Arrays.asList(5, 2, 4), ids(strategy.select(brokers)));
+    }
+
+    @Test
+    public void whenATopicIsUnwatchedDuringAttaching_attachTo_listensToTheCacheItStarted()
+            throws Exception {
+        Mockito.when(clusterState.getTopic(Mockito.anyString())).thenReturn(null);
+
+        strategy.attachTo(fetcher).get();
+
+        Mockito.verify(events).start();
+        captureListener(events);
+        Assert.assertEquals(Arrays.asList(5, 2, 4), ids(strategy.select(brokers)));
+    }
+
+    @Test
+    public void givenFewerLeadersThanRequested_select_fillsInFromTheFallbackStrategy()
+            throws Exception {
+        Mockito.when(clicks.getLeaders()).thenReturn(new int[0]);
+        strategy.attachTo(fetcher).get();
+
+        Assert.assertEquals(Arrays.asList(5, 4, 1), ids(strategy.select(brokers)));
+    }
+
+    @Test
+    public void givenALeaderChangeThatChangesTheSelection_leadersChanged_reselects()
+            throws Exception {
+        strategy.attachTo(fetcher).get();
+        Mockito.reset(fetcher);
+        Mockito.when(fetcher.getAllBrokers()).thenReturn(brokers);
+        TopicLeaderListener listener = captureListener(events);
+
+        Mockito.when(events.getLeaders()).thenReturn(new int[] { 3, 3, 3 });
+        listener.leadersChanged(events);
+
+        Mockito.verify(fetcher).reselect();
+    }
+
+    @Test
+    public void givenALeaderChangeThatKeepsTheSelection_leadersChanged_doesNotReselect()
+            throws Exception {
+        strategy.attachTo(fetcher).get();
+        Mockito.reset(fetcher);
+        Mockito.when(fetcher.getAllBrokers()).thenReturn(brokers);
+        TopicLeaderListener listener = captureListener(events);
+
+        Mockito.when(events.getLeaders()).thenReturn(new int[] { 5, 5, 4 });
+        listener.leadersChanged(events);
+
+        Mockito.verify(fetcher, Mockito.never()).reselect();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void givenNoTopics_constructor_throws() {
+        new LeaderAwareSelectionStrategy(new ArrayList<String>());
+    }
+
+    private void stubTopic(String topic, TopicLeaderCache topicLeaders, int[] leaders) {
+        Mockito.when(clusterState.topicCache(topic)).thenReturn(topicLeaders);
+        Mockito.when(topicLeaders.start()).thenReturn(
+                CompletableFuture.completedFuture(topicLeaders));
+        Mockito.when(topicLeaders.getLeaders()).thenReturn(leaders);
+    }
+
+    private TopicLeaderListener captureListener(TopicLeaderCache topic) {
+        ArgumentCaptor<TopicLeaderListener> listener =
+                ArgumentCaptor.forClass(TopicLeaderListener.class);
+        Mockito.verify(topic).addLeaderListener(listener.capture());
+        return listener.getValue();
+    }
+
+    private static List<Integer> ids(List<BrokerInfo> brokers) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (BrokerInfo brokerInfo : brokers) {
+            ids.add(brokerInfo.getId());
+        }
+        return ids;
+    }
+
+}
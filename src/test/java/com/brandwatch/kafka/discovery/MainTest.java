@@ -0,0 +1,84 @@
+package com.brandwatch.kafka.discovery;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.google.common.base.Charsets;
+
+public class MainTest {
+
+    private static final String NEWLINE = System.getProperty("line.separator");
+
+    private KafkaBrokerDiscoverer discoverer;
+    private ByteArrayOutputStream output;
+    private CountDownLatch finished;
+
+    @Before
+    public void setup() {
+        discoverer = Mockito.mock(KafkaBrokerDiscoverer.class);
+        output = new ByteArrayOutputStream();
+        finished = new CountDownLatch(1);
+    }
+
+    @Test
+    public void givenAnEmptyCluster_brokersChanged_printsAnEmptyLine() throws Exception {
+        Main.ChangePrinter printer = makePrinter(false);
+        givenConnectionString(null);
+
+        printer.brokersChanged(noChange());
+
+        Assert.assertEquals(NEWLINE, printed());
+        Assert.assertEquals(1, finished.getCount());
+    }
+
+    @Test
+    public void whenEveryBrokerDeregisters_brokersChanged_printsAnEmptyLine() throws Exception {
+        Main.ChangePrinter printer = makePrinter(false);
+
+        givenConnectionString("kafka1:9092");
+        printer.brokersChanged(noChange());
+        givenConnectionString(null);
+        printer.brokersChanged(noChange());
+        printer.brokersChanged(noChange());
+
+        Assert.assertEquals("kafka1:9092" + NEWLINE + NEWLINE, printed());
+    }
+
+    @Test
+    public void givenAnEmptyClusterInJson_brokersChanged_printsANullConnectionString()
+            throws Exception {
+        Main.ChangePrinter printer = makePrinter(true);
+        givenConnectionString(null);
+
+        printer.brokersChanged(noChange());
+
+        Assert.assertEquals("{\"connectionString\":null,\"added\":[],\"removed\":[],"
+                + "\"updated\":[]}" + NEWLINE, printed());
+    }
+
+    private Main.ChangePrinter makePrinter(boolean json) {
+        return new Main.ChangePrinter(discoverer, json, new PrintStream(output, true), finished);
+    }
+
+    private void givenConnectionString(String connectionString) {
+        Mockito.when(discoverer.getSnapshot()).thenReturn(new BrokerSnapshot(1,
+                Collections.<BrokerInfo> emptyList(), connectionString, 0));
+    }
+
+    private BrokerChangeEvent noChange() {
+        List<BrokerInfo> none = Collections.emptyList();
+        return BrokerChangeEvent.between(none, none);
+    }
+
+    private String printed() {
+        return new String(output.toByteArray(), Charsets.UTF_8);
+    }
+}
@@ -0,0 +1,69 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.Arrays;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class MultiClusterDiscovererTest {
+
+    private ZookeeperConnectionRegistry registry;
+    private MultiClusterDiscoverer discoverer;
+
+    @Before
+    public void setup() {
+        registry = new ZookeeperConnectionRegistry() {
+
+            @Override
+            CuratorFramework makeCuratorFramework(String hostAndPort) {
+                return Mockito.mock(CuratorFramework.class);
+            }
+        };
+        discoverer = new MultiClusterDiscoverer("zookeeper:2181", registry);
+    }
+
+    @Test
+    public void givenTwoClusters_getConnectionString_answersForEach() throws Exception {
+        discoverer.addCluster("logs", makeDiscoverer("logs1"));
+        discoverer.addCluster("metrics", makeDiscoverer("metrics1"));
+
+        Assert.assertEquals("logs1:9092", discoverer.getConnectionString("logs"));
+        Assert.assertEquals("metrics1:9092", discoverer.getConnectionString("metrics"));
+        Assert.assertEquals(1, registry.getSessionCount());
+        discoverer.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void givenAnUnknownCluster_getConnectionString_throwsAnIllegalArgumentException()
+            throws Exception {
+        discoverer.getConnectionString("logs");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void givenADuplicateName_addCluster_throwsAnIllegalArgumentException()
+            throws Exception {
+        discoverer.addCluster("logs", makeDiscoverer("logs1"));
+        discoverer.addCluster("logs", makeDiscoverer("logs2"));
+    }
+
+    @Test
+    public void whenClosed_close_releasesTheSession() throws Exception {
+        discoverer.addCluster("logs", makeDiscoverer("logs1"));
+        discoverer.close();
+
+        Assert.assertTrue(discoverer.getClusterNames().isEmpty());
+        Assert.assertEquals(0, registry.getSessionCount());
+    }
+
+    private KafkaBrokerDiscoverer makeDiscoverer(String host) throws Exception {
+        BrokerInfo brokerInfo = new BrokerInfo();
+        brokerInfo.setHost(host);
+        brokerInfo.setPort(9092);
+        BrokerInfoFetcher fetcher = Mockito.mock(BrokerInfoFetcher.class);
+        Mockito.when(fetcher.getBootstrapBrokers()).thenReturn(Arrays.asList(brokerInfo));
+        return new KafkaBrokerDiscoverer(fetcher);
+    }
+}
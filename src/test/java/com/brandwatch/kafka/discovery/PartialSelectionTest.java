@@ -0,0 +1,48 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PartialSelectionTest {
+
+    private static final Comparator<Integer> NATURAL_ORDER = new Comparator<Integer>() {
+
+        public int compare(Integer left, Integer right) {
+            return left.compareTo(right);
+        }
+    };
+
+    @Test
+    public void givenAnEmptyList_smallest_returnsAnEmptyList() {
+        Assert.assertTrue(PartialSelection.smallest(new ArrayList<Integer>(), 3, NATURAL_ORDER)
+            .isEmpty());
+    }
+
+    @Test
+    public void givenFewerItemsThanRequested_smallest_returnsThemAllInOrder() {
+        List<Integer> result = PartialSelection.smallest(Arrays.asList(5, 1, 3), 10,
+                NATURAL_ORDER);
+        Assert.assertEquals(Arrays.asList(1, 3, 5), result);
+    }
+
+    @Test
+    public void givenShuffledItems_smallest_returnsTheSmallestInOrder() {
+        Random random = new Random(42);
+        for (int attempt = 0; attempt < 100; attempt++) {
+            List<Integer> items = new ArrayList<Integer>();
+            for (int i = 0; i < 1000; i++) {
+                items.add(i);
+            }
+            Collections.shuffle(items, random);
+            Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4),
+                    PartialSelection.smallest(items, 5, NATURAL_ORDER));
+        }
+    }
+}
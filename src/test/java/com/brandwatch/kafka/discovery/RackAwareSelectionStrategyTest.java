@@ -0,0 +1,117 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RackAwareSelectionStrategyTest {
+
+    @Test
+    public void givenBrokersInSeveralRacks_select_takesOneFromEachRackFirst() {
+        List<BrokerInfo> brokers = new ArrayList<BrokerInfo>();
+        brokers.add(makeBroker(1, "a"));
+        brokers.add(makeBroker(2, "a"));
+        brokers.add(makeBroker(3, "a"));
+        brokers.add(makeBroker(4, "b"));
+        brokers.add(makeBroker(5, "c"));
+
+        List<BrokerInfo> selected = new RackAwareSelectionStrategy(4).select(brokers);
+
+        Assert.assertEquals(4, selected.size());
+        Assert.assertEquals(1, selected.get(0).getId());
+        Assert.assertEquals(4, selected.get(1).getId());
+        Assert.assertEquals(5, selected.get(2).getId());
+        Assert.assertEquals(2, selected.get(3).getId());
+    }
+
+    @Test
+    public void givenBrokersWithoutRacks_select_behavesLikeLowestIds() {
+        List<BrokerInfo> brokers = new ArrayList<BrokerInfo>();
+        for (int id = 1; id <= 5; id++) {
+            brokers.add(makeBroker(id, null));
+        }
+
+        List<BrokerInfo> selected = new RackAwareSelectionStrategy().select(brokers);
+
+        Assert.assertEquals(3, selected.size());
+        Assert.assertEquals(1, selected.get(0).getId());
+        Assert.assertEquals(3, selected.get(2).getId());
+    }
+
+    @Test
+    public void givenAClientId_select_stillTakesOneFromEachRackFirst() {
+        List<BrokerInfo> brokers = makeRacks(3, 10);
+
+        List<BrokerInfo> selected = new RackAwareSelectionStrategy("client-1", 3).select(brokers);
+
+        Set<String> racks = new HashSet<String>();
+        for (BrokerInfo brokerInfo : selected) {
+            racks.add(brokerInfo.getRack());
+        }
+        Assert.assertEquals(3, racks.size());
+        Assert.assertEquals(selected,
+                new RackAwareSelectionStrategy("client-1", 3).select(brokers));
+    }
+
+    @Test
+    public void givenManyClientIds_select_spreadsThemAcrossTheBrokersInEachRack() {
+        List<BrokerInfo> brokers = makeRacks(3, 10);
+        Set<Integer> chosen = new HashSet<Integer>();
+
+        for (int client = 0; client < 100; client++) {
+            for (BrokerInfo brokerInfo : new RackAwareSelectionStrategy("client-" + client, 3)
+                    .select(brokers)) {
+                chosen.add(brokerInfo.getId());
+            }
+        }
+
+        Assert.assertTrue("Only " + chosen + " were chosen", chosen.size() > 20);
+    }
+
+    @Test
+    public void givenAClientId_select_takesEachRacksHighestScoringBrokersInTurn() {
+        List<BrokerInfo> brokers = makeRacks(2, 10);
+        long clientHash = ConsistentHashSelectionStrategy.hashClientId("client-1");
+        BrokerInfo[] best = new BrokerInfo[2];
+        BrokerInfo[] second = new BrokerInfo[2];
+        for (BrokerInfo brokerInfo : brokers) {
+            int rack = brokerInfo.getId() % 2;
+            long score = ConsistentHashSelectionStrategy.score(clientHash, brokerInfo);
+            if (best[rack] == null
+                    || score > ConsistentHashSelectionStrategy.score(clientHash, best[rack])) {
+                second[rack] = best[rack];
+                best[rack] = brokerInfo;
+            } else if (second[rack] == null
+                    || score > ConsistentHashSelectionStrategy.score(clientHash, second[rack])) {
+                second[rack] = brokerInfo;
+            }
+        }
+
+        List<BrokerInfo> selected = new RackAwareSelectionStrategy("client-1", 4).select(brokers);
+
+        int first = ConsistentHashSelectionStrategy.score(clientHash, best[0])
+                > ConsistentHashSelectionStrategy.score(clientHash, best[1]) ? 0 : 1;
+        Assert.assertEquals(Arrays.asList(best[first], best[1 - first], second[first],
+                second[1 - first]), selected);
+    }
+
+    private List<BrokerInfo> makeRacks(int rackCount, int brokersPerRack) {
+        List<BrokerInfo> brokers = new ArrayList<BrokerInfo>();
+        for (int id = 1; id <= rackCount * brokersPerRack; id++) {
+            brokers.add(makeBroker(id, "rack" + (id % rackCount)));
+        }
+        return brokers;
+    }
+
+    private BrokerInfo makeBroker(int id, String rack) {
+        BrokerInfo brokerInfo = new BrokerInfo();
+        brokerInfo.setId(id);
+        brokerInfo.setRack(rack);
+        return brokerInfo;
+    }
+}
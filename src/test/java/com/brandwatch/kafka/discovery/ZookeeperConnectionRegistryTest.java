@@ -0,0 +1,69 @@
+package com.brandwatch.kafka.discovery;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class ZookeeperConnectionRegistryTest {
+
+    private ZookeeperConnectionRegistry registry;
+
+    @Before
+    public void setup() {
+        registry = new ZookeeperConnectionRegistry() {
+
+            @Override
+            CuratorFramework makeCuratorFramework(String hostAndPort) {
+                return Mockito.mock(CuratorFramework.class);
+            }
+        };
+    }
+
+    @Test
+    public void givenTheSameConnectString_acquire_sharesOneClient() {
+        ZookeeperConnector first = registry.acquire("zookeeper:2181");
+        ZookeeperConnector second = registry.acquire("zookeeper:2181");
+        Assert.assertSame(first.getCuratorFramework(), second.getCuratorFramework());
+        Assert.assertEquals(2, registry.getReferenceCount("zookeeper:2181"));
+        Assert.assertEquals(1, registry.getSessionCount());
+    }
+
+    @Test
+    public void givenDifferentConnectStrings_acquire_opensSeparateClients() {
+        ZookeeperConnector first = registry.acquire("zookeeper1:2181");
+        ZookeeperConnector second = registry.acquire("zookeeper2:2181");
+        Assert.assertNotSame(first.getCuratorFramework(), second.getCuratorFramework());
+        Assert.assertEquals(2, registry.getSessionCount());
+    }
+
+    @Test
+    public void givenOtherUsers_close_leavesTheClientOpen() {
+        ZookeeperConnector first = registry.acquire("zookeeper:2181");
+        registry.acquire("zookeeper:2181");
+        first.close();
+        Mockito.verify(first.getCuratorFramework(), Mockito.never()).close();
+        Assert.assertEquals(1, registry.getReferenceCount("zookeeper:2181"));
+    }
+
+    @Test
+    public void givenTheLastUser_close_closesTheClient() {
+        ZookeeperConnector first = registry.acquire("zookeeper:2181");
+        ZookeeperConnector second = registry.acquire("zookeeper:2181");
+        first.close();
+        second.close();
+        Mockito.verify(first.getCuratorFramework()).close();
+        Assert.assertEquals(0, registry.getSessionCount());
+    }
+
+    @Test
+    public void givenAConnectorClosedTwice_close_releasesOnlyOneReference() {
+        ZookeeperConnector first = registry.acquire("zookeeper:2181");
+        registry.acquire("zookeeper:2181");
+        first.close();
+        first.close();
+        Mockito.verify(first.getCuratorFramework(), Mockito.never()).close();
+        Assert.assertEquals(1, registry.getReferenceCount("zookeeper:2181"));
+    }
+}
@@ -0,0 +1,41 @@
+package com.brandwatch.kafka.discovery;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.CuratorZookeeperClient;
+import org.apache.curator.retry.RetryOneTime;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ZookeeperSettingsTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void givenANonPositiveTimeout_constructor_throwsAnIllegalArgumentException() {
+        new ZookeeperSettings(0, 1, TimeUnit.SECONDS, new RetryOneTime(100));
+    }
+
+    @Test
+    public void givenSettings_newCuratorFramework_appliesThem() {
+        RetryOneTime retryPolicy = new RetryOneTime(100);
+        ZookeeperSettings settings = new ZookeeperSettings(10, 2, TimeUnit.SECONDS, retryPolicy);
+
+        ZookeeperConnector connector = new ZookeeperConnector("localhost:1", settings);
+        try {
+            CuratorZookeeperClient client = connector.getCuratorFramework().getZookeeperClient();
+            Assert.assertEquals(2000, client.getConnectionTimeoutMs());
+            Assert.assertSame(retryPolicy, client.getRetryPolicy());
+        } finally {
+            connector.close();
+        }
+    }
+
+    @Test
+    public void byDefault_getSettings_returnsTheDefaults() {
+        ZookeeperSettings settings = new ZookeeperConnectionRegistry().getSettings();
+        Assert.assertEquals(ZookeeperSettings.DEFAULT_SESSION_TIMEOUT_MILLIS,
+                settings.getSessionTimeoutMillis());
+        Assert.assertEquals(ZookeeperSettings.DEFAULT_CONNECTION_TIMEOUT_MILLIS,
+                settings.getConnectionTimeoutMillis());
+    }
+
+}
@@ -0,0 +1,135 @@
+package com.brandwatch.kafka.discovery;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.test.KillSession;
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.data.Stat;
+
+import com.google.common.base.Charsets;
+
+/**
+ * An in-process Zookeeper for discovery tests, with a {@link LatencyProxy} in front of it and
+ * a direct admin connection for writing broker registrations.
+ * <p>
+ * Clients under test connect through {@link #getConnectString()}, so their traffic can be
+ * delayed or cut, while registrations are written straight to the server and take effect
+ * immediately. Churn is replayed from a fixed seed, so a scenario does the same thing on every
+ * run.
+ */
+class ZookeeperSimulator implements Closeable {
+
+    private static final String BROKER_IDS_PATH = "/brokers/ids";
+
+    private final TestingServer testingServer;
+    private final LatencyProxy proxy;
+    private final CuratorFramework admin;
+
+    ZookeeperSimulator() throws Exception {
+        testingServer = new TestingServer();
+        proxy = new LatencyProxy(new InetSocketAddress("127.0.0.1", testingServer.getPort()));
+        admin = ZookeeperConnector.newCuratorFramework(testingServer.getConnectString(),
+                ZookeeperSettings.getDefaults());
+        admin.create().creatingParentsIfNeeded().forPath(BROKER_IDS_PATH);
+    }
+
+    /**
+     * @return the connect string for clients under test, which goes through the proxy
+     */
+    String getConnectString() {
+        return proxy.getConnectString();
+    }
+
+    void setLatency(long latency, TimeUnit unit) {
+        proxy.setLatency(latency, unit);
+    }
+
+    /**
+     * Cuts every client connection and refuses new ones until {@link #heal()}.
+     */
+    void partition() {
+        proxy.dropConnections(true);
+    }
+
+    void heal() {
+        proxy.unblock();
+    }
+
+    /**
+     * Expires the client's session on the server, as happens after a long partition.
+     */
+    void expireSession(CuratorFramework client) throws Exception {
+        KillSession.kill(client.getZookeeperClient().getZooKeeper(),
+                testingServer.getConnectString());
+    }
+
+    void registerBrokers(int firstId, int count) throws Exception {
+        for (int id = firstId; id < firstId + count; id++) {
+            register(id);
+        }
+    }
+
+    void register(int brokerId) throws Exception {
+        byte[] registration = ("{\"host\":\"broker" + brokerId + ".example.com\","
+                + "\"port\":9092,\"jmx_port\":-1,\"version\":4,\"timestamp\":\""
+                + System.currentTimeMillis() + "\",\"rack\":\"rack" + (brokerId % 3) + "\"}")
+            .getBytes(Charsets.UTF_8);
+        String path = BROKER_IDS_PATH + "/" + brokerId;
+        Stat stat = admin.checkExists().forPath(path);
+        if (stat == null) {
+            admin.create().forPath(path, registration);
+        } else {
+            admin.setData().forPath(path, registration);
+        }
+    }
+
+    void deregister(int brokerId) throws Exception {
+        admin.delete().forPath(BROKER_IDS_PATH + "/" + brokerId);
+    }
+
+    /**
+     * Restarts each broker in turn: it deregisters, stays down for <code>downtime</code> and
+     * registers again before the next one goes down.
+     */
+    void rollingRestart(Collection<Integer> brokerIds, long downtime, TimeUnit unit)
+            throws Exception {
+        for (Integer brokerId : brokerIds) {
+            deregister(brokerId);
+            unit.sleep(downtime);
+            register(brokerId);
+        }
+    }
+
+    /**
+     * Bounces <code>steps</code> brokers picked from <code>brokerIds</code> by a seeded random
+     * number generator, each deregistering and immediately registering again.
+     *
+     * @return the brokers bounced, in order
+     */
+    List<Integer> randomChurn(List<Integer> brokerIds, int steps, long seed) throws Exception {
+        Random random = new Random(seed);
+        List<Integer> bounced = new ArrayList<Integer>(steps);
+        for (int step = 0; step < steps; step++) {
+            int brokerId = brokerIds.get(random.nextInt(brokerIds.size()));
+            deregister(brokerId);
+            register(brokerId);
+            bounced.add(brokerId);
+        }
+        return bounced;
+    }
+
+    public void close() throws IOException {
+        admin.close();
+        proxy.close();
+        testingServer.close();
+    }
+
+}